@@ -0,0 +1,208 @@
+package org.example;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端 IP 访问控制规则
+ * <p>
+ * 规则分映射级和环境级两层，每层按最长前缀匹配：先查映射级规则，未命中再查环境级规则。
+ * 同一层中允许和拒绝同一前缀时拒绝优先。两层都未命中时，只要存在任何允许规则就拒绝，否则放行。
+ * 实例构建后不可变，可以在运行中整体替换。
+ */
+final class AccessRules {
+    private final List<Rule> rules;
+    private final CidrTrie mappingV4 = new CidrTrie();
+    private final CidrTrie mappingV6 = new CidrTrie();
+    private final CidrTrie environmentV4 = new CidrTrie();
+    private final CidrTrie environmentV6 = new CidrTrie();
+    private final boolean hasAllowRules;
+    private final LongAdder defaultAllowed = new LongAdder();
+    private final LongAdder defaultDenied = new LongAdder();
+
+    private AccessRules(List<Rule> rules) {
+        this.rules = Collections.unmodifiableList(rules);
+        boolean anyAllow = false;
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            boolean v4 = rule.network.length == 4;
+            CidrTrie trie = rule.environmentLevel ? (v4 ? environmentV4 : environmentV6) : (v4 ? mappingV4 : mappingV6);
+            trie.put(rule.network, rule.prefixLength, i);
+            anyAllow |= rule.allow;
+        }
+        this.hasAllowRules = anyAllow;
+    }
+
+    /**
+     * 没有任何规则、全部放行；每个代理使用各自的实例，命中计数互不影响
+     */
+    static AccessRules allowAll() {
+        return new AccessRules(new ArrayList<>());
+    }
+
+    /**
+     * @throws IllegalArgumentException 规则格式错误
+     */
+    static AccessRules build(List<String> allow, List<String> deny, List<String> environmentAllow,
+                             List<String> environmentDeny) {
+        // 拒绝规则后插入，同一前缀时覆盖允许规则
+        List<Rule> rules = new ArrayList<>();
+        addRules(rules, allow, true, false);
+        addRules(rules, deny, false, false);
+        addRules(rules, environmentAllow, true, true);
+        addRules(rules, environmentDeny, false, true);
+        return new AccessRules(rules);
+    }
+
+    private static void addRules(List<Rule> target, List<String> cidrs, boolean allow, boolean environmentLevel) {
+        for (String cidr : cidrs) {
+            target.add(new Rule(cidr, allow, environmentLevel));
+        }
+    }
+
+    /**
+     * 判断客户端地址是否允许访问，并累加命中计数
+     */
+    boolean isAllowed(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        boolean v4 = address instanceof Inet4Address;
+        int index = (v4 ? mappingV4 : mappingV6).longestMatch(bytes);
+        if (index == CidrTrie.NONE) {
+            index = (v4 ? environmentV4 : environmentV6).longestMatch(bytes);
+        }
+        if (index != CidrTrie.NONE) {
+            Rule rule = rules.get(index);
+            rule.hits.increment();
+            return rule.allow;
+        }
+        if (hasAllowRules) {
+            defaultDenied.increment();
+            return false;
+        }
+        defaultAllowed.increment();
+        return true;
+    }
+
+    /**
+     * 替换规则时保留相同规则的命中计数
+     */
+    AccessRules inheritHits(AccessRules previous) {
+        if (previous == null || previous == this) {
+            return this;
+        }
+        Map<String, Rule> oldRules = new HashMap<>();
+        for (Rule old : previous.rules) {
+            oldRules.put(old.key(), old);
+        }
+        for (Rule rule : rules) {
+            Rule old = oldRules.get(rule.key());
+            if (old != null) {
+                rule.hits.add(old.hits.sum());
+            }
+        }
+        defaultAllowed.add(previous.defaultAllowed.sum());
+        defaultDenied.add(previous.defaultDenied.sum());
+        return this;
+    }
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    List<Rule> getRules() {
+        return rules;
+    }
+
+    long getDefaultAllowed() {
+        return defaultAllowed.sum();
+    }
+
+    long getDefaultDenied() {
+        return defaultDenied.sum();
+    }
+
+    /**
+     * 校验单条 CIDR 规则，格式错误时抛出 IllegalArgumentException
+     */
+    static void validate(String cidr) {
+        new Rule(cidr, true, false);
+    }
+
+    static final class Rule {
+        private final String cidr;
+        private final boolean allow;
+        private final boolean environmentLevel;
+        private final byte[] network;
+        private final int prefixLength;
+        private final LongAdder hits = new LongAdder();
+
+        Rule(String cidr, boolean allow, boolean environmentLevel) {
+            this.cidr = cidr.trim();
+            this.allow = allow;
+            this.environmentLevel = environmentLevel;
+
+            int slash = this.cidr.indexOf('/');
+            String addressPart = slash < 0 ? this.cidr : this.cidr.substring(0, slash);
+            this.network = parseLiteral(addressPart).getAddress();
+            int maxLength = network.length * 8;
+            try {
+                this.prefixLength = slash < 0 ? maxLength : Integer.parseInt(this.cidr.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的前缀长度: " + cidr);
+            }
+            if (prefixLength < 0 || prefixLength > maxLength) {
+                throw new IllegalArgumentException("无效的前缀长度: " + cidr);
+            }
+        }
+
+        // 只接受IP字面量，避免把规则中的主机名解析成地址
+        private static InetAddress parseLiteral(String text) {
+            String value = text.trim();
+            boolean literal = value.indexOf(':') >= 0 || value.matches("\\d{1,3}(\\.\\d{1,3}){3}");
+            if (!literal) {
+                throw new IllegalArgumentException("无效的IP地址: " + text);
+            }
+            try {
+                return InetAddress.getByName(value);
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("无效的IP地址: " + text);
+            }
+        }
+
+        // 地址是否落在该前缀内，IPv4 和 IPv6 互不匹配
+        boolean contains(InetAddress address) {
+            byte[] bytes = address.getAddress();
+            if (bytes.length != network.length) {
+                return false;
+            }
+            int fullBytes = prefixLength / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (bytes[i] != network[i]) {
+                    return false;
+                }
+            }
+            int remainingBits = prefixLength % 8;
+            if (remainingBits == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - remainingBits) & 0xFF;
+            return (bytes[fullBytes] & mask) == (network[fullBytes] & mask);
+        }
+
+        private String key() {
+            return (environmentLevel ? "env:" : "map:") + (allow ? "allow:" : "deny:") + cidr;
+        }
+
+        String getCidr() { return cidr; }
+        boolean isAllow() { return allow; }
+        boolean isEnvironmentLevel() { return environmentLevel; }
+        long getHits() { return hits.sum(); }
+    }
+}
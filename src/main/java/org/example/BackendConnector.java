@@ -0,0 +1,209 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 后端连接器
+ * <p>
+ * 每次连接都重新解析后端主机的所有地址，按 Happy Eyeballs（RFC 8305）的方式交错 IPv6/IPv4
+ * 并错开发起非阻塞连接：上一个尝试在 {@link #ATTEMPT_DELAY} 毫秒内没有结果或已失败时发起下一个，
+ * 最先完成的连接胜出，其余的立即关闭。所有地址都失败后按带抖动的指数退避重试整轮，
+ * 次数由映射选项 connectRetries 决定。
+ */
+final class BackendConnector {
+    // RFC 8305 建议的 Connection Attempt Delay
+    static final int ATTEMPT_DELAY = 250;
+    // 一轮连接的总超时
+    static final int CONNECT_TIMEOUT = 5000;
+    private static final int BACKOFF_BASE = 100;
+    private static final int BACKOFF_MAX = 2000;
+
+    private final String host;
+    private final int retries;
+    private final ConnectMetrics metrics;
+    // 代理停止后不再重试
+    private final BooleanSupplier cancelled;
+
+    BackendConnector(String host, int retries, ConnectMetrics metrics, BooleanSupplier cancelled) {
+        this.host = host;
+        this.retries = retries;
+        this.metrics = metrics;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * 连接后端，失败时重试
+     *
+     * @return 已连接的阻塞模式通道
+     * @throws IOException 重试用尽后最后一次的失败原因
+     */
+    SocketChannel connect(int port) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return connectOnce(port);
+            } catch (IOException e) {
+                if (attempt >= retries || cancelled.getAsBoolean()) {
+                    throw e;
+                }
+                metrics.recordRetry();
+                try {
+                    Thread.sleep(backoff(attempt));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("连接重试被中断");
+                }
+            }
+        }
+    }
+
+    /**
+     * 对所有解析出的地址进行一轮错开的并行连接
+     */
+    SocketChannel connectOnce(int port) throws IOException {
+        return connectOnce(interleave(InetAddress.getAllByName(host)), port);
+    }
+
+    // 按给定顺序连接，单独拆出便于测试
+    SocketChannel connectOnce(List<InetAddress> addresses, int port) throws IOException {
+        List<SocketChannel> pending = new ArrayList<>();
+        SocketChannel winner = null;
+        IOException lastError = null;
+
+        try (Selector selector = Selector.open()) {
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+            long nextAttemptAt = 0;
+            int next = 0;
+
+            while (winner == null) {
+                long now = System.currentTimeMillis();
+                if (next < addresses.size() && (now >= nextAttemptAt || pending.isEmpty())) {
+                    InetAddress address = addresses.get(next++);
+                    metrics.recordAttempt();
+                    SocketChannel channel = SocketChannel.open();
+                    try {
+                        channel.configureBlocking(false);
+                        if (channel.connect(new InetSocketAddress(address, port))) {
+                            winner = channel;
+                            metrics.recordWin(address.getHostAddress(), next > 1);
+                            break;
+                        }
+                        channel.register(selector, SelectionKey.OP_CONNECT, address);
+                        pending.add(channel);
+                        nextAttemptAt = now + ATTEMPT_DELAY;
+                    } catch (IOException e) {
+                        // 立即失败（如地址族不可用）时直接尝试下一个地址
+                        metrics.recordFailure();
+                        lastError = e;
+                        safeClose(channel);
+                        nextAttemptAt = 0;
+                        continue;
+                    }
+                }
+
+                if (pending.isEmpty() && next >= addresses.size()) {
+                    throw lastError != null ? lastError : new ConnectException("没有可用的地址: " + host);
+                }
+                if (now >= deadline) {
+                    throw new SocketTimeoutException("Connection to " + host + ":" + port +
+                            " timed out after " + CONNECT_TIMEOUT + "ms");
+                }
+
+                long wait = deadline - now;
+                if (next < addresses.size()) {
+                    wait = Math.min(wait, nextAttemptAt - now);
+                }
+                selector.select(Math.max(1, wait));
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    InetAddress address = (InetAddress) key.attachment();
+                    try {
+                        if (channel.finishConnect()) {
+                            pending.remove(channel);
+                            winner = channel;
+                            metrics.recordWin(address.getHostAddress(), addresses.indexOf(address) > 0);
+                            break;
+                        }
+                    } catch (IOException e) {
+                        metrics.recordFailure();
+                        lastError = e;
+                        pending.remove(channel);
+                        safeClose(channel);
+                        // 有尝试失败时不再等待间隔，立即发起下一个
+                        nextAttemptAt = 0;
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            for (SocketChannel channel : pending) {
+                safeClose(channel);
+            }
+        }
+
+        // Selector 关闭后通道才从中注销，此时才能切换回阻塞模式
+        try {
+            winner.configureBlocking(true);
+        } catch (IOException e) {
+            safeClose(winner);
+            throw e;
+        }
+        return winner;
+    }
+
+    /**
+     * 按 RFC 8305 交错地址族：从解析结果的第一个地址族开始，两种地址族轮流排列
+     */
+    static List<InetAddress> interleave(InetAddress[] resolved) {
+        List<InetAddress> first = new ArrayList<>();
+        List<InetAddress> second = new ArrayList<>();
+        boolean firstIsV6 = resolved.length > 0 && resolved[0] instanceof Inet6Address;
+        for (InetAddress address : resolved) {
+            if ((address instanceof Inet6Address) == firstIsV6) {
+                first.add(address);
+            } else {
+                second.add(address);
+            }
+        }
+        List<InetAddress> ordered = new ArrayList<>(resolved.length);
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) {
+                ordered.add(first.get(i));
+            }
+            if (i < second.size()) {
+                ordered.add(second.get(i));
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 第 attempt 次重试前的等待时间，上限内指数增长，随机取后一半避免多个会话同时重试
+     */
+    static long backoff(int attempt) {
+        long ceiling = Math.min(BACKOFF_MAX, (long) BACKOFF_BASE << Math.min(attempt, 20));
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private static void safeClose(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+    }
+}
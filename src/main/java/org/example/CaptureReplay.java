@@ -0,0 +1,190 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把抓包中客户端发出的数据重新发送到代理，用于复现问题和压测
+ * <p>
+ * 用法：--replay &lt;抓包目录&gt; &lt;主机:端口&gt; [--max-speed]。
+ * 每个抓包会话（运行标识和会话编号）对应一个新连接，默认按记录的时间间隔发送，加 --max-speed 时不等待。
+ * 后端返回的数据只计数后丢弃；抓包开头的会话可能已被覆盖掉开始部分，收到第一段数据时再建立连接。
+ */
+final class CaptureReplay {
+    // 全部数据发出后等待响应读完的最长时间
+    private static final long DRAIN_TIMEOUT = 10000;
+
+    private final String host;
+    private final int port;
+    private final boolean maxSpeed;
+
+    CaptureReplay(String host, int port, boolean maxSpeed) {
+        this.host = host;
+        this.port = port;
+        this.maxSpeed = maxSpeed;
+    }
+
+    static void main(String[] args) {
+        Path directory = null;
+        String target = null;
+        boolean maxSpeed = false;
+        for (int i = 1; i < args.length; i++) {
+            if ("--max-speed".equals(args[i])) {
+                maxSpeed = true;
+            } else if (directory == null) {
+                directory = Paths.get(args[i]);
+            } else {
+                target = args[i];
+            }
+        }
+        int colon = target != null ? target.lastIndexOf(':') : -1;
+        if (directory == null || colon <= 0) {
+            System.err.println("用法: --replay <抓包目录> <主机:端口> [--max-speed]");
+            System.exit(1);
+        }
+
+        try {
+            CaptureReplay replay = new CaptureReplay(target.substring(0, colon),
+                    Integer.parseInt(target.substring(colon + 1)), maxSpeed);
+            Result result = replay.run(directory);
+            System.out.println(result);
+        } catch (NumberFormatException e) {
+            System.err.println("无效的端口: " + target);
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("回放失败: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 回放目录中的全部会话，返回时所有连接都已关闭
+     */
+    Result run(Path directory) throws IOException, InterruptedException {
+        Result result = new Result();
+        // 键为 运行标识/会话编号，不同次运行的会话编号会重复
+        Map<String, Connection> connections = new HashMap<>();
+        List<Connection> all = new ArrayList<>();
+        long start = System.nanoTime();
+        long[] firstMicros = {-1};
+        try {
+            TrafficCapture.read(directory, (type, run, sessionId, micros, data) -> {
+                if (type == TrafficCapture.TO_CLIENT) {
+                    result.recordedBytesToClient += data.length;
+                    return;
+                }
+                if (!maxSpeed) {
+                    if (firstMicros[0] < 0) {
+                        firstMicros[0] = micros;
+                    }
+                    waitUntil(start, micros - firstMicros[0]);
+                }
+                String key = run + "/" + sessionId;
+                Connection connection = connections.get(key);
+                if (type == TrafficCapture.CLOSE) {
+                    if (connection != null) {
+                        connection.socket.shutdownOutput();
+                        connections.remove(key);
+                    }
+                    return;
+                }
+                if (connection == null) {
+                    connection = new Connection(new Socket());
+                    connection.socket.connect(new InetSocketAddress(host, port), BackendConnector.CONNECT_TIMEOUT);
+                    connection.start();
+                    connections.put(key, connection);
+                    all.add(connection);
+                    result.sessions++;
+                }
+                if (type == TrafficCapture.FROM_CLIENT) {
+                    connection.socket.getOutputStream().write(data);
+                    result.bytesSent += data.length;
+                }
+            });
+            // 抓包结束时仍未关闭的会话也发送 FIN
+            for (Connection connection : connections.values()) {
+                connection.socket.shutdownOutput();
+            }
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+            for (Connection connection : all) {
+                connection.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } finally {
+            for (Connection connection : all) {
+                connection.socket.close();
+                result.bytesReceived += connection.received.get();
+            }
+            result.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    private static void waitUntil(long start, long offsetMicros) throws IOException {
+        long remaining = TimeUnit.MICROSECONDS.toNanos(offsetMicros) - (System.nanoTime() - start);
+        if (remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("回放被中断");
+            }
+        }
+    }
+
+    /**
+     * 回放连接，读线程持续读取并丢弃响应，避免代理因客户端不读而停止转发
+     */
+    private static final class Connection extends Thread {
+        final Socket socket;
+        final AtomicLong received = new AtomicLong();
+
+        Connection(Socket socket) {
+            super("replay-reader");
+            this.socket = socket;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                InputStream in = socket.getInputStream();
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    received.addAndGet(n);
+                }
+            } catch (IOException e) {
+                // 连接被关闭
+            }
+        }
+    }
+
+    static final class Result {
+        int sessions;
+        long bytesSent;
+        long bytesReceived;
+        // 抓包中记录的后端返回字节数，可与 bytesReceived 对照
+        long recordedBytesToClient;
+        long elapsedMillis;
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(1, elapsedMillis) / 1000.0;
+            return String.format("会话: %d，发送: %d 字节，接收: %d 字节（抓包中为 %d 字节），耗时: %d 毫秒，发送速率: %.2f MB/s",
+                    sessions, bytesSent, bytesReceived, recordedBytesToClient, elapsedMillis,
+                    bytesSent / seconds / 1024 / 1024);
+        }
+    }
+}
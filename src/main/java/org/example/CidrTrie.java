@@ -0,0 +1,83 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * 二进制前缀树，按最长前缀匹配查找 CIDR 前缀对应的值
+ * <p>
+ * 节点保存在平行的 int 数组中（没有节点对象），查找最多走地址的位数（IPv4 32 步，IPv6 128 步），
+ * 与前缀数量无关。IPv4 和 IPv6 地址长度不同，应分别使用各自的实例。
+ */
+final class CidrTrie {
+    static final int NONE = -1;
+
+    // 下标为节点编号：子节点编号（0 表示不存在，根节点不会作为子节点）和节点上的值
+    private int[] zero;
+    private int[] one;
+    private int[] value;
+    private int size;
+
+    CidrTrie() {
+        zero = new int[16];
+        one = new int[16];
+        value = new int[16];
+        value[0] = NONE;
+        size = 1;
+    }
+
+    /**
+     * 插入前缀，同一前缀重复插入时后插入的值覆盖之前的值
+     *
+     * @param prefix       网络地址字节
+     * @param prefixLength 前缀位数
+     * @param val          非负值
+     */
+    void put(byte[] prefix, int prefixLength, int val) {
+        int node = 0;
+        for (int bit = 0; bit < prefixLength; bit++) {
+            int[] children = bitAt(prefix, bit) == 0 ? zero : one;
+            int child = children[node];
+            if (child == 0) {
+                child = newNode();
+                // newNode 可能扩容，需要重新取数组
+                (bitAt(prefix, bit) == 0 ? zero : one)[node] = child;
+            }
+            node = child;
+        }
+        value[node] = val;
+    }
+
+    /**
+     * @return 与地址匹配的最长前缀的值，没有匹配时返回 {@link #NONE}
+     */
+    int longestMatch(byte[] address) {
+        int node = 0;
+        int match = value[0];
+        int bits = address.length * 8;
+        for (int bit = 0; bit < bits; bit++) {
+            node = bitAt(address, bit) == 0 ? zero[node] : one[node];
+            if (node == 0) {
+                break;
+            }
+            if (value[node] != NONE) {
+                match = value[node];
+            }
+        }
+        return match;
+    }
+
+    private int newNode() {
+        if (size == value.length) {
+            int capacity = size * 2;
+            zero = Arrays.copyOf(zero, capacity);
+            one = Arrays.copyOf(one, capacity);
+            value = Arrays.copyOf(value, capacity);
+        }
+        value[size] = NONE;
+        return size++;
+    }
+
+    private static int bitAt(byte[] bytes, int bit) {
+        return (bytes[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+    }
+}
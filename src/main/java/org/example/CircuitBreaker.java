@@ -0,0 +1,127 @@
+package org.example;
+
+/**
+ * 单个后端的熔断器
+ * <p>
+ * 关闭状态下记录最近 {@link #WINDOW_SIZE} 次连接结果，样本不少于 {@link #MIN_CALLS} 次且失败率达到
+ * {@link #FAILURE_RATE_THRESHOLD}% 时打开。打开期间新的客户端直接被拒绝，不再等待连接超时；
+ * 冷却 {@link #COOLDOWN} 毫秒后进入半开状态，只放行一个探测连接，成功则关闭，失败则重新打开。
+ * <p>
+ * 每个后端连接只调用少量几次，直接使用同步方法。
+ */
+final class CircuitBreaker {
+    static final int WINDOW_SIZE = 20;
+    static final int MIN_CALLS = 5;
+    static final int FAILURE_RATE_THRESHOLD = 50;
+    static final long COOLDOWN = 10000;
+
+    enum State {
+        CLOSED(null),
+        OPEN("熔断"),
+        HALF_OPEN("半开");
+
+        private final String text;
+
+        State(String text) {
+            this.text = text;
+        }
+
+        // 状态列中附加显示的文字，关闭状态不显示
+        public String getText() { return text; }
+    }
+
+    // 环形窗口，true 表示失败
+    private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+    private final long cooldown;
+    private int recorded;
+    private int next;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    CircuitBreaker() {
+        this(COOLDOWN);
+    }
+
+    CircuitBreaker(long cooldown) {
+        this.cooldown = cooldown;
+    }
+
+    /**
+     * 是否允许发起一次连接，允许时调用方必须随后调用 onSuccess 或 onFailure
+     */
+    synchronized boolean tryAcquire(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedAt < cooldown) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            probeInFlight = false;
+            resetWindow();
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure(long now) {
+        if (state == State.HALF_OPEN) {
+            open(now);
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= MIN_CALLS
+                && failures * 100 >= FAILURE_RATE_THRESHOLD * recorded) {
+            open(now);
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (recorded == WINDOW_SIZE) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % WINDOW_SIZE;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        probeInFlight = false;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
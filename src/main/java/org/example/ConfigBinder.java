@@ -0,0 +1,316 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONReader;
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把 config.json 直接绑定到 ProxyConfig 和 EnvironmentOptions
+ * <p>
+ * 按字段名逐个读取流中的值，不构造中间的 JSONObject 树，也不经过反射，未知字段直接跳过。
+ * 映射高级选项的字段只在 {@link OptionFields} 中定义一次，配置文件和高级选项对话框（{@link #readOptions}）
+ * 都经过它读取；保存由 ProxyOptions 等类的 writeTo 完成。
+ * JSONReader 只在读取标量值后跳过其后的逗号，所以读取对象和数组的方法在结束时自行跳过。
+ * 端口或端口区间无效的映射不会加入环境，而是作为提示返回，避免在显示时才失败。
+ */
+final class ConfigBinder {
+    private static final String DEFAULT_DESCRIPTION = "未命名代理";
+
+    private ConfigBinder() {
+    }
+
+    /**
+     * @param json 配置文件内容（UTF-8）
+     * @return 被跳过的映射及原因
+     * @throws IllegalArgumentException 配置结构、访问控制规则、目标白名单或优先级格式错误
+     */
+    static List<String> bind(byte[] json, Map<String, List<ProxyConfig>> environments,
+                             Map<String, EnvironmentOptions> environmentOptions) {
+        List<String> skipped = new ArrayList<>();
+        try (JSONReader reader = JSONReader.of(json)) {
+            if (!reader.nextIfObjectStart()) {
+                throw new IllegalArgumentException("配置文件必须是 JSON 对象");
+            }
+            while (!reader.nextIfObjectEnd()) {
+                String env = reader.readFieldName();
+                if (reader.isArray()) {
+                    environments.put(env, readMappings(reader, env, skipped));
+                } else if (reader.isObject()) {
+                    // 带环境级选项的环境：{"mappings": [...], ...}
+                    readEnvironment(reader, env, environments, environmentOptions, skipped);
+                } else {
+                    throw new IllegalArgumentException("环境格式错误: " + env);
+                }
+            }
+        }
+        return skipped;
+    }
+
+    private static void readEnvironment(JSONReader reader, String env, Map<String, List<ProxyConfig>> environments,
+                                        Map<String, EnvironmentOptions> environmentOptions, List<String> skipped) {
+        List<ProxyConfig> mappings = new ArrayList<>();
+        List<String> allow = Collections.emptyList();
+        List<String> deny = Collections.emptyList();
+        List<String> socksWhitelist = Collections.emptyList();
+        reader.nextIfObjectStart();
+        while (!reader.nextIfObjectEnd()) {
+            switch (reader.readFieldName()) {
+                case "mappings":
+                    mappings = readMappings(reader, env, skipped);
+                    break;
+                case "allow":
+                    allow = ProxyOptions.cidrList(readStrings(reader));
+                    break;
+                case "deny":
+                    deny = ProxyOptions.cidrList(readStrings(reader));
+                    break;
+                case "socksWhitelist":
+                    socksWhitelist = EnvironmentOptions.whitelist(readStrings(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.nextIfComma();
+        environments.put(env, mappings);
+        environmentOptions.put(env, new EnvironmentOptions(allow, deny, socksWhitelist));
+    }
+
+    private static List<ProxyConfig> readMappings(JSONReader reader, String env, List<String> skipped) {
+        List<ProxyConfig> mappings = new ArrayList<>();
+        if (reader.nextIfNull()) {
+            return mappings;
+        }
+        reader.nextIfArrayStart();
+        while (!reader.nextIfArrayEnd()) {
+            ProxyConfig mapping = readMapping(reader);
+            String error = portError(mapping);
+            if (error == null) {
+                mappings.add(mapping);
+            } else {
+                skipped.add("环境 '" + env + "' 的映射 '" + mapping.getDescription() + "' 已跳过: " + error);
+            }
+        }
+        reader.nextIfComma();
+        return mappings;
+    }
+
+    // 本地端口区间和按相同长度对应的远程端口区间都必须在 1 到 65535 之间，SOCKS5 没有远程端口
+    private static String portError(ProxyConfig mapping) {
+        try {
+            mapping.getLocalPorts();
+            if (!mapping.isDynamic()) {
+                mapping.getRemotePorts();
+            }
+            return null;
+        } catch (NumberFormatException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * 读取只包含高级选项字段的对象，其他字段忽略
+     *
+     * @throws IllegalArgumentException 不是 JSON 对象，或访问控制规则、优先级格式错误
+     */
+    static ProxyOptions readOptions(String json) {
+        OptionFields options = new OptionFields();
+        try (JSONReader reader = JSONReader.of(json)) {
+            if (!reader.nextIfObjectStart()) {
+                throw new IllegalArgumentException("高级选项必须是 JSON 对象");
+            }
+            while (!reader.nextIfObjectEnd()) {
+                if (!options.read(reader.readFieldName(), reader)) {
+                    reader.skipValue();
+                }
+            }
+        }
+        return options.build();
+    }
+
+    private static ProxyConfig readMapping(JSONReader reader) {
+        int localPort = 0;
+        Integer localPortEnd = null;
+        String remoteHost = null;
+        int remotePort = 0;
+        String description = DEFAULT_DESCRIPTION;
+        String protocol = null;
+        OptionFields options = new OptionFields();
+
+        reader.nextIfObjectStart();
+        while (!reader.nextIfObjectEnd()) {
+            String field = reader.readFieldName();
+            switch (field) {
+                case "localPort":
+                    localPort = readInt(reader);
+                    break;
+                case "localPortEnd":
+                    localPortEnd = readInt(reader);
+                    break;
+                case "remoteHost":
+                    remoteHost = reader.readString();
+                    break;
+                case "remotePort":
+                    remotePort = readInt(reader);
+                    break;
+                case "desc":
+                    description = reader.readString();
+                    break;
+                case "protocol":
+                    protocol = reader.readString();
+                    break;
+                default:
+                    if (!options.read(field, reader)) {
+                        reader.skipValue();
+                    }
+            }
+        }
+        reader.nextIfComma();
+
+        return new ProxyConfig(localPort, localPortEnd != null ? localPortEnd : localPort, remoteHost, remotePort,
+                description, ProxyProtocol.parse(protocol), options.build());
+    }
+
+    private static List<String> readStrings(JSONReader reader) {
+        if (reader.nextIfNull()) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>();
+        reader.nextIfArrayStart();
+        while (!reader.nextIfArrayEnd()) {
+            values.add(reader.readString());
+        }
+        reader.nextIfComma();
+        return values;
+    }
+
+    // null 按 0 处理，与 JSONObject.getIntValue 相同
+    private static int readInt(JSONReader reader) {
+        return reader.nextIfNull() ? 0 : reader.readInt32Value();
+    }
+
+    private static boolean readBoolean(JSONReader reader) {
+        return !reader.nextIfNull() && reader.readBoolValue();
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String trimmed(String value) {
+        return value != null ? value.trim() : "";
+    }
+
+    /**
+     * 映射高级选项的字段表，与映射的其他字段平铺在同一个对象中；缺省值同 {@link ProxyOptions#DEFAULT}
+     */
+    private static final class OptionFields {
+        private int acceptors = ProxyOptions.DEFAULT.getAcceptors();
+        private int connectRetries = ProxyOptions.DEFAULT.getConnectRetries();
+        private List<String> allow = Collections.emptyList();
+        private List<String> deny = Collections.emptyList();
+        private String socksUser;
+        private String socksPassword;
+        private String tunnel;
+        private String tunnelToken;
+        private int tunnelLinks = ProxyOptions.DEFAULT.getTunnelLinks();
+        private boolean capture;
+        private int captureSegments = ProxyOptions.DEFAULT.getCaptureSegments();
+        private String tlsKeystore;
+        private String tlsKeystorePassword;
+        private boolean tlsBackend;
+        private String tlsTruststore;
+        private String tlsTruststorePassword;
+        private String priority;
+        private int highWatermark = FlowControl.DEFAULT.getHighWatermark();
+        private int lowWatermark = FlowControl.DEFAULT.getLowWatermark();
+        private int slowConsumerTimeout = FlowControl.DEFAULT.getSlowConsumerTimeout();
+        private boolean disconnectSlowConsumers;
+
+        /**
+         * @return 不是高级选项字段时返回 false，值没有读取
+         */
+        boolean read(String field, JSONReader reader) {
+            switch (field) {
+                case "acceptors":
+                    acceptors = readInt(reader);
+                    break;
+                case "connectRetries":
+                    connectRetries = readInt(reader);
+                    break;
+                case "allow":
+                    allow = ProxyOptions.cidrList(readStrings(reader));
+                    break;
+                case "deny":
+                    deny = ProxyOptions.cidrList(readStrings(reader));
+                    break;
+                case "socksUser":
+                    socksUser = reader.readString();
+                    break;
+                case "socksPassword":
+                    socksPassword = reader.readString();
+                    break;
+                case "tunnel":
+                    tunnel = reader.readString();
+                    break;
+                case "tunnelToken":
+                    tunnelToken = reader.readString();
+                    break;
+                case "tunnelLinks":
+                    tunnelLinks = readInt(reader);
+                    break;
+                case "capture":
+                    capture = readBoolean(reader);
+                    break;
+                case "captureSegments":
+                    captureSegments = readInt(reader);
+                    break;
+                case "tlsKeystore":
+                    tlsKeystore = reader.readString();
+                    break;
+                case "tlsKeystorePassword":
+                    tlsKeystorePassword = reader.readString();
+                    break;
+                case "tlsBackend":
+                    tlsBackend = readBoolean(reader);
+                    break;
+                case "tlsTruststore":
+                    tlsTruststore = reader.readString();
+                    break;
+                case "tlsTruststorePassword":
+                    tlsTruststorePassword = reader.readString();
+                    break;
+                case "priority":
+                    priority = reader.readString();
+                    break;
+                case "highWatermark":
+                    highWatermark = readInt(reader);
+                    break;
+                case "lowWatermark":
+                    lowWatermark = readInt(reader);
+                    break;
+                case "slowConsumerTimeout":
+                    slowConsumerTimeout = readInt(reader);
+                    break;
+                case "disconnectSlowConsumers":
+                    disconnectSlowConsumers = readBoolean(reader);
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+
+        ProxyOptions build() {
+            TlsOptions tls = new TlsOptions(trimmed(tlsKeystore), nonNull(tlsKeystorePassword), tlsBackend,
+                    trimmed(tlsTruststore), nonNull(tlsTruststorePassword));
+            return ProxyOptions.create(acceptors, connectRetries, allow, deny, socksUser, socksPassword, tunnel,
+                    tunnelToken, tunnelLinks, capture, captureSegments, tls, PriorityClass.parse(priority),
+                    FlowControl.create(highWatermark, lowWatermark, slowConsumerTimeout, disconnectSlowConsumers));
+        }
+    }
+}
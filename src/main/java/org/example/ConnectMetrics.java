@@ -0,0 +1,99 @@
+package org.example;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个映射的后端连接统计
+ * <p>
+ * 计数器由多个会话线程并发累加，使用 LongAdder 避免在同一缓存行上竞争。
+ */
+final class ConnectMetrics {
+    // 每个地址的一次连接尝试计一次
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    // 整轮连接（所有地址）失败后的重试次数
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    // 首选地址之外的地址胜出的次数
+    private final LongAdder fallbackWins = new LongAdder();
+    // 后端熔断期间直接拒绝的连接
+    private final LongAdder rejected = new LongAdder();
+    private final Map<String, LongAdder> winsByAddress = new ConcurrentHashMap<>();
+    // TLS 握手，下标 0 为客户端一侧，1 为后端一侧
+    private final LongAdder[] tlsHandshakes = {new LongAdder(), new LongAdder()};
+    private final LongAdder[] tlsResumed = {new LongAdder(), new LongAdder()};
+    private final LongAdder[] tlsFailures = {new LongAdder(), new LongAdder()};
+    private final LongAdder[] tlsHandshakeMicros = {new LongAdder(), new LongAdder()};
+
+    void recordAttempt() {
+        attempts.increment();
+    }
+
+    void recordFailure() {
+        failures.increment();
+    }
+
+    void recordRetry() {
+        retries.increment();
+    }
+
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    void recordWin(String address, boolean fallback) {
+        successes.increment();
+        if (fallback) {
+            fallbackWins.increment();
+        }
+        winsByAddress.computeIfAbsent(address, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * 记录一次成功的 TLS 握手
+     *
+     * @param backend 是否为代理到后端的握手
+     */
+    void recordTlsHandshake(boolean backend, long micros, boolean resumed) {
+        int side = backend ? 1 : 0;
+        tlsHandshakes[side].increment();
+        tlsHandshakeMicros[side].add(micros);
+        if (resumed) {
+            tlsResumed[side].increment();
+        }
+    }
+
+    void recordTlsFailure(boolean backend) {
+        tlsFailures[backend ? 1 : 0].increment();
+    }
+
+    long getAttempts() { return attempts.sum(); }
+    long getFailures() { return failures.sum(); }
+    long getRetries() { return retries.sum(); }
+    long getSuccesses() { return successes.sum(); }
+    long getFallbackWins() { return fallbackWins.sum(); }
+    long getRejected() { return rejected.sum(); }
+    long getTlsHandshakes(boolean backend) { return tlsHandshakes[backend ? 1 : 0].sum(); }
+    long getTlsResumed(boolean backend) { return tlsResumed[backend ? 1 : 0].sum(); }
+    long getTlsFailures(boolean backend) { return tlsFailures[backend ? 1 : 0].sum(); }
+
+    // 成功握手的平均耗时（毫秒），没有握手时为 0
+    double getTlsAverageMillis(boolean backend) {
+        long count = getTlsHandshakes(backend);
+        return count == 0 ? 0 : tlsHandshakeMicros[backend ? 1 : 0].sum() / 1000.0 / count;
+    }
+
+    /**
+     * 按地址排序的胜出次数快照
+     */
+    Map<String, Long> getWinsByAddress() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : winsByAddress.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,153 @@
+package org.example;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SOCKS5 监听允许访问的目标，按环境配置
+ * <p>
+ * 每条规则为 "主机[:端口]"，主机可以是：
+ * <ul>
+ *     <li>完整主机名，如 db.internal</li>
+ *     <li>"*.后缀"，匹配该域名下的所有子域名，如 *.svc.cluster.local</li>
+ *     <li>IP 或 CIDR，如 10.0.0.0/8，IPv6 写作 [fd00::/8]:443；只匹配客户端直接请求 IP 的连接</li>
+ *     <li>"*"，匹配任意目标</li>
+ * </ul>
+ * 端口可以是单个端口、"起始-结束" 区间或 "*"，省略时为所有端口。
+ * 客户端按域名请求时只按名称匹配，不解析成地址再匹配 CIDR。没有任何规则时拒绝所有目标。
+ * 实例构建后不可变，可以在运行中整体替换。
+ */
+final class DestinationWhitelist {
+    static final DestinationWhitelist EMPTY = new DestinationWhitelist(Collections.emptyList());
+
+    private final List<Entry> entries;
+
+    private DestinationWhitelist(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @throws IllegalArgumentException 规则格式错误
+     */
+    static DestinationWhitelist build(List<String> rules) {
+        List<Entry> entries = new ArrayList<>();
+        for (String rule : rules) {
+            entries.add(new Entry(rule));
+        }
+        return new DestinationWhitelist(Collections.unmodifiableList(entries));
+    }
+
+    /**
+     * 校验单条规则，格式错误时抛出 IllegalArgumentException
+     */
+    static void validate(String rule) {
+        new Entry(rule);
+    }
+
+    /**
+     * @param host    客户端请求的主机名或 IP 文本
+     * @param address 客户端直接请求 IP 时的地址，请求域名时为 null
+     */
+    boolean isAllowed(String host, InetAddress address, int port) {
+        String name = host.toLowerCase(Locale.ROOT);
+        for (Entry entry : entries) {
+            if (entry.matches(name, address, port)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    private static final class Entry {
+        // 以下三种主机匹配方式只有一种生效
+        private final String exactHost;
+        private final String suffix;
+        private final AccessRules.Rule network;
+        private final PortRange ports;
+
+        Entry(String rule) {
+            String text = rule.trim();
+            String hostPart;
+            String portPart = null;
+            if (text.startsWith("[")) {
+                int close = text.indexOf(']');
+                if (close < 0) {
+                    throw new IllegalArgumentException("无效的目标规则: " + rule);
+                }
+                hostPart = text.substring(1, close);
+                String rest = text.substring(close + 1);
+                if (!rest.isEmpty()) {
+                    if (!rest.startsWith(":")) {
+                        throw new IllegalArgumentException("无效的目标规则: " + rule);
+                    }
+                    portPart = rest.substring(1);
+                }
+            } else {
+                int colon = text.indexOf(':');
+                // 多个冒号是不带方括号的 IPv6，不带端口
+                if (colon >= 0 && text.indexOf(':', colon + 1) < 0) {
+                    hostPart = text.substring(0, colon);
+                    portPart = text.substring(colon + 1);
+                } else {
+                    hostPart = text;
+                }
+            }
+            hostPart = hostPart.trim().toLowerCase(Locale.ROOT);
+            if (hostPart.isEmpty()) {
+                throw new IllegalArgumentException("无效的目标规则: " + rule);
+            }
+
+            if (portPart == null || portPart.trim().equals("*")) {
+                ports = null;
+            } else {
+                try {
+                    ports = PortRange.parse(portPart);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("无效的目标端口: " + rule);
+                }
+                if (ports == null) {
+                    throw new IllegalArgumentException("无效的目标端口: " + rule);
+                }
+            }
+
+            if (hostPart.equals("*")) {
+                exactHost = null;
+                suffix = "";
+                network = null;
+            } else if (hostPart.startsWith("*.")) {
+                exactHost = null;
+                suffix = hostPart.substring(1);
+                network = null;
+            } else if (hostPart.indexOf('/') >= 0 || hostPart.indexOf(':') >= 0
+                    || hostPart.matches("\\d{1,3}(\\.\\d{1,3}){3}")) {
+                exactHost = null;
+                suffix = null;
+                network = new AccessRules.Rule(hostPart, true, true);
+            } else {
+                exactHost = hostPart;
+                suffix = null;
+                network = null;
+            }
+        }
+
+        boolean matches(String host, InetAddress address, int port) {
+            if (ports != null && (port < ports.getStart() || port > ports.getEnd())) {
+                return false;
+            }
+            if (exactHost != null) {
+                return exactHost.equals(host);
+            }
+            if (suffix != null) {
+                return suffix.isEmpty() || host.endsWith(suffix);
+            }
+            return address != null && network.contains(address);
+        }
+    }
+}
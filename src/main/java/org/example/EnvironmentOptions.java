@@ -0,0 +1,78 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 环境级选项，作用于环境中的所有映射
+ * <p>
+ * 环境在 config.json 中可以是映射数组（没有环境级选项时），
+ * 也可以是 {"mappings": [...], ...选项} 形式的对象。
+ */
+final class EnvironmentOptions {
+    static final EnvironmentOptions DEFAULT = new EnvironmentOptions(Collections.emptyList(), Collections.emptyList(),
+            Collections.emptyList());
+
+    // 环境级客户端访问控制规则（CIDR）
+    private final List<String> allow;
+    private final List<String> deny;
+    // 环境中 SOCKS5 监听允许访问的目标，格式见 DestinationWhitelist
+    private final List<String> socksWhitelist;
+
+    EnvironmentOptions(List<String> allow, List<String> deny, List<String> socksWhitelist) {
+        this.allow = allow;
+        this.deny = deny;
+        this.socksWhitelist = socksWhitelist;
+    }
+
+    /**
+     * 校验目标白名单，去掉空项
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    static List<String> whitelist(List<String> values) {
+        List<String> rules = new ArrayList<>();
+        for (String rule : values) {
+            if (rule != null && !rule.trim().isEmpty()) {
+                DestinationWhitelist.validate(rule);
+                rules.add(rule.trim());
+            }
+        }
+        return rules.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(rules);
+    }
+
+    void writeTo(JSONObject json) {
+        if (!allow.isEmpty()) {
+            json.put("allow", new JSONArray(allow));
+        }
+        if (!deny.isEmpty()) {
+            json.put("deny", new JSONArray(deny));
+        }
+        if (!socksWhitelist.isEmpty()) {
+            json.put("socksWhitelist", new JSONArray(socksWhitelist));
+        }
+    }
+
+    boolean isDefault() {
+        return allow.isEmpty() && deny.isEmpty() && socksWhitelist.isEmpty();
+    }
+
+    List<String> getAllow() { return allow; }
+    List<String> getDeny() { return deny; }
+    List<String> getSocksWhitelist() { return socksWhitelist; }
+
+    /**
+     * 合并映射级和环境级规则
+     */
+    AccessRules buildAccessRules(ProxyOptions options) {
+        return AccessRules.build(options.getAllow(), options.getDeny(), allow, deny);
+    }
+
+    DestinationWhitelist buildDestinationWhitelist() {
+        return DestinationWhitelist.build(socksWhitelist);
+    }
+}
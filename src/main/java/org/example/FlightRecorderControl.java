@@ -0,0 +1,85 @@
+package org.example;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 持续 JFR 记录的开关
+ * <p>
+ * 使用 JDK 自带的 default 配置（开销约 1%），再打开 {@link ProxyEvents} 中的自定义事件。
+ * 记录写入磁盘仓库并按时长和大小滚动，随时可以导出最近一段时间的快照。
+ */
+final class FlightRecorderControl {
+    private static final Duration MAX_AGE = Duration.ofHours(1);
+    private static final long MAX_SIZE = 256L * 1024 * 1024;
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private Recording recording;
+
+    synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * @throws IOException    无法读取 JFR 配置
+     * @throws ParseException JFR 配置格式错误
+     */
+    synchronized void start() throws IOException, ParseException {
+        if (recording != null) {
+            return;
+        }
+        Recording r = new Recording(Configuration.getConfiguration("default"));
+        r.setName("proxyer");
+        r.setToDisk(true);
+        r.setMaxAge(MAX_AGE);
+        r.setMaxSize(MAX_SIZE);
+        r.enable(ProxyEvents.AcceptEvent.class);
+        r.enable(ProxyEvents.BackendConnectEvent.class);
+        r.enable(ProxyEvents.TlsHandshakeEvent.class);
+        r.enable(ProxyEvents.SessionCloseEvent.class);
+        r.enable(ProxyEvents.SlowConsumerEvent.class);
+        r.enable(ProxyEvents.StateChangeEvent.class);
+        r.enable(ProxyEvents.CriticalErrorEvent.class);
+        r.start();
+        recording = r;
+    }
+
+    /**
+     * 导出当前记录到工作目录，文件名带时间戳
+     *
+     * @return 导出的文件路径
+     */
+    synchronized Path dump() throws IOException {
+        if (recording == null) {
+            throw new IllegalStateException("JFR 记录未启动");
+        }
+        Path file = Paths.get("proxyer-" + LocalDateTime.now().format(FILE_TIME_FORMAT) + ".jfr").toAbsolutePath();
+        recording.dump(file);
+        return file;
+    }
+
+    /**
+     * 导出并停止记录
+     *
+     * @return 导出的文件路径，未启动记录时为 null
+     */
+    synchronized Path stop() throws IOException {
+        if (recording == null) {
+            return null;
+        }
+        try {
+            return dump();
+        } finally {
+            recording.close();
+            recording = null;
+        }
+    }
+}
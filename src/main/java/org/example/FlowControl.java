@@ -0,0 +1,78 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.Objects;
+
+/**
+ * 映射的转发流量控制选项，与其他高级选项一起平铺保存
+ * <p>
+ * 一个方向待写出的数据达到高水位时暂停读取源端，降到低水位以下再恢复，
+ * 所以每个方向在代理中积压的数据不超过高水位加一次读取。
+ * 一直处于暂停状态超过 slowConsumerTimeout 秒的方向视为慢消费者，计入统计，
+ * disconnectSlowConsumers 为 true 时断开该会话。
+ */
+final class FlowControl {
+    static final FlowControl DEFAULT = new FlowControl(256 * 1024, 64 * 1024, 30, false);
+
+    // 字节
+    private final int highWatermark;
+    private final int lowWatermark;
+    // 秒，0 表示不检测
+    private final int slowConsumerTimeout;
+    private final boolean disconnectSlowConsumers;
+
+    private FlowControl(int highWatermark, int lowWatermark, int slowConsumerTimeout,
+                        boolean disconnectSlowConsumers) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.slowConsumerTimeout = slowConsumerTimeout;
+        this.disconnectSlowConsumers = disconnectSlowConsumers;
+    }
+
+    /**
+     * 规范化后创建：高水位至少为一个最小缓冲区，低水位在 0 到高水位之间
+     */
+    static FlowControl create(int highWatermark, int lowWatermark, int slowConsumerTimeout,
+                              boolean disconnectSlowConsumers) {
+        int high = Math.max(RelayEngine.MIN_BUFFER_SIZE, highWatermark);
+        return new FlowControl(high, Math.min(Math.max(0, lowWatermark), high), Math.max(0, slowConsumerTimeout),
+                disconnectSlowConsumers);
+    }
+
+    void writeTo(JSONObject json) {
+        if (highWatermark != DEFAULT.highWatermark) {
+            json.put("highWatermark", highWatermark);
+        }
+        if (lowWatermark != DEFAULT.lowWatermark) {
+            json.put("lowWatermark", lowWatermark);
+        }
+        if (slowConsumerTimeout != DEFAULT.slowConsumerTimeout) {
+            json.put("slowConsumerTimeout", slowConsumerTimeout);
+        }
+        if (disconnectSlowConsumers) {
+            json.put("disconnectSlowConsumers", true);
+        }
+    }
+
+    int getHighWatermark() { return highWatermark; }
+    int getLowWatermark() { return lowWatermark; }
+    int getSlowConsumerTimeout() { return slowConsumerTimeout; }
+    boolean isDisconnectSlowConsumers() { return disconnectSlowConsumers; }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        FlowControl that = (FlowControl) obj;
+        return highWatermark == that.highWatermark &&
+                lowWatermark == that.lowWatermark &&
+                slowConsumerTimeout == that.slowConsumerTimeout &&
+                disconnectSlowConsumers == that.disconnectSlowConsumers;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(highWatermark, lowWatermark, slowConsumerTimeout, disconnectSlowConsumers);
+    }
+}
@@ -0,0 +1,32 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.Collection;
+
+// 代理实现的公共接口，start() 阻塞直到代理停止
+interface ForwardingProxy {
+    void start() throws IOException;
+    void stop();
+    void clear();
+    ProxyState getState();
+    boolean isManualStop();
+
+    // 替换客户端访问控制规则，运行中立即生效，已建立的连接不受影响
+    void setAccessRules(AccessRules rules);
+    AccessRules getAccessRules();
+
+    // 当前活动会话，可以在遍历时并发变化
+    Collection<ProxySession> getSessions();
+
+    // 映射级累计流量
+    TrafficCounters getTraffic();
+
+    // 会话持有的转发缓冲，UDP 映射使用单个固定缓冲区，返回 null
+    RelayMemory getRelayMemory();
+
+    // 后端连接统计，UDP 映射不建立后端连接，返回 null
+    ConnectMetrics getConnectMetrics();
+
+    // 后端熔断状态，UDP 映射始终为 CLOSED
+    CircuitBreaker.State getBreakerState();
+}
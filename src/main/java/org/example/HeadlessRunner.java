@@ -0,0 +1,120 @@
+package org.example;
+
+import org.example.TCPProxyManagerGUI.ManagedProxy;
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 无界面模式，启动一个环境中的所有映射，日志输出到标准输出
+ * <p>
+ * 用法：--headless &lt;环境名&gt; [--jfr]，加 --jfr 时启动持续 JFR 记录，进程退出时导出。
+ */
+final class HeadlessRunner {
+
+    private HeadlessRunner() {
+    }
+
+    static void main(String[] args) {
+        String environment = null;
+        boolean jfr = false;
+        for (int i = 1; i < args.length; i++) {
+            if ("--jfr".equals(args[i])) {
+                jfr = true;
+            } else if (environment == null) {
+                environment = args[i];
+            }
+        }
+        if (environment == null) {
+            System.err.println("用法: --headless <环境名> [--jfr]");
+            System.exit(1);
+        }
+
+        Map<String, List<ProxyConfig>> environments = new HashMap<>();
+        Map<String, EnvironmentOptions> environmentOptions = new HashMap<>();
+        try {
+            TCPProxyManagerGUI.readConfig(environments, environmentOptions).forEach(HeadlessRunner::logError);
+        } catch (Exception e) {
+            logError("配置文件加载失败: " + e.getMessage());
+            System.exit(1);
+        }
+        List<ProxyConfig> configs = environments.get(environment);
+        if (configs == null) {
+            logError("环境不存在: " + environment);
+            System.exit(1);
+        }
+
+        FlightRecorderControl flightRecorder = new FlightRecorderControl();
+        if (jfr) {
+            try {
+                flightRecorder.start();
+                log("JFR 持续记录已开始");
+            } catch (Exception e) {
+                logError("JFR 记录启动失败: " + e.getMessage());
+            }
+        }
+
+        EnvironmentOptions envOptions = environmentOptions.getOrDefault(environment, EnvironmentOptions.DEFAULT);
+        List<ManagedProxy> proxies = new ArrayList<>();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        for (ProxyConfig config : configs) {
+            ManagedProxy proxy = new ManagedProxy(config, envOptions);
+            proxies.add(proxy);
+            executor.execute(() -> {
+                try {
+                    log("正在启动代理: " + config.getDescription() + " (本地端口:" + config.getLocalPorts() + ")");
+                    proxy.start();
+                } catch (Exception e) {
+                    if (proxy.isManualStop()) {
+                        log("代理已停止: " + config.getDescription());
+                    } else {
+                        logError("启动代理失败 [" + config.getDescription() + "]: " + e.getMessage());
+                    }
+                }
+            });
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (ManagedProxy proxy : proxies) {
+                proxy.stop();
+            }
+            executor.shutdown();
+            try {
+                Path file = flightRecorder.stop();
+                if (file != null) {
+                    log("JFR 记录已导出到: " + file);
+                }
+            } catch (Exception e) {
+                logError("JFR 记录导出失败: " + e.getMessage());
+            }
+            stopped.countDown();
+        }, "headless-shutdown"));
+
+        log("无界面模式已启动，环境: " + environment + "，映射数: " + configs.size());
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void log(String message) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+        System.out.printf("[%s] %s%n", timestamp, message);
+    }
+
+    private static void logError(String message) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+        System.err.printf("[%s] [错误] %s%n", timestamp, message);
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 退出时的界面状态：显示的环境和其中运行中的映射，下次启动时直接恢复
+ * <p>
+ * 映射按 协议/本地端口 识别，同一协议的本地端口不会重叠；修改配置后不再匹配的映射不会自动启动。
+ */
+final class LastSession {
+    static final LastSession NONE = new LastSession(null, Collections.emptySet());
+
+    private final String environment;
+    private final Set<String> running;
+
+    LastSession(String environment, Set<String> running) {
+        this.environment = environment;
+        this.running = running;
+    }
+
+    static String keyOf(ProxyConfig config) {
+        return config.getProtocol().name() + "/" + config.getLocalPorts();
+    }
+
+    /**
+     * 文件不存在或格式错误时返回 {@link #NONE}
+     */
+    static LastSession read(Path file) {
+        if (!Files.exists(file)) {
+            return NONE;
+        }
+        String environment = null;
+        Set<String> running = new HashSet<>();
+        try (JSONReader reader = JSONReader.of(Files.readAllBytes(file))) {
+            if (!reader.nextIfObjectStart()) {
+                return NONE;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                switch (reader.readFieldName()) {
+                    case "environment":
+                        environment = reader.readString();
+                        break;
+                    case "running":
+                        if (!reader.nextIfNull()) {
+                            reader.nextIfArrayStart();
+                            while (!reader.nextIfArrayEnd()) {
+                                running.add(reader.readString());
+                            }
+                            reader.nextIfComma();
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return NONE;
+        }
+        return new LastSession(environment, running);
+    }
+
+    void write(Path file) throws IOException {
+        JSONObject json = new JSONObject();
+        if (environment != null) {
+            json.put("environment", environment);
+        }
+        json.put("running", new JSONArray(running));
+        Files.write(file, json.toJSONString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    String getEnvironment() { return environment; }
+
+    boolean wasRunning(ProxyConfig config) {
+        return running.contains(keyOf(config));
+    }
+}
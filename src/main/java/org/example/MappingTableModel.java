@@ -0,0 +1,562 @@
+package org.example;
+
+import org.example.TCPProxyManagerGUI.ManagedProxy;
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 映射表格的数据，按列保存
+ * <p>
+ * 每列一个数组，协议、状态和熔断状态保存为序号，端口另存解析后的起止值。每行的 ProxyConfig 在编辑时重新解析并缓存，
+ * 刷新状态、启停和保存环境不再逐个单元格解析。勾选状态保存在 BitSet 中，全选和取消全选不逐行修改。
+ * <p>
+ * 描述、远程地址和端口文本按三字符分片建立搜索索引，编辑和追加行时增量更新，删除行后在下一次搜索时重建；
+ * 搜索词是端口号时同时匹配包含该端口的区间。当前搜索的结果按行保存，行被编辑时只重新判断这一行。
+ */
+class MappingTableModel extends AbstractTableModel {
+    static final int COL_SELECT = 0;
+    static final int COL_DESC = 1;
+    static final int COL_PROTOCOL = 2;
+    static final int COL_REMOTE_HOST = 3;
+    static final int COL_REMOTE_PORT = 4;
+    static final int COL_LOCAL_PORT = 5;
+    static final int COL_STATUS = 6;
+    // 隐藏列，保存不在表格中显示的高级选项
+    static final int COL_OPTIONS = 7;
+    // 隐藏列，后端熔断状态，由状态列一起显示
+    static final int COL_BREAKER = 8;
+
+    private static final String[] COLUMNS = {"选择", "描述", "协议", "远程地址", "远程端口", "本地端口", "状态", "选项", "熔断"};
+    private static final ProxyProtocol[] PROTOCOLS = ProxyProtocol.values();
+    private static final ProxyState[] STATES = ProxyState.values();
+    private static final CircuitBreaker.State[] BREAKER_STATES = CircuitBreaker.State.values();
+    private static final int INITIAL_CAPACITY = 16;
+    // 分片长度，短于它的搜索词逐行比较
+    private static final int GRAM = 3;
+
+    private int rowCount;
+    private final BitSet checked = new BitSet();
+    private String[] descriptions = new String[INITIAL_CAPACITY];
+    private byte[] protocols = new byte[INITIAL_CAPACITY];
+    private String[] remoteHosts = new String[INITIAL_CAPACITY];
+    private String[] remotePorts = new String[INITIAL_CAPACITY];
+    private String[] localPorts = new String[INITIAL_CAPACITY];
+    // 解析后的端口区间，格式错误或为空时为 0
+    private int[] remoteStarts = new int[INITIAL_CAPACITY];
+    private int[] remoteEnds = new int[INITIAL_CAPACITY];
+    private int[] localStarts = new int[INITIAL_CAPACITY];
+    private int[] localEnds = new int[INITIAL_CAPACITY];
+    private byte[] states = new byte[INITIAL_CAPACITY];
+    private byte[] breakers = new byte[INITIAL_CAPACITY];
+    private ProxyOptions[] options = new ProxyOptions[INITIAL_CAPACITY];
+    // 按行解析的配置，配置不完整或格式错误时为 null
+    private ProxyConfig[] configs = new ProxyConfig[INITIAL_CAPACITY];
+
+    // 搜索用的小写文本和分片索引
+    private String[] searchKeys = new String[INITIAL_CAPACITY];
+    private final Map<Long, BitSet> grams = new HashMap<>();
+    private boolean indexStale;
+    // 当前搜索词，为 null 时显示所有行
+    private String query;
+    private final BitSet matches = new BitSet();
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        if (column == COL_SELECT) return Boolean.class;
+        if (column == COL_PROTOCOL) return ProxyProtocol.class;
+        if (column == COL_STATUS) return ProxyState.class;
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        switch (column) {
+            case COL_SELECT:
+                return checked.get(row);
+            case COL_DESC:
+                return descriptions[row];
+            case COL_PROTOCOL:
+                return PROTOCOLS[protocols[row]];
+            case COL_REMOTE_HOST:
+                return remoteHosts[row];
+            case COL_REMOTE_PORT:
+                return remotePorts[row];
+            case COL_LOCAL_PORT:
+                return localPorts[row];
+            case COL_STATUS:
+                return STATES[states[row]];
+            case COL_OPTIONS:
+                return options[row];
+            case COL_BREAKER:
+                return BREAKER_STATES[breakers[row]];
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        switch (column) {
+            case COL_SELECT:
+                checked.set(row, Boolean.TRUE.equals(value));
+                break;
+            case COL_DESC:
+                descriptions[row] = (String) value;
+                break;
+            case COL_PROTOCOL:
+                protocols[row] = (byte) ((ProxyProtocol) value).ordinal();
+                break;
+            case COL_REMOTE_HOST:
+                remoteHosts[row] = (String) value;
+                break;
+            case COL_REMOTE_PORT:
+                remotePorts[row] = value != null ? value.toString() : null;
+                break;
+            case COL_LOCAL_PORT:
+                localPorts[row] = value != null ? value.toString() : null;
+                break;
+            case COL_STATUS:
+                states[row] = (byte) ((ProxyState) value).ordinal();
+                break;
+            case COL_OPTIONS:
+                options[row] = (ProxyOptions) value;
+                break;
+            case COL_BREAKER:
+                breakers[row] = (byte) ((CircuitBreaker.State) value).ordinal();
+                break;
+            default:
+                return;
+        }
+        if (column >= COL_DESC && column <= COL_LOCAL_PORT || column == COL_OPTIONS) {
+            parse(row);
+        }
+        if (column == COL_DESC || column == COL_REMOTE_HOST || column == COL_REMOTE_PORT || column == COL_LOCAL_PORT) {
+            reindex(row);
+        }
+        fireTableCellUpdated(row, column);
+    }
+
+    /**
+     * 用环境中的映射替换所有行，只通知表格一次
+     *
+     * @param proxies 映射对应的代理，没有时按未启动显示
+     */
+    void setMappings(List<ProxyConfig> mappings, Map<ProxyConfig, ManagedProxy> proxies) {
+        rowCount = 0;
+        checked.clear();
+        // 索引在下一次搜索时整体重建
+        indexStale = true;
+        ensureCapacity(mappings.size());
+        for (ProxyConfig config : mappings) {
+            ManagedProxy proxy = proxies.get(config);
+            put(rowCount++, config.getDescription(), config.getProtocol(), config.getRemoteHost(),
+                    config.isDynamic() ? "" : config.getRemotePorts().toString(), config.getLocalPorts().toString(),
+                    proxy != null ? proxy.getState() : ProxyState.INIT, config.getOptions(),
+                    proxy != null ? proxy.getBreakerState() : CircuitBreaker.State.CLOSED);
+        }
+        Arrays.fill(configs, rowCount, configs.length, null);
+        refreshMatches();
+        fireTableDataChanged();
+    }
+
+    /**
+     * 追加一行待编辑的 TCP 映射
+     */
+    void addMapping(String description) {
+        ensureCapacity(rowCount + 1);
+        int row = rowCount++;
+        put(row, description, ProxyProtocol.TCP, "", "", "", ProxyState.INIT, ProxyOptions.DEFAULT,
+                CircuitBreaker.State.CLOSED);
+        fireTableRowsInserted(row, row);
+    }
+
+    /**
+     * 删除多行，数组只压缩一次
+     */
+    void removeRows(Collection<Integer> rows) {
+        BitSet removed = new BitSet();
+        rows.forEach(removed::set);
+        int target = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (removed.get(row)) {
+                continue;
+            }
+            if (target != row) {
+                move(row, target);
+            }
+            target++;
+        }
+        Arrays.fill(configs, target, rowCount, null);
+        Arrays.fill(options, target, rowCount, null);
+        checked.clear(target, rowCount);
+        rowCount = target;
+        indexStale = true;
+        refreshMatches();
+        fireTableDataChanged();
+    }
+
+    void clear() {
+        setMappings(new ArrayList<>(), new HashMap<>());
+    }
+
+    /**
+     * @return 配置不完整或格式错误时返回 null
+     */
+    ProxyConfig getConfig(int row) {
+        return row >= 0 && row < rowCount ? configs[row] : null;
+    }
+
+    /**
+     * 保存环境时使用的配置：描述和远程地址去掉首尾空白，缺少描述或远程地址的行忽略
+     */
+    List<ProxyConfig> toConfigs() {
+        List<ProxyConfig> result = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            ProxyConfig config = configs[row];
+            if (config == null) {
+                continue;
+            }
+            if (config.isDynamic()) {
+                // dynamicConfig 已经检查并去掉了描述的空白
+                result.add(config);
+                continue;
+            }
+            String desc = config.getDescription().trim();
+            String host = config.getRemoteHost().trim();
+            if (desc.isEmpty() || host.isEmpty()) {
+                continue;
+            }
+            result.add(desc.equals(config.getDescription()) && host.equals(config.getRemoteHost()) ? config
+                    : new ProxyConfig(config.getLocalPort(), config.getLocalPortEnd(), host, config.getRemotePort(),
+                    desc, config.getProtocol(), config.getOptions()));
+        }
+        return result;
+    }
+
+    List<Integer> getCheckedRows() {
+        List<Integer> rows = new ArrayList<>(checked.cardinality());
+        for (int row = checked.nextSetBit(0); row >= 0; row = checked.nextSetBit(row + 1)) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 勾选或取消勾选所有显示的行，有搜索词时只影响匹配的行
+     */
+    void setAllChecked(boolean selected) {
+        if (rowCount == 0) {
+            return;
+        }
+        BitSet visible = new BitSet();
+        if (query == null) {
+            visible.set(0, rowCount);
+        } else {
+            visible.or(matches);
+        }
+        if (selected) {
+            checked.or(visible);
+        } else {
+            checked.andNot(visible);
+        }
+        fireTableChanged(new TableModelEvent(this, 0, rowCount - 1, COL_SELECT));
+    }
+
+    /**
+     * 设置搜索词，不区分大小写
+     *
+     * @param text 为空时显示所有行
+     */
+    void setQuery(String text) {
+        String normalized = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        query = normalized.isEmpty() ? null : normalized;
+        refreshMatches();
+    }
+
+    /**
+     * 行是否匹配当前搜索词，供表格的行过滤器调用
+     */
+    boolean isVisible(int row) {
+        return query == null || matches.get(row);
+    }
+
+    private void refreshMatches() {
+        matches.clear();
+        if (query == null) {
+            return;
+        }
+        if (query.length() < GRAM) {
+            for (int row = 0; row < rowCount; row++) {
+                if (searchKeys[row].contains(query)) {
+                    matches.set(row);
+                }
+            }
+        } else {
+            if (indexStale) {
+                rebuildIndex();
+            }
+            // 所有分片都出现的行才可能包含搜索词，再逐行确认
+            BitSet candidates = null;
+            for (int i = 0; i + GRAM <= query.length(); i++) {
+                BitSet rows = grams.get(gram(query, i));
+                if (rows == null) {
+                    candidates = new BitSet();
+                    break;
+                }
+                if (candidates == null) {
+                    candidates = (BitSet) rows.clone();
+                } else {
+                    candidates.and(rows);
+                }
+            }
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                if (searchKeys[row].contains(query)) {
+                    matches.set(row);
+                }
+            }
+        }
+        int port = portOf(query);
+        if (port > 0) {
+            for (int row = 0; row < rowCount; row++) {
+                if (port >= localStarts[row] && port <= localEnds[row]
+                        || port >= remoteStarts[row] && port <= remoteEnds[row]) {
+                    matches.set(row);
+                }
+            }
+        }
+    }
+
+    private boolean rowMatches(int row) {
+        if (searchKeys[row].contains(query)) {
+            return true;
+        }
+        int port = portOf(query);
+        return port > 0 && (port >= localStarts[row] && port <= localEnds[row]
+                || port >= remoteStarts[row] && port <= remoteEnds[row]);
+    }
+
+    private void rebuildIndex() {
+        grams.clear();
+        for (int row = 0; row < rowCount; row++) {
+            addGrams(row, searchKeys[row]);
+        }
+        indexStale = false;
+    }
+
+    // 单行的搜索文本变化后更新索引和匹配结果
+    private void reindex(int row) {
+        String oldKey = searchKeys[row];
+        String newKey = searchKey(row);
+        searchKeys[row] = newKey;
+        if (!indexStale) {
+            removeGrams(row, oldKey);
+            addGrams(row, newKey);
+        }
+        if (query != null) {
+            matches.set(row, rowMatches(row));
+        }
+    }
+
+    private void addGrams(int row, String key) {
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            grams.computeIfAbsent(gram(key, i), k -> new BitSet()).set(row);
+        }
+    }
+
+    private void removeGrams(int row, String key) {
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            Long gram = gram(key, i);
+            BitSet rows = grams.get(gram);
+            if (rows != null) {
+                rows.clear(row);
+                if (rows.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static long gram(String text, int start) {
+        return (long) text.charAt(start) << 32 | (long) text.charAt(start + 1) << 16 | text.charAt(start + 2);
+    }
+
+    // 字段之间用换行分隔，搜索词不会跨字段匹配
+    private String searchKey(int row) {
+        return (nonNull(descriptions[row]) + '\n' + nonNull(remoteHosts[row]) + '\n' + nonNull(remotePorts[row])
+                + '\n' + nonNull(localPorts[row])).toLowerCase(Locale.ROOT);
+    }
+
+    private void put(int row, String description, ProxyProtocol protocol, String remoteHost, String remotePort,
+                     String localPort, ProxyState state, ProxyOptions rowOptions, CircuitBreaker.State breaker) {
+        descriptions[row] = description;
+        protocols[row] = (byte) protocol.ordinal();
+        remoteHosts[row] = remoteHost;
+        remotePorts[row] = remotePort;
+        localPorts[row] = localPort;
+        states[row] = (byte) state.ordinal();
+        options[row] = rowOptions;
+        breakers[row] = (byte) breaker.ordinal();
+        checked.clear(row);
+        parse(row);
+        searchKeys[row] = searchKey(row);
+        if (!indexStale) {
+            addGrams(row, searchKeys[row]);
+        }
+        if (query != null) {
+            matches.set(row, rowMatches(row));
+        }
+    }
+
+    private void move(int from, int to) {
+        descriptions[to] = descriptions[from];
+        protocols[to] = protocols[from];
+        remoteHosts[to] = remoteHosts[from];
+        remotePorts[to] = remotePorts[from];
+        localPorts[to] = localPorts[from];
+        remoteStarts[to] = remoteStarts[from];
+        remoteEnds[to] = remoteEnds[from];
+        localStarts[to] = localStarts[from];
+        localEnds[to] = localEnds[from];
+        states[to] = states[from];
+        breakers[to] = breakers[from];
+        options[to] = options[from];
+        configs[to] = configs[from];
+        searchKeys[to] = searchKeys[from];
+        checked.set(to, checked.get(from));
+    }
+
+    private void parse(int row) {
+        PortRange remote = lenientPorts(remotePorts[row]);
+        PortRange local = lenientPorts(localPorts[row]);
+        remoteStarts[row] = remote != null ? remote.getStart() : 0;
+        remoteEnds[row] = remote != null ? remote.getEnd() : 0;
+        localStarts[row] = local != null ? local.getStart() : 0;
+        localEnds[row] = local != null ? local.getEnd() : 0;
+        configs[row] = toConfig(descriptions[row], PROTOCOLS[protocols[row]], remoteHosts[row], remotePorts[row],
+                localPorts[row], options[row]);
+    }
+
+    private static ProxyConfig toConfig(String desc, ProxyProtocol protocol, String remoteHost, String remotePortText,
+                                        String localPortText, ProxyOptions options) {
+        if (desc == null || remoteHost == null || remotePortText == null || localPortText == null) {
+            return null;
+        }
+        try {
+            if (protocol == ProxyProtocol.SOCKS5) {
+                return dynamicConfig(desc, localPortText, options);
+            }
+            PortRange remote = PortRange.parse(remotePortText);
+            PortRange local = PortRange.parse(localPortText);
+            if (remote == null || local == null || !isValidPortMapping(local, remote)) {
+                return null;
+            }
+            return new ProxyConfig(local.getStart(), local.getEnd(), remoteHost, remote.getStart(), desc, protocol,
+                    options);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // SOCKS5 行忽略远程地址和端口列
+    static ProxyConfig dynamicConfig(String desc, Object localPortObj, ProxyOptions options) {
+        PortRange localPorts = PortRange.parse(localPortObj);
+        if (desc == null || desc.trim().isEmpty() || localPorts == null) {
+            return null;
+        }
+        return new ProxyConfig(localPorts.getStart(), localPorts.getEnd(), "", 0, desc.trim(),
+                ProxyProtocol.SOCKS5, options);
+    }
+
+    // 远程端口可以只填起始端口；填写区间时长度必须与本地区间一致，且不能超出端口范围
+    static boolean isValidPortMapping(PortRange localPorts, PortRange remotePorts) {
+        if (localPorts == null || remotePorts == null) {
+            return true;
+        }
+        if (!remotePorts.isSinglePort() && remotePorts.size() != localPorts.size()) {
+            return false;
+        }
+        return remotePorts.getStart() + localPorts.size() - 1 <= 65535;
+    }
+
+    private static PortRange lenientPorts(String text) {
+        try {
+            return PortRange.parse(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // 搜索词是 1 到 65535 之间的整数时返回该端口，否则返回 0
+    private static int portOf(String text) {
+        if (text.length() > 5) {
+            return 0;
+        }
+        int port = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            port = port * 10 + (c - '0');
+        }
+        return port <= 65535 ? port : 0;
+    }
+
+    /**
+     * 端口列排序用的键：区间按起始端口，无效值排在最前
+     */
+    static int portSortKey(Object value) {
+        PortRange range = value != null ? lenientPorts(value.toString()) : null;
+        return range != null ? range.getStart() : 0;
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= descriptions.length) {
+            return;
+        }
+        int size = Math.max(capacity, descriptions.length * 2);
+        descriptions = Arrays.copyOf(descriptions, size);
+        protocols = Arrays.copyOf(protocols, size);
+        remoteHosts = Arrays.copyOf(remoteHosts, size);
+        remotePorts = Arrays.copyOf(remotePorts, size);
+        localPorts = Arrays.copyOf(localPorts, size);
+        remoteStarts = Arrays.copyOf(remoteStarts, size);
+        remoteEnds = Arrays.copyOf(remoteEnds, size);
+        localStarts = Arrays.copyOf(localStarts, size);
+        localEnds = Arrays.copyOf(localEnds, size);
+        states = Arrays.copyOf(states, size);
+        breakers = Arrays.copyOf(breakers, size);
+        options = Arrays.copyOf(options, size);
+        configs = Arrays.copyOf(configs, size);
+        searchKeys = Arrays.copyOf(searchKeys, size);
+    }
+}
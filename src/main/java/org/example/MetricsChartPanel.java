@@ -0,0 +1,181 @@
+package org.example;
+
+import javax.swing.*;
+import java.awt.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.function.Supplier;
+
+/**
+ * 流量图表，显示表格中选中映射的历史吞吐量
+ * <p>
+ * 数据直接从映射的时间序列文件读取，可以查看程序重启之前的记录。
+ */
+class MetricsChartPanel extends JPanel {
+    private static final int REFRESH_INTERVAL = 1000;
+    private static final String[] RANGE_NAMES = {"最近1小时（每秒）", "最近1天（每分钟）", "最近35天（每小时）"};
+    private static final Color FROM_CLIENT_COLOR = new Color(0x2E7D32);
+    private static final Color TO_CLIENT_COLOR = new Color(0x1565C0);
+
+    private final JComboBox<String> rangeBox = new JComboBox<>(RANGE_NAMES);
+    private final JLabel summaryLabel = new JLabel("未选择映射");
+    private final Chart chart = new Chart();
+    private final javax.swing.Timer refreshTimer;
+    private String title;
+    private Supplier<MetricsStore> source;
+
+    MetricsChartPanel() {
+        super(new BorderLayout(0, 5));
+
+        rangeBox.addActionListener(e -> refresh());
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.add(summaryLabel, BorderLayout.CENTER);
+        topPanel.add(rangeBox, BorderLayout.EAST);
+
+        add(topPanel, BorderLayout.NORTH);
+        add(chart, BorderLayout.CENTER);
+
+        refreshTimer = new javax.swing.Timer(REFRESH_INTERVAL, e -> {
+            if (isShowing()) {
+                refresh();
+            }
+        });
+        refreshTimer.start();
+    }
+
+    /**
+     * 切换显示的映射
+     *
+     * @param title  映射描述，null 表示未选择
+     * @param source 时间序列存储，没有记录时返回 null
+     */
+    void setSource(String title, Supplier<MetricsStore> source) {
+        this.title = title;
+        this.source = source;
+        refresh();
+    }
+
+    void dispose() {
+        refreshTimer.stop();
+    }
+
+    private void refresh() {
+        MetricsStore store = source != null ? source.get() : null;
+        int archive = rangeBox.getSelectedIndex();
+        if (store == null) {
+            chart.setData(null, archive, 0);
+            summaryLabel.setText(title == null ? "未选择映射" : title + " - 没有流量记录");
+            return;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        long[][] data = store.read(archive, now);
+        chart.setData(data, archive, now);
+
+        long fromClient = 0;
+        long toClient = 0;
+        long sessions = 0;
+        for (long[] slot : data) {
+            fromClient += slot[MetricsStore.FIELD_BYTES_FROM_CLIENT];
+            toClient += slot[MetricsStore.FIELD_BYTES_TO_CLIENT];
+            sessions += slot[MetricsStore.FIELD_SESSIONS];
+        }
+        summaryLabel.setText(String.format("%s - 上行 %s，下行 %s，新建会话 %d", title,
+                SessionInspectorPanel.formatBytes(fromClient), SessionInspectorPanel.formatBytes(toClient), sessions));
+    }
+
+    // 折线图，纵轴为每秒字节数
+    private static class Chart extends JComponent {
+        private static final int MARGIN_LEFT = 80;
+        private static final int MARGIN_RIGHT = 10;
+        private static final int MARGIN_TOP = 10;
+        private static final int MARGIN_BOTTOM = 22;
+
+        private long[][] data;
+        private int archive;
+        private long end;
+
+        Chart() {
+            setFont(new Font("微软雅黑", Font.PLAIN, 12));
+        }
+
+        void setData(long[][] data, int archive, long end) {
+            this.data = data;
+            this.archive = archive;
+            this.end = end;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            try {
+                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g2.setColor(Color.WHITE);
+                g2.fillRect(0, 0, getWidth(), getHeight());
+
+                int width = getWidth() - MARGIN_LEFT - MARGIN_RIGHT;
+                int height = getHeight() - MARGIN_TOP - MARGIN_BOTTOM;
+                if (data == null || width <= 0 || height <= 0) {
+                    return;
+                }
+
+                int step = MetricsStore.STEPS[archive];
+                long max = 1;
+                for (long[] slot : data) {
+                    max = Math.max(max, Math.max(slot[MetricsStore.FIELD_BYTES_FROM_CLIENT],
+                            slot[MetricsStore.FIELD_BYTES_TO_CLIENT]));
+                }
+
+                g2.setColor(Color.LIGHT_GRAY);
+                g2.drawRect(MARGIN_LEFT, MARGIN_TOP, width, height);
+                g2.setColor(Color.DARK_GRAY);
+                FontMetrics fm = g2.getFontMetrics();
+                String maxLabel = SessionInspectorPanel.formatBytes(max / step) + "/s";
+                g2.drawString(maxLabel, MARGIN_LEFT - fm.stringWidth(maxLabel) - 5, MARGIN_TOP + fm.getAscent());
+                g2.drawString("0", MARGIN_LEFT - fm.stringWidth("0") - 5, MARGIN_TOP + height);
+
+                SimpleDateFormat format = new SimpleDateFormat(archive == 0 ? "HH:mm:ss" : "MM-dd HH:mm");
+                long start = end - (long) (data.length - 1) * step;
+                String startLabel = format.format(new Date(start * 1000));
+                String endLabel = format.format(new Date(end * 1000));
+                int labelY = MARGIN_TOP + height + fm.getAscent() + 4;
+                g2.drawString(startLabel, MARGIN_LEFT, labelY);
+                g2.drawString(endLabel, MARGIN_LEFT + width - fm.stringWidth(endLabel), labelY);
+
+                drawSeries(g2, MetricsStore.FIELD_BYTES_FROM_CLIENT, FROM_CLIENT_COLOR, max, width, height);
+                drawSeries(g2, MetricsStore.FIELD_BYTES_TO_CLIENT, TO_CLIENT_COLOR, max, width, height);
+
+                int legendX = MARGIN_LEFT + 10;
+                g2.setColor(FROM_CLIENT_COLOR);
+                g2.drawString("上行", legendX, MARGIN_TOP + fm.getAscent() + 2);
+                g2.setColor(TO_CLIENT_COLOR);
+                g2.drawString("下行", legendX + fm.stringWidth("上行") + 10, MARGIN_TOP + fm.getAscent() + 2);
+            } finally {
+                g2.dispose();
+            }
+        }
+
+        // 槽位多于像素时每个像素取区间内的最大值，避免尖峰被跳过
+        private void drawSeries(Graphics2D g2, int field, Color color, long max, int width, int height) {
+            g2.setColor(color);
+            int columns = Math.min(width, data.length);
+            int prevX = -1;
+            int prevY = -1;
+            for (int column = 0; column < columns; column++) {
+                int from = (int) ((long) column * data.length / columns);
+                int to = (int) ((long) (column + 1) * data.length / columns);
+                long value = 0;
+                for (int i = from; i < to; i++) {
+                    value = Math.max(value, data[i][field]);
+                }
+                int x = MARGIN_LEFT + (columns == 1 ? 0 : column * width / (columns - 1));
+                int y = MARGIN_TOP + height - (int) (value * height / max);
+                if (prevX >= 0) {
+                    g2.drawLine(prevX, prevY, x, y);
+                }
+                prevX = x;
+                prevY = y;
+            }
+        }
+    }
+}
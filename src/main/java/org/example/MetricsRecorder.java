@@ -0,0 +1,103 @@
+package org.example;
+
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 按秒把各映射的累计流量增量写入对应的时间序列文件
+ * <p>
+ * 每个映射一个文件，以 环境/协议/本地端口 作为键，映射重启后继续写入同一文件。
+ * 只在界面线程中调用。
+ */
+final class MetricsRecorder implements Closeable {
+    private static final String FILE_SUFFIX = ".ts";
+
+    private final Path directory;
+    private final Map<String, MetricsStore> stores = new HashMap<>();
+    // 每个计数器上次采样时的值，代理对象回收后自动移除
+    private final Map<TrafficCounters, long[]> lastValues = new WeakHashMap<>();
+    private boolean failed;
+
+    MetricsRecorder(Path directory) {
+        this.directory = directory;
+    }
+
+    static String keyOf(String environment, ProxyConfig config) {
+        return environment + "/" + config.getProtocol() + "/" + config.getLocalPorts();
+    }
+
+    /**
+     * 记录一个映射自上次采样以来的增量
+     *
+     * @param running 未运行且没有增量时不创建文件
+     */
+    void sample(String key, TrafficCounters traffic, boolean running, long epochSecond) {
+        long[] last = lastValues.computeIfAbsent(traffic, t -> new long[MetricsStore.FIELD_COUNT]);
+        long bytesFromClient = traffic.getBytesFromClient();
+        long bytesToClient = traffic.getBytesToClient();
+        long sessions = traffic.getSessions();
+        long deltaFromClient = bytesFromClient - last[MetricsStore.FIELD_BYTES_FROM_CLIENT];
+        long deltaToClient = bytesToClient - last[MetricsStore.FIELD_BYTES_TO_CLIENT];
+        long deltaSessions = sessions - last[MetricsStore.FIELD_SESSIONS];
+        if (!running && deltaFromClient == 0 && deltaToClient == 0 && deltaSessions == 0) {
+            return;
+        }
+
+        MetricsStore store = storeFor(key, true);
+        if (store == null) {
+            return;
+        }
+        store.record(epochSecond, deltaFromClient, deltaToClient, deltaSessions);
+        last[MetricsStore.FIELD_BYTES_FROM_CLIENT] = bytesFromClient;
+        last[MetricsStore.FIELD_BYTES_TO_CLIENT] = bytesToClient;
+        last[MetricsStore.FIELD_SESSIONS] = sessions;
+    }
+
+    /**
+     * 获取映射的存储
+     *
+     * @param create 文件不存在时是否创建
+     * @return 无法打开或不存在时为 null
+     */
+    MetricsStore storeFor(String key, boolean create) {
+        MetricsStore store = stores.get(key);
+        if (store != null || failed) {
+            return store;
+        }
+        try {
+            Path file = directory.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8) + FILE_SUFFIX);
+            if (!create && !Files.exists(file)) {
+                return null;
+            }
+            Files.createDirectories(directory);
+            store = MetricsStore.open(file);
+            stores.put(key, store);
+            return store;
+        } catch (IOException e) {
+            // 目录不可写时停止记录，不影响代理运行
+            failed = true;
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (MetricsStore store : stores.values()) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                // 忽略关闭异常
+            }
+        }
+        stores.clear();
+    }
+}
@@ -0,0 +1,142 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * 单个映射的定长时间序列存储，文件通过 MappedByteBuffer 映射到内存
+ * <p>
+ * 文件包含三个环形归档，分辨率分别为 1 秒、1 分钟、1 小时。每个槽位记录槽位起始时间和该时间段内的
+ * 上行字节、下行字节、新建会话数。写入只是对映射内存的几次读写，不产生系统调用，由操作系统负责落盘；
+ * 槽位起始时间与当前时间不符时说明是上一轮的旧数据，先清零再累加。
+ * <p>
+ * 只允许一个线程写入。
+ */
+final class MetricsStore implements Closeable {
+    static final int FIELD_BYTES_FROM_CLIENT = 0;
+    static final int FIELD_BYTES_TO_CLIENT = 1;
+    static final int FIELD_SESSIONS = 2;
+    static final int FIELD_COUNT = 3;
+
+    // 各归档的分辨率（秒）和槽位数：1 小时、1 天、35 天
+    static final int[] STEPS = {1, 60, 3600};
+    static final int[] SLOTS = {3600, 1440, 840};
+
+    private static final int MAGIC = 0x50585453;  // "PXTS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    // 槽位起始时间 + 各字段
+    private static final int SLOT_SIZE = 8 + FIELD_COUNT * 8;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int[] archiveOffsets = new int[STEPS.length];
+
+    private MetricsStore(RandomAccessFile file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < STEPS.length; i++) {
+            archiveOffsets[i] = offset;
+            offset += SLOTS[i] * SLOT_SIZE;
+        }
+    }
+
+    static int fileSize() {
+        int size = HEADER_SIZE;
+        for (int slots : SLOTS) {
+            size += slots * SLOT_SIZE;
+        }
+        return size;
+    }
+
+    /**
+     * 打开或创建存储文件，格式不符的文件会被重新初始化
+     */
+    static MetricsStore open(Path path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            int size = fileSize();
+            boolean fresh = file.length() != size;
+            file.setLength(size);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                for (int i = 0; i < size; i += 8) {
+                    buffer.putLong(i, 0);
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, STEPS.length);
+            }
+            return new MetricsStore(file, buffer);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 把一段时间内的增量累加到所有归档的当前槽位
+     */
+    void record(long epochSecond, long bytesFromClient, long bytesToClient, long sessions) {
+        for (int archive = 0; archive < STEPS.length; archive++) {
+            int slot = slotOffset(archive, epochSecond);
+            add(slot, FIELD_BYTES_FROM_CLIENT, bytesFromClient);
+            add(slot, FIELD_BYTES_TO_CLIENT, bytesToClient);
+            add(slot, FIELD_SESSIONS, sessions);
+        }
+    }
+
+    /**
+     * 读取一个归档截至 epochSecond 的全部槽位，按时间从旧到新排列，没有数据的槽位为0
+     *
+     * @return [槽位][字段]
+     */
+    long[][] read(int archive, long epochSecond) {
+        int step = STEPS[archive];
+        int slots = SLOTS[archive];
+        long current = epochSecond / step * step;
+        long[][] result = new long[slots][FIELD_COUNT];
+        for (int i = 0; i < slots; i++) {
+            long slotStart = current - (long) (slots - 1 - i) * step;
+            int offset = archiveOffsets[archive] + (int) ((slotStart / step) % slots) * SLOT_SIZE;
+            if (buffer.getLong(offset) == slotStart) {
+                for (int field = 0; field < FIELD_COUNT; field++) {
+                    result[i][field] = buffer.getLong(offset + 8 + field * 8);
+                }
+            }
+        }
+        return result;
+    }
+
+    // 定位当前槽位，槽位属于上一轮时清零
+    private int slotOffset(int archive, long epochSecond) {
+        int step = STEPS[archive];
+        long slotStart = epochSecond / step * step;
+        int offset = archiveOffsets[archive] + (int) ((slotStart / step) % SLOTS[archive]) * SLOT_SIZE;
+        if (buffer.getLong(offset) != slotStart) {
+            buffer.putLong(offset, slotStart);
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                buffer.putLong(offset + 8 + field * 8, 0);
+            }
+        }
+        return offset;
+    }
+
+    private void add(int slot, int field, long delta) {
+        if (delta != 0) {
+            int offset = slot + 8 + field * 8;
+            buffer.putLong(offset, buffer.getLong(offset) + delta);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+}
@@ -0,0 +1,62 @@
+package org.example;
+
+/**
+ * 连续端口区间，单个端口表示为起止相同的区间
+ * <p>
+ * 文本格式为 "30000" 或 "30000-30999"。
+ */
+final class PortRange {
+    private final int start;
+    private final int end;
+
+    PortRange(int start, int end) {
+        if (start < 1 || end > 65535 || start > end) {
+            throw new NumberFormatException("无效的端口区间: " + start + "-" + end);
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * 解析表格或配置中的端口值，支持 Integer 和 "起始-结束" 格式的字符串
+     *
+     * @return 空值返回 null
+     * @throws NumberFormatException 格式错误或端口超出范围
+     */
+    static PortRange parse(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Integer) {
+            int port = (Integer) value;
+            return new PortRange(port, port);
+        }
+        String text = value.toString().trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        int dash = text.indexOf('-');
+        if (dash < 0) {
+            int port = Integer.parseInt(text);
+            return new PortRange(port, port);
+        }
+        return new PortRange(Integer.parseInt(text.substring(0, dash).trim()),
+                Integer.parseInt(text.substring(dash + 1).trim()));
+    }
+
+    int getStart() { return start; }
+    int getEnd() { return end; }
+
+    int size() {
+        return end - start + 1;
+    }
+
+    boolean isSinglePort() {
+        return start == end;
+    }
+
+    @Override
+    public String toString() {
+        return isSinglePort() ? String.valueOf(start) : start + "-" + end;
+    }
+}
@@ -0,0 +1,59 @@
+package org.example;
+
+/**
+ * 全局本地端口占用索引，所有环境共用
+ * <p>
+ * 每种协议一个按端口号直接寻址的数组，绑定前检查单个端口是 O(1)，不需要遍历其他环境的映射。
+ * TCP 和 UDP 的端口互不冲突，分开记录。
+ *
+ * @param <T> 占用者，按引用比较
+ */
+final class PortRegistry<T> {
+    private static final int PORT_COUNT = 65536;
+
+    private final Object[] tcpOwners = new Object[PORT_COUNT];
+    private final Object[] udpOwners = new Object[PORT_COUNT];
+
+    /**
+     * 占用 start..end 的所有端口，任一端口已被其他占用者占用时不做任何修改
+     *
+     * @return 冲突的占用者，成功时返回 null
+     */
+    synchronized T claim(ProxyProtocol protocol, int start, int end, T owner) {
+        Object[] owners = ownersOf(protocol);
+        for (int port = start; port <= end; port++) {
+            if (owners[port] != null && owners[port] != owner) {
+                return cast(owners[port]);
+            }
+        }
+        for (int port = start; port <= end; port++) {
+            owners[port] = owner;
+        }
+        return null;
+    }
+
+    /**
+     * 释放 start..end 中仍由 owner 占用的端口
+     */
+    synchronized void release(ProxyProtocol protocol, int start, int end, T owner) {
+        Object[] owners = ownersOf(protocol);
+        for (int port = start; port <= end; port++) {
+            if (owners[port] == owner) {
+                owners[port] = null;
+            }
+        }
+    }
+
+    synchronized T ownerOf(ProxyProtocol protocol, int port) {
+        return cast(ownersOf(protocol)[port]);
+    }
+
+    private Object[] ownersOf(ProxyProtocol protocol) {
+        return protocol == ProxyProtocol.UDP ? udpOwners : tcpOwners;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object owner) {
+        return (T) owner;
+    }
+}
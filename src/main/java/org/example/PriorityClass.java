@@ -0,0 +1,34 @@
+package org.example;
+
+import java.util.Locale;
+
+/**
+ * 映射的转发优先级，由 {@link RelayEngine} 调度
+ * <p>
+ * 每轮就绪事件按优先级从高到低处理，各级按权重分配本轮可转发的字节数：交互式映射（如 SSH）排在最前，
+ * 大流量传输占满带宽时也只能使用自己的份额。声明顺序即处理顺序。
+ */
+enum PriorityClass {
+    INTERACTIVE("交互", 4),
+    NORMAL("普通", 2),
+    BULK("批量", 1);
+
+    private final String label;
+    private final int weight;
+
+    PriorityClass(String label, int weight) {
+        this.label = label;
+        this.weight = weight;
+    }
+
+    String getLabel() { return label; }
+    int getWeight() { return weight; }
+
+    // 解析配置中的优先级，缺省为 NORMAL
+    static PriorityClass parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NORMAL;
+        }
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,222 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Java Flight Recorder 自定义事件
+ * <p>
+ * 事件在未开启记录时几乎没有开销：调用方只在 shouldCommit() 为 true 时才填充字符串字段。
+ * 所有事件都在 "Proxyer" 分类下，可以和 GC、线程等 JDK 事件放在同一时间轴上对照。
+ */
+final class ProxyEvents {
+
+    private ProxyEvents() {
+    }
+
+    static void accept(int localPort, InetSocketAddress client, boolean allowed) {
+        AcceptEvent event = new AcceptEvent();
+        if (event.shouldCommit()) {
+            event.localPort = localPort;
+            event.client = format(client);
+            event.allowed = allowed;
+            event.commit();
+        }
+    }
+
+    static void stateChange(int localPort, ProxyState from, ProxyState to) {
+        StateChangeEvent event = new StateChangeEvent();
+        if (event.shouldCommit()) {
+            event.localPort = localPort;
+            event.from = from.name();
+            event.to = to.name();
+            event.commit();
+        }
+    }
+
+    static void criticalError(int localPort, Exception e, boolean manualStop) {
+        CriticalErrorEvent event = new CriticalErrorEvent();
+        if (event.shouldCommit()) {
+            event.localPort = localPort;
+            event.exceptionType = e.getClass().getName();
+            event.message = e.getMessage();
+            event.manualStop = manualStop;
+            event.commit();
+        }
+    }
+
+    static void sessionClosed(int localPort, ProxySession session, String reason) {
+        SessionCloseEvent event = new SessionCloseEvent();
+        if (event.shouldCommit()) {
+            event.localPort = localPort;
+            event.client = format(session.getClient());
+            event.backend = session.getBackend();
+            event.bytesFromClient = session.getBytesFromClient();
+            event.bytesToClient = session.getBytesToClient();
+            event.sessionDuration = System.currentTimeMillis() - session.getStartTime();
+            event.timeToFirstByte = session.getTimeToFirstByte();
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    static void slowConsumer(int localPort, ProxySession session, boolean clientSide, long buffered,
+                             boolean disconnected) {
+        SlowConsumerEvent event = new SlowConsumerEvent();
+        if (event.shouldCommit()) {
+            event.localPort = localPort;
+            event.client = format(session.getClient());
+            event.backend = session.getBackend();
+            event.clientSide = clientSide;
+            event.buffered = buffered;
+            event.disconnected = disconnected;
+            event.commit();
+        }
+    }
+
+    private static String format(InetSocketAddress address) {
+        return address == null ? null : address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    @Name("org.example.proxyer.Accept")
+    @Label("Client Accept")
+    @Category("Proxyer")
+    @StackTrace(false)
+    static class AcceptEvent extends Event {
+        @Label("Local Port")
+        int localPort;
+        @Label("Client")
+        String client;
+        @Label("Allowed")
+        @Description("是否通过访问控制规则")
+        boolean allowed;
+    }
+
+    /**
+     * 后端连接耗时即事件的 duration，调用方负责 begin()/end()
+     */
+    @Name("org.example.proxyer.BackendConnect")
+    @Label("Backend Connect")
+    @Category("Proxyer")
+    @StackTrace(false)
+    static class BackendConnectEvent extends Event {
+        @Label("Local Port")
+        int localPort;
+        @Label("Target")
+        String target;
+        @Label("Address")
+        @Description("实际连接的IP地址")
+        String address;
+        @Label("Success")
+        boolean success;
+        @Label("Error")
+        String error;
+    }
+
+    /**
+     * TLS 握手耗时即事件的 duration，调用方负责 begin()/end()
+     */
+    @Name("org.example.proxyer.TlsHandshake")
+    @Label("TLS Handshake")
+    @Category("Proxyer")
+    @StackTrace(false)
+    static class TlsHandshakeEvent extends Event {
+        @Label("Local Port")
+        int localPort;
+        @Label("Backend Side")
+        @Description("是否为代理到后端的握手")
+        boolean backend;
+        @Label("Protocol")
+        String protocol;
+        @Label("Cipher Suite")
+        String cipherSuite;
+        @Label("Resumed")
+        @Description("是否复用了之前的会话")
+        boolean resumed;
+        @Label("Error")
+        String error;
+    }
+
+    @Name("org.example.proxyer.SessionClose")
+    @Label("Session Close")
+    @Category("Proxyer")
+    @StackTrace(false)
+    static class SessionCloseEvent extends Event {
+        @Label("Local Port")
+        int localPort;
+        @Label("Client")
+        String client;
+        @Label("Backend")
+        String backend;
+        @Label("Bytes From Client")
+        @DataAmount
+        long bytesFromClient;
+        @Label("Bytes To Client")
+        @DataAmount
+        long bytesToClient;
+        @Label("Session Duration")
+        @Timespan(Timespan.MILLISECONDS)
+        long sessionDuration;
+        @Label("Time To First Byte")
+        @Timespan(Timespan.MILLISECONDS)
+        long timeToFirstByte;
+        @Label("Close Reason")
+        String reason;
+    }
+
+    @Name("org.example.proxyer.SlowConsumer")
+    @Label("Slow Consumer")
+    @Category("Proxyer")
+    @StackTrace(false)
+    static class SlowConsumerEvent extends Event {
+        @Label("Local Port")
+        int localPort;
+        @Label("Client")
+        String client;
+        @Label("Backend")
+        String backend;
+        @Label("Client Side")
+        @Description("慢的是客户端还是后端")
+        boolean clientSide;
+        @Label("Buffered")
+        @DataAmount
+        long buffered;
+        @Label("Disconnected")
+        boolean disconnected;
+    }
+
+    @Name("org.example.proxyer.StateChange")
+    @Label("Proxy State Change")
+    @Category("Proxyer")
+    @StackTrace(false)
+    static class StateChangeEvent extends Event {
+        @Label("Local Port")
+        int localPort;
+        @Label("From")
+        String from;
+        @Label("To")
+        String to;
+    }
+
+    @Name("org.example.proxyer.CriticalError")
+    @Label("Critical Error")
+    @Category("Proxyer")
+    static class CriticalErrorEvent extends Event {
+        @Label("Local Port")
+        int localPort;
+        @Label("Exception Type")
+        String exceptionType;
+        @Label("Message")
+        String message;
+        @Label("Manual Stop")
+        boolean manualStop;
+    }
+}
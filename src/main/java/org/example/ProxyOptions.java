@@ -0,0 +1,176 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * 映射的高级选项
+ * <p>
+ * 这些选项不在表格中单独成列，与映射的其他字段一起平铺保存在 config.json 中，
+ * 只写出与默认值不同的项。
+ */
+final class ProxyOptions {
+    static final ProxyOptions DEFAULT = new ProxyOptions(1, 2, Collections.emptyList(), Collections.emptyList(),
+            "", "", "", "", 2, false, 4, TlsOptions.NONE, PriorityClass.NORMAL, FlowControl.DEFAULT);
+
+    // 监听同一端口的 acceptor 数量，大于1时依赖 SO_REUSEPORT
+    private final int acceptors;
+    // 后端所有地址都连接失败后的重试轮数
+    private final int connectRetries;
+    // 映射级客户端访问控制规则（CIDR）
+    private final List<String> allow;
+    private final List<String> deny;
+    // SOCKS5 监听的用户名和密码，用户名为空时不要求认证
+    private final String socksUser;
+    private final String socksPassword;
+    // 隧道模式的中继地址（主机:端口），为空时直接连接后端
+    private final String tunnel;
+    private final String tunnelToken;
+    // 到中继的长连接数量
+    private final int tunnelLinks;
+    // 是否把转发的数据抓包到 capture 目录，以及环形保留的段文件数量
+    private final boolean capture;
+    private final int captureSegments;
+    private final TlsOptions tls;
+    // 转发调度的优先级
+    private final PriorityClass priority;
+    private final FlowControl flowControl;
+
+    private ProxyOptions(int acceptors, int connectRetries, List<String> allow, List<String> deny,
+                         String socksUser, String socksPassword, String tunnel, String tunnelToken, int tunnelLinks,
+                         boolean capture, int captureSegments, TlsOptions tls, PriorityClass priority,
+                         FlowControl flowControl) {
+        this.acceptors = acceptors;
+        this.connectRetries = connectRetries;
+        this.allow = allow;
+        this.deny = deny;
+        this.socksUser = socksUser;
+        this.socksPassword = socksPassword;
+        this.tunnel = tunnel;
+        this.tunnelToken = tunnelToken;
+        this.tunnelLinks = tunnelLinks;
+        this.capture = capture;
+        this.captureSegments = captureSegments;
+        this.tls = tls;
+        this.priority = priority;
+        this.flowControl = flowControl;
+    }
+
+    /**
+     * 规范化各字段后创建，由 ConfigBinder 调用；字符串为 null 时视为空
+     *
+     * @param allow 已校验的 CIDR 列表，见 {@link #cidrList(List)}
+     */
+    static ProxyOptions create(int acceptors, int connectRetries, List<String> allow, List<String> deny,
+                               String socksUser, String socksPassword, String tunnel, String tunnelToken,
+                               int tunnelLinks, boolean capture, int captureSegments, TlsOptions tls,
+                               PriorityClass priority, FlowControl flowControl) {
+        return new ProxyOptions(Math.max(1, acceptors), Math.max(0, connectRetries), allow, deny,
+                Objects.toString(socksUser, ""), Objects.toString(socksPassword, ""),
+                Objects.toString(tunnel, "").trim(), Objects.toString(tunnelToken, ""),
+                Math.max(1, tunnelLinks), capture, Math.max(1, captureSegments), tls, priority, flowControl);
+    }
+
+    void writeTo(JSONObject json) {
+        if (acceptors != DEFAULT.acceptors) {
+            json.put("acceptors", acceptors);
+        }
+        if (connectRetries != DEFAULT.connectRetries) {
+            json.put("connectRetries", connectRetries);
+        }
+        if (!allow.isEmpty()) {
+            json.put("allow", new JSONArray(allow));
+        }
+        if (!deny.isEmpty()) {
+            json.put("deny", new JSONArray(deny));
+        }
+        if (!socksUser.isEmpty()) {
+            json.put("socksUser", socksUser);
+            json.put("socksPassword", socksPassword);
+        }
+        if (!tunnel.isEmpty()) {
+            json.put("tunnel", tunnel);
+            if (!tunnelToken.isEmpty()) {
+                json.put("tunnelToken", tunnelToken);
+            }
+            if (tunnelLinks != DEFAULT.tunnelLinks) {
+                json.put("tunnelLinks", tunnelLinks);
+            }
+        }
+        if (capture) {
+            json.put("capture", true);
+            if (captureSegments != DEFAULT.captureSegments) {
+                json.put("captureSegments", captureSegments);
+            }
+        }
+        tls.writeTo(json);
+        if (priority != DEFAULT.priority) {
+            json.put("priority", priority.name().toLowerCase(Locale.ROOT));
+        }
+        flowControl.writeTo(json);
+    }
+
+    /**
+     * 校验 CIDR 列表，去掉空项
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    static List<String> cidrList(List<String> values) {
+        List<String> cidrs = new ArrayList<>();
+        for (String cidr : values) {
+            if (cidr != null && !cidr.trim().isEmpty()) {
+                AccessRules.validate(cidr);
+                cidrs.add(cidr.trim());
+            }
+        }
+        return cidrs.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(cidrs);
+    }
+
+    int getAcceptors() { return acceptors; }
+    int getConnectRetries() { return connectRetries; }
+    List<String> getAllow() { return allow; }
+    List<String> getDeny() { return deny; }
+    String getSocksUser() { return socksUser; }
+    String getSocksPassword() { return socksPassword; }
+    String getTunnel() { return tunnel; }
+    String getTunnelToken() { return tunnelToken; }
+    int getTunnelLinks() { return tunnelLinks; }
+    boolean isCapture() { return capture; }
+    int getCaptureSegments() { return captureSegments; }
+    TlsOptions getTls() { return tls; }
+    PriorityClass getPriority() { return priority; }
+    FlowControl getFlowControl() { return flowControl; }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        ProxyOptions that = (ProxyOptions) obj;
+        return acceptors == that.acceptors &&
+                connectRetries == that.connectRetries &&
+                allow.equals(that.allow) &&
+                deny.equals(that.deny) &&
+                socksUser.equals(that.socksUser) &&
+                socksPassword.equals(that.socksPassword) &&
+                tunnel.equals(that.tunnel) &&
+                tunnelToken.equals(that.tunnelToken) &&
+                tunnelLinks == that.tunnelLinks &&
+                capture == that.capture &&
+                captureSegments == that.captureSegments &&
+                tls.equals(that.tls) &&
+                priority == that.priority &&
+                flowControl.equals(that.flowControl);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(acceptors, connectRetries, allow, deny, socksUser, socksPassword, tunnel, tunnelToken,
+                tunnelLinks, capture, captureSegments, tls, priority, flowControl);
+    }
+}
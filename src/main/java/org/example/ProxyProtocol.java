@@ -0,0 +1,19 @@
+package org.example;
+
+import java.util.Locale;
+
+// 转发协议
+enum ProxyProtocol {
+    TCP,
+    UDP,
+    // 动态转发监听，目标由客户端指定，占用 TCP 端口
+    SOCKS5;
+
+    // 解析配置中的协议，缺省为TCP
+    static ProxyProtocol parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return TCP;
+        }
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 代理中的一个客户端会话，供会话查看器展示和断开
+ * <p>
+ * 转发线程在本地累计字节数，最多每 {@link #STATS_PUBLISH_INTERVAL} 毫秒发布一次，
+ * 因此统计值可能滞后不超过该间隔，但转发路径上没有额外的同步开销。
+ * 每个字节计数只由一个线程写入。
+ */
+final class ProxySession {
+    static final long STATS_PUBLISH_INTERVAL = 200;
+
+    // 会话关闭原因，以最先记录的为准
+    static final String CLOSE_NORMAL = "normal";
+    static final String CLOSE_LINGER_TIMEOUT = "linger-timeout";
+    static final String CLOSE_IDLE_TIMEOUT = "idle-timeout";
+    static final String CLOSE_ERROR = "error";
+    static final String CLOSE_KILLED = "killed";
+    static final String CLOSE_PROXY_STOPPED = "proxy-stopped";
+    // 一端长时间不读取，积压达到高水位，见 FlowControl
+    static final String CLOSE_SLOW_CONSUMER = "slow-consumer";
+
+    private static final AtomicLong ID_GENERATOR = new AtomicLong();
+
+    private final long id = ID_GENERATOR.incrementAndGet();
+    private final InetSocketAddress client;
+    private final String backend;
+    private final long startTime = System.currentTimeMillis();
+    private final Runnable killAction;
+    private volatile long bytesFromClient;
+    private volatile long bytesToClient;
+    private volatile long lastActivity = startTime;
+    // 会话开始到收到后端第一个字节的耗时，-1 表示尚未收到
+    private volatile long timeToFirstByte = -1;
+    private volatile String closeReason;
+
+    ProxySession(InetSocketAddress client, String backend, Runnable killAction) {
+        this.client = client;
+        this.backend = backend;
+        this.killAction = killAction;
+    }
+
+    // 只由会话所在的转发线程调用
+    void addBytesFromClient(long bytes, long now) {
+        bytesFromClient += bytes;
+        lastActivity = now;
+    }
+
+    // 只由会话所在的转发线程调用
+    void addBytesToClient(long bytes, long now) {
+        bytesToClient += bytes;
+        lastActivity = now;
+    }
+
+    void markFirstByte(long now) {
+        if (timeToFirstByte < 0) {
+            timeToFirstByte = now - startTime;
+        }
+    }
+
+    /**
+     * 断开会话，关闭两端连接
+     */
+    void kill() {
+        setCloseReason(CLOSE_KILLED);
+        killAction.run();
+    }
+
+    synchronized void setCloseReason(String reason) {
+        if (closeReason == null) {
+            closeReason = reason;
+        }
+    }
+
+    long getId() { return id; }
+    InetSocketAddress getClient() { return client; }
+    String getBackend() { return backend; }
+    long getStartTime() { return startTime; }
+    long getBytesFromClient() { return bytesFromClient; }
+    long getBytesToClient() { return bytesToClient; }
+    long getLastActivity() { return lastActivity; }
+    long getTimeToFirstByte() { return timeToFirstByte; }
+    String getCloseReason() { return closeReason; }
+}
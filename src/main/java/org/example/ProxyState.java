@@ -0,0 +1,21 @@
+package org.example;
+
+import java.awt.Color;
+
+// 状态枚举
+enum ProxyState {
+    INIT("未启动", Color.YELLOW),
+    RUNNING("运行中", Color.GREEN),
+    STOPPED("已停止", Color.RED);
+
+    private final String text;
+    private final Color color;
+
+    ProxyState(String text, Color color) {
+        this.text = text;
+        this.color = color;
+    }
+
+    public String getText() { return text; }
+    public Color getColor() { return color; }
+}
@@ -0,0 +1,669 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 非阻塞转发引擎，所有 TCP 映射共用
+ * <p>
+ * 固定数量的事件循环线程，每个线程一个 Selector，会话按轮转分配到线程上，
+ * 不再为每个会话的每个方向各占一个线程。
+ * <p>
+ * 缓冲区按方向自适应：从 {@link #MIN_BUFFER_SIZE} 开始，连续读满时加倍，连续只读到很少数据时减半，
+ * 范围在 {@link #MIN_BUFFER_SIZE} 到 {@link #MAX_BUFFER_SIZE} 之间。缓冲区只在读到数据且尚未写完时由会话持有，
+ * 数据写完立即归还到线程的缓冲池，空闲会话不占用任何缓冲区。
+ * <p>
+ * 目标端写不下时数据按顺序排队，继续读取源端直到积压达到映射的高水位，降到低水位以下再恢复读取，
+ * 见 {@link FlowControl}；长时间停在高水位的一端按慢消费者处理。
+ * <p>
+ * 会话的半关闭语义与阻塞转发一致：一个方向读到 EOF 后只向另一端传递 FIN，反方向继续转发，
+ * 直到它也结束或会话空闲超过 {@link #HALF_CLOSE_LINGER_TIMEOUT}。
+ * <p>
+ * 就绪事件按会话的 {@link PriorityClass} 排队，每轮从高优先级开始处理（按字节的加权轮询，DRR）：
+ * 每级每轮获得 权重 × {@link #QUANTUM} 字节的额度，额度用完的会话留在队列中，下一轮优先处理。
+ * 某级队首等待超过 {@link #STARVATION_TIMEOUT} 毫秒时，本轮不论额度至少处理一次。
+ * 未处理的通道仍然就绪，下一轮 select 立即返回，不会丢失事件。
+ */
+final class RelayEngine {
+    static final int MIN_BUFFER_SIZE = 2 * 1024;
+    static final int MAX_BUFFER_SIZE = 256 * 1024;
+    // 半关闭后另一方向允许的最长空闲时间
+    static final long HALF_CLOSE_LINGER_TIMEOUT = 60000;
+    // 权重为 1 的优先级每轮可转发的字节数，不小于一次读取的上限，保证每级每轮至少处理一次
+    static final int QUANTUM = MAX_BUFFER_SIZE;
+    static final long STARVATION_TIMEOUT = 50;
+
+    // 连续读满多少次后加倍
+    private static final int GROW_AFTER_FULL_READS = 2;
+    // 连续多少次读到不足四分之一后减半
+    private static final int SHRINK_AFTER_SMALL_READS = 8;
+    // 每个线程缓冲池最多保留的字节数，超出的缓冲区直接丢弃由 GC 回收
+    private static final long POOL_LIMIT = 4L * 1024 * 1024;
+    private static final long SWEEP_INTERVAL = 1000;
+
+    private static volatile RelayEngine shared;
+
+    private final Loop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+    // 各优先级就绪事件的排队时间，下标为 PriorityClass.ordinal()
+    private final LongAdder[] served = newAdders();
+    private final LongAdder[] queueMicros = newAdders();
+    private final AtomicLong[] maxQueueMicros = new AtomicLong[PriorityClass.values().length];
+
+    private RelayEngine(int threads) throws IOException {
+        for (int i = 0; i < maxQueueMicros.length; i++) {
+            maxQueueMicros[i] = new AtomicLong();
+        }
+        loops = new Loop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new Loop(this, i);
+        }
+        for (Loop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * 共用的转发引擎，首次使用时启动，线程为守护线程
+     */
+    static RelayEngine shared() throws IOException {
+        RelayEngine engine = shared;
+        if (engine == null) {
+            synchronized (RelayEngine.class) {
+                engine = shared;
+                if (engine == null) {
+                    int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+                    engine = new RelayEngine(threads);
+                    shared = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * 已启动的共用引擎，尚未有会话使用时为 null
+     */
+    static RelayEngine current() {
+        return shared;
+    }
+
+    /**
+     * 会话事件回调，在转发线程中调用
+     */
+    interface Listener {
+        void onBytes(ProxySession session, boolean fromClient, long bytes, long now);
+
+        void onClosed(ProxySession session);
+
+        /**
+         * 一端被判定为慢消费者，每个会话的每一端最多一次
+         *
+         * @param clientSide   慢的是客户端（true）还是后端
+         * @param disconnected 是否已按配置断开会话，断开时随后还会调用 onClosed
+         */
+        default void onSlowConsumer(ProxySession session, boolean clientSide, long buffered, boolean disconnected) {
+        }
+    }
+
+    /**
+     * 开始转发一个已建立的会话，两个通道由引擎接管并在会话结束时关闭
+     *
+     * @return 用于从其他线程关闭会话的句柄
+     */
+    Relay register(SocketChannel client, SocketChannel remote, ProxySession session, Listener listener,
+                   RelayMemory memory) {
+        return register(client, remote, session, listener, memory, null, PriorityClass.NORMAL, FlowControl.DEFAULT);
+    }
+
+    /**
+     * @param tap         会话的抓包入口，不抓包时为 null
+     * @param priority    会话所属映射的优先级
+     * @param flowControl 会话所属映射的水位和慢消费者设置
+     */
+    Relay register(SocketChannel client, SocketChannel remote, ProxySession session, Listener listener,
+                   RelayMemory memory, TrafficCapture.Tap tap, PriorityClass priority, FlowControl flowControl) {
+        Loop loop = loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+        Relay relay = new Relay(loop, client, remote, session, listener, memory, tap, priority, flowControl);
+        loop.pending.add(relay::start);
+        loop.selector.wakeup();
+        return relay;
+    }
+
+    /**
+     * 所有线程缓冲池中空闲缓冲区的总字节数
+     */
+    long getPooledBytes() {
+        long total = 0;
+        for (Loop loop : loops) {
+            total += loop.pooledBytes;
+        }
+        return total;
+    }
+
+    long getServed(PriorityClass priority) {
+        return served[priority.ordinal()].sum();
+    }
+
+    // 就绪事件从 select 返回到开始处理的平均等待（毫秒），没有记录时为 0
+    double getAverageQueueMillis(PriorityClass priority) {
+        long count = getServed(priority);
+        return count == 0 ? 0 : queueMicros[priority.ordinal()].sum() / 1000.0 / count;
+    }
+
+    double getMaxQueueMillis(PriorityClass priority) {
+        return maxQueueMicros[priority.ordinal()].get() / 1000.0;
+    }
+
+    private void recordQueueDelay(PriorityClass priority, long micros) {
+        int index = priority.ordinal();
+        served[index].increment();
+        queueMicros[index].add(micros);
+        maxQueueMicros[index].accumulateAndGet(micros, Math::max);
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[PriorityClass.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * 单个事件循环线程及其缓冲池
+     */
+    private static final class Loop implements Runnable {
+        private static final PriorityClass[] CLASSES = PriorityClass.values();
+
+        private final RelayEngine engine;
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        private final Set<Relay> relays = new HashSet<>();
+        // 按大小分级的空闲缓冲区，下标为 log2(size / MIN_BUFFER_SIZE)
+        private final List<ArrayDeque<ByteBuffer>> pool = new ArrayList<>();
+        private volatile long pooledBytes;
+        // 各优先级等待处理的通道及其就绪时间（纳秒），按就绪先后排列
+        private final List<LinkedHashMap<SelectionKey, Long>> ready = new ArrayList<>();
+        // 各优先级剩余的字节额度，可能为负
+        private final long[] deficit = new long[CLASSES.length];
+
+        Loop(RelayEngine engine, int index) throws IOException {
+            this.engine = engine;
+            selector = Selector.open();
+            for (int i = 0; i < CLASSES.length; i++) {
+                ready.add(new LinkedHashMap<>());
+            }
+            for (int i = 0; i <= sizeClass(MAX_BUFFER_SIZE); i++) {
+                pool.add(new ArrayDeque<>());
+            }
+            thread = new Thread(this, "relay-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long nextSweep = System.currentTimeMillis() + SWEEP_INTERVAL;
+            while (true) {
+                try {
+                    // 还有上一轮未处理完的通道时不等待
+                    if (hasBacklog()) {
+                        selector.selectNow();
+                    } else {
+                        selector.select(SWEEP_INTERVAL);
+                    }
+                } catch (IOException e) {
+                    continue;
+                }
+
+                Runnable task;
+                while ((task = pending.poll()) != null) {
+                    task.run();
+                }
+
+                long readyAt = System.nanoTime();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Relay relay = (Relay) key.attachment();
+                    ready.get(relay.priority.ordinal()).putIfAbsent(key, readyAt);
+                }
+                selector.selectedKeys().clear();
+                schedule();
+
+                long now = System.currentTimeMillis();
+                if (now >= nextSweep) {
+                    sweep(now);
+                    nextSweep = now + SWEEP_INTERVAL;
+                }
+            }
+        }
+
+        private boolean hasBacklog() {
+            for (LinkedHashMap<SelectionKey, Long> queue : ready) {
+                if (!queue.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // 按优先级从高到低，每级在额度内依次处理等待的通道
+        private void schedule() {
+            for (PriorityClass priority : CLASSES) {
+                int index = priority.ordinal();
+                LinkedHashMap<SelectionKey, Long> queue = ready.get(index);
+                if (queue.isEmpty()) {
+                    // 没有积压时不累积额度
+                    deficit[index] = 0;
+                    continue;
+                }
+                deficit[index] += (long) priority.getWeight() * QUANTUM;
+                long oldest = queue.values().iterator().next();
+                if (deficit[index] <= 0
+                        && System.nanoTime() - oldest >= TimeUnit.MILLISECONDS.toNanos(STARVATION_TIMEOUT)) {
+                    deficit[index] = 1;
+                }
+
+                Iterator<Map.Entry<SelectionKey, Long>> it = queue.entrySet().iterator();
+                while (deficit[index] > 0 && it.hasNext()) {
+                    Map.Entry<SelectionKey, Long> entry = it.next();
+                    it.remove();
+                    SelectionKey key = entry.getKey();
+                    engine.recordQueueDelay(priority, (System.nanoTime() - entry.getValue()) / 1000);
+                    Relay relay = (Relay) key.attachment();
+                    try {
+                        deficit[index] -= relay.handle(key);
+                    } catch (CancelledKeyException e) {
+                        relay.close(ProxySession.CLOSE_ERROR);
+                    }
+                }
+                if (queue.isEmpty()) {
+                    deficit[index] = 0;
+                }
+            }
+        }
+
+        // 发布累计的字节数，关闭半关闭后空闲超时的会话，检查慢消费者
+        private void sweep(long now) {
+            for (Relay relay : relays.toArray(new Relay[0])) {
+                relay.publish(now);
+                if (relay.halfClosed() && now - relay.lastActivity >= HALF_CLOSE_LINGER_TIMEOUT) {
+                    relay.close(ProxySession.CLOSE_LINGER_TIMEOUT);
+                } else {
+                    relay.checkSlowConsumer(now);
+                }
+            }
+        }
+
+        ByteBuffer acquire(int size) {
+            ArrayDeque<ByteBuffer> free = pool.get(sizeClass(size));
+            ByteBuffer buffer = free.poll();
+            if (buffer == null) {
+                return ByteBuffer.allocateDirect(size);
+            }
+            pooledBytes -= size;
+            return buffer;
+        }
+
+        void release(ByteBuffer buffer) {
+            if (pooledBytes + buffer.capacity() > POOL_LIMIT) {
+                return;
+            }
+            buffer.clear();
+            pool.get(sizeClass(buffer.capacity())).push(buffer);
+            pooledBytes += buffer.capacity();
+        }
+
+        private static int sizeClass(int size) {
+            return Integer.numberOfTrailingZeros(size / MIN_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * 一个会话的两个方向
+     */
+    static final class Relay {
+        private final Loop loop;
+        private final SocketChannel client;
+        private final SocketChannel remote;
+        private final ProxySession session;
+        private final Listener listener;
+        private final RelayMemory memory;
+        private final TrafficCapture.Tap tap;
+        private final PriorityClass priority;
+        private final FlowControl flowControl;
+        private final Direction fromClient;
+        private final Direction toClient;
+        private SelectionKey clientKey;
+        private SelectionKey remoteKey;
+        private long lastActivity = System.currentTimeMillis();
+        private volatile boolean closed;
+
+        private Relay(Loop loop, SocketChannel client, SocketChannel remote, ProxySession session,
+                      Listener listener, RelayMemory memory, TrafficCapture.Tap tap, PriorityClass priority,
+                      FlowControl flowControl) {
+            this.loop = loop;
+            this.client = client;
+            this.remote = remote;
+            this.session = session;
+            this.listener = listener;
+            this.memory = memory;
+            this.tap = tap;
+            this.priority = priority;
+            this.flowControl = flowControl;
+            this.fromClient = new Direction(client, remote, true);
+            this.toClient = new Direction(remote, client, false);
+        }
+
+        /**
+         * 从任意线程请求关闭会话
+         */
+        void requestClose(String reason) {
+            loop.pending.add(() -> close(reason));
+            loop.selector.wakeup();
+        }
+
+        private void start() {
+            try {
+                client.configureBlocking(false);
+                remote.configureBlocking(false);
+                clientKey = client.register(loop.selector, SelectionKey.OP_READ, this);
+                remoteKey = remote.register(loop.selector, SelectionKey.OP_READ, this);
+                loop.relays.add(this);
+            } catch (IOException e) {
+                close(ProxySession.CLOSE_ERROR);
+            }
+        }
+
+        /**
+         * 处理通道上的就绪事件
+         *
+         * @return 本次写出的字节数，用于扣减优先级的额度
+         */
+        private int handle(SelectionKey key) {
+            if (closed || !key.isValid()) {
+                return 0;
+            }
+            int moved = 0;
+            try {
+                boolean isClient = key == clientKey;
+                int ready = key.readyOps();
+                // 先写出积压数据，再读取新数据
+                if ((ready & SelectionKey.OP_WRITE) != 0) {
+                    moved += (isClient ? toClient : fromClient).flush();
+                }
+                if ((ready & SelectionKey.OP_READ) != 0) {
+                    moved += (isClient ? fromClient : toClient).read();
+                }
+                if (fromClient.done && toClient.done) {
+                    close(ProxySession.CLOSE_NORMAL);
+                    return moved;
+                }
+                updateInterest();
+            } catch (IOException e) {
+                // 传输异常（如连接被重置）时中止整个会话
+                close(ProxySession.CLOSE_ERROR);
+            }
+            return moved;
+        }
+
+        // 客户端通道：读取客户端到后端方向，写出后端到客户端方向的积压；后端通道相反
+        private void updateInterest() {
+            clientKey.interestOps(fromClient.readInterest() | toClient.writeInterest());
+            remoteKey.interestOps(toClient.readInterest() | fromClient.writeInterest());
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        private boolean halfClosed() {
+            return fromClient.done || toClient.done;
+        }
+
+        private void publish(long now) {
+            fromClient.publish(now);
+            toClient.publish(now);
+        }
+
+        // 由 sweep 调用
+        private void checkSlowConsumer(long now) {
+            long timeout = flowControl.getSlowConsumerTimeout() * 1000L;
+            if (timeout <= 0) {
+                return;
+            }
+            for (Direction direction : new Direction[]{fromClient, toClient}) {
+                if (direction.paused && !direction.slowReported && now - direction.pausedSince >= timeout) {
+                    direction.slowReported = true;
+                    boolean disconnect = flowControl.isDisconnectSlowConsumers();
+                    memory.recordSlowConsumer(disconnect);
+                    // 客户端到后端方向积压说明后端读得慢
+                    listener.onSlowConsumer(session, !direction.isFromClient, direction.queued, disconnect);
+                    if (disconnect) {
+                        close(ProxySession.CLOSE_SLOW_CONSUMER);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void close(String reason) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            session.setCloseReason(reason);
+            loop.relays.remove(this);
+            long now = System.currentTimeMillis();
+            publish(now);
+            fromClient.releaseBuffers();
+            toClient.releaseBuffers();
+            closeQuietly(client);
+            closeQuietly(remote);
+            if (tap != null) {
+                tap.close();
+            }
+            listener.onClosed(session);
+        }
+
+        private static void closeQuietly(SocketChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略关闭异常
+            }
+        }
+
+        /**
+         * 单个转发方向
+         */
+        private final class Direction {
+            private final SocketChannel source;
+            private final SocketChannel destination;
+            private final boolean isFromClient;
+            // 当前读取大小，按最近的读取情况调整
+            private int size = MIN_BUFFER_SIZE;
+            private int fullReads;
+            private int smallReads;
+            // 未写完的数据，按读取顺序排列，只在有积压时持有缓冲区
+            private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+            private long queued;
+            // 积压达到高水位后暂停读取源端
+            private boolean paused;
+            private long pausedSince;
+            private boolean slowReported;
+            private boolean eof;
+            private boolean done;
+            private boolean firstByte = true;
+            private long pendingBytes;
+            private long lastPublish;
+
+            Direction(SocketChannel source, SocketChannel destination, boolean isFromClient) {
+                this.source = source;
+                this.destination = destination;
+                this.isFromClient = isFromClient;
+            }
+
+            int readInterest() {
+                return eof || paused ? 0 : SelectionKey.OP_READ;
+            }
+
+            int writeInterest() {
+                return queue.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+            }
+
+            // 返回写出的字节数
+            int read() throws IOException {
+                if (eof || paused) {
+                    return 0;
+                }
+                ByteBuffer buf = loop.acquire(size);
+                int n = source.read(buf);
+                if (n <= 0) {
+                    loop.release(buf);
+                    if (n < 0) {
+                        eof = true;
+                        finishIfDrained();
+                    }
+                    return 0;
+                }
+
+                long now = System.currentTimeMillis();
+                lastActivity = now;
+                if (!isFromClient && firstByte) {
+                    session.markFirstByte(now);
+                }
+                firstByte = false;
+                adapt(n, buf.capacity());
+
+                pendingBytes += n;
+                if (now - lastPublish >= ProxySession.STATS_PUBLISH_INTERVAL) {
+                    publish(now);
+                }
+
+                buf.flip();
+                if (tap != null) {
+                    tap.data(isFromClient, buf);
+                }
+                // 已有积压时排在其后，保证顺序
+                int written = queue.isEmpty() ? destination.write(buf) : 0;
+                if (buf.hasRemaining()) {
+                    // 目标端写不下，数据排队等待可写
+                    enqueue(buf, now);
+                } else {
+                    loop.release(buf);
+                }
+                return written;
+            }
+
+            // 返回写出的字节数
+            int flush() throws IOException {
+                int written = 0;
+                while (!queue.isEmpty()) {
+                    ByteBuffer head = queue.peek();
+                    written += destination.write(head);
+                    if (head.hasRemaining()) {
+                        break;
+                    }
+                    queue.poll();
+                    memory.add(-head.capacity());
+                    loop.release(head);
+                }
+                queued -= written;
+                memory.addBuffered(-written);
+                if (paused && queued <= flowControl.getLowWatermark()) {
+                    paused = false;
+                }
+                finishIfDrained();
+                return written;
+            }
+
+            private void enqueue(ByteBuffer buf, long now) {
+                int length = buf.remaining();
+                ByteBuffer tail = queue.peekLast();
+                if (tail != null && tail.capacity() - tail.limit() >= length) {
+                    // 追加到最后一个缓冲区的空闲部分，避免小块数据各占一个缓冲区
+                    int start = tail.position();
+                    tail.position(tail.limit()).limit(tail.capacity());
+                    tail.put(buf);
+                    tail.limit(tail.position()).position(start);
+                    loop.release(buf);
+                } else {
+                    queue.add(buf);
+                    memory.add(buf.capacity());
+                }
+                queued += length;
+                memory.addBuffered(length);
+                if (!paused && queued >= flowControl.getHighWatermark()) {
+                    paused = true;
+                    pausedSince = now;
+                    memory.recordPause();
+                }
+            }
+
+            // 源端已发送FIN且数据已全部写出时，只把FIN传递给目标端，反方向保持打开
+            private void finishIfDrained() throws IOException {
+                if (eof && queue.isEmpty() && !done) {
+                    done = true;
+                    destination.shutdownOutput();
+                }
+            }
+
+            private void adapt(int read, int capacity) {
+                if (read == capacity) {
+                    smallReads = 0;
+                    if (++fullReads >= GROW_AFTER_FULL_READS && size < MAX_BUFFER_SIZE) {
+                        size <<= 1;
+                        fullReads = 0;
+                    }
+                } else if (read < capacity / 4) {
+                    fullReads = 0;
+                    if (++smallReads >= SHRINK_AFTER_SMALL_READS && size > MIN_BUFFER_SIZE) {
+                        size >>= 1;
+                        smallReads = 0;
+                    }
+                } else {
+                    fullReads = 0;
+                    smallReads = 0;
+                }
+            }
+
+            // 会话关闭时丢弃未写出的数据
+            void releaseBuffers() {
+                ByteBuffer buf;
+                while ((buf = queue.poll()) != null) {
+                    memory.add(-buf.capacity());
+                    loop.release(buf);
+                }
+                memory.addBuffered(-queued);
+                queued = 0;
+            }
+
+            void publish(long now) {
+                if (pendingBytes > 0) {
+                    listener.onBytes(session, isFromClient, pendingBytes, now);
+                    pendingBytes = 0;
+                }
+                lastPublish = now;
+            }
+        }
+    }
+}
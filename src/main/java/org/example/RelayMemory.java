@@ -0,0 +1,52 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 映射级转发缓冲占用，只统计会话持有的缓冲区，不包括转发线程缓冲池中的空闲缓冲区
+ * <p>
+ * 另外统计已从一端读入、尚未写到另一端的数据量，以及流量控制暂停读取和慢消费者的次数，见 {@link FlowControl}。
+ */
+final class RelayMemory {
+    private final AtomicLong current = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong bufferedPeak = new AtomicLong();
+    private final LongAdder pauses = new LongAdder();
+    private final LongAdder slowConsumers = new LongAdder();
+    private final LongAdder slowDisconnects = new LongAdder();
+
+    void add(long bytes) {
+        long value = current.addAndGet(bytes);
+        if (bytes > 0) {
+            peak.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    void addBuffered(long bytes) {
+        long value = buffered.addAndGet(bytes);
+        if (bytes > 0) {
+            bufferedPeak.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    void recordPause() {
+        pauses.increment();
+    }
+
+    void recordSlowConsumer(boolean disconnected) {
+        slowConsumers.increment();
+        if (disconnected) {
+            slowDisconnects.increment();
+        }
+    }
+
+    long getCurrent() { return current.get(); }
+    long getPeak() { return peak.get(); }
+    long getBuffered() { return buffered.get(); }
+    long getBufferedPeak() { return bufferedPeak.get(); }
+    long getPauses() { return pauses.sum(); }
+    long getSlowConsumers() { return slowConsumers.sum(); }
+    long getSlowDisconnects() { return slowDisconnects.sum(); }
+}
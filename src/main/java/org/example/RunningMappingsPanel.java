@@ -0,0 +1,125 @@
+package org.example;
+
+import org.example.TCPProxyManagerGUI.ManagedProxy;
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 所有环境中正在运行的映射，与当前显示的环境无关
+ */
+class RunningMappingsPanel extends JPanel {
+    private static final int REFRESH_INTERVAL = 1000;
+
+    private final RunningTableModel model = new RunningTableModel();
+    private final JLabel summaryLabel = new JLabel();
+    private final javax.swing.Timer refreshTimer;
+    private final Supplier<List<ManagedProxy>> source;
+
+    RunningMappingsPanel(Supplier<List<ManagedProxy>> source) {
+        super(new BorderLayout(0, 5));
+        this.source = source;
+
+        JTable table = new JTable(model);
+        table.setFont(new Font("微软雅黑", Font.PLAIN, 12));
+        table.setRowHeight(22);
+        table.setFillsViewportHeight(true);
+
+        add(summaryLabel, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        refreshTimer = new javax.swing.Timer(REFRESH_INTERVAL, e -> {
+            if (isShowing()) {
+                refresh();
+            }
+        });
+        refreshTimer.start();
+        refresh();
+    }
+
+    void dispose() {
+        refreshTimer.stop();
+    }
+
+    void refresh() {
+        List<ManagedProxy> running = new ArrayList<>();
+        for (ManagedProxy proxy : source.get()) {
+            if (proxy.getState() == ProxyState.RUNNING) {
+                running.add(proxy);
+            }
+        }
+        running.sort(Comparator.comparing(ManagedProxy::getEnvironment)
+                .thenComparingInt(proxy -> proxy.getConfig().getLocalPort()));
+        model.setProxies(running);
+        summaryLabel.setText("运行中的映射 " + running.size());
+    }
+
+    private static class RunningTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"环境", "描述", "协议", "本地端口", "远程地址", "活动会话", "转发缓冲（当前/峰值）",
+                "积压数据（当前/峰值）", "暂停读取", "慢消费者（已断开）"};
+
+        private List<ManagedProxy> proxies = new ArrayList<>();
+
+        void setProxies(List<ManagedProxy> proxies) {
+            this.proxies = proxies;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return proxies.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ManagedProxy proxy = proxies.get(row);
+            ProxyConfig config = proxy.getConfig();
+            switch (column) {
+                case 0:
+                    return proxy.getEnvironment();
+                case 1:
+                    return config.getDescription();
+                case 2:
+                    return config.getProtocol();
+                case 3:
+                    return config.getLocalPorts().toString();
+                case 4:
+                    return config.isDynamic() ? "由客户端指定" : config.getRemoteHost() + ":" + config.getRemotePorts();
+                case 5:
+                    return proxy.getSessions().size();
+                case 6:
+                    RelayMemory memory = proxy.getRelayMemory();
+                    return memory == null ? "-" : SessionInspectorPanel.formatBytes(memory.getCurrent())
+                            + " / " + SessionInspectorPanel.formatBytes(memory.getPeak());
+                case 7:
+                    memory = proxy.getRelayMemory();
+                    return memory == null ? "-" : SessionInspectorPanel.formatBytes(memory.getBuffered())
+                            + " / " + SessionInspectorPanel.formatBytes(memory.getBufferedPeak());
+                case 8:
+                    memory = proxy.getRelayMemory();
+                    return memory == null ? "-" : String.valueOf(memory.getPauses());
+                case 9:
+                    memory = proxy.getRelayMemory();
+                    return memory == null ? "-" : memory.getSlowConsumers() + "（" + memory.getSlowDisconnects() + "）";
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.example;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 会话查看器，显示表格中选中映射的活动会话
+ * <p>
+ * 表格模型直接读取会话快照数组，JTable 只绘制可见行，会话数量很多时也不会为每行创建组件。
+ * 刷新时只在可见状态下拉取一次快照。
+ */
+class SessionInspectorPanel extends JPanel {
+    private static final int REFRESH_INTERVAL = 1000;
+
+    private final SessionTableModel model = new SessionTableModel();
+    private final JTable table = new JTable(model);
+    private final JLabel summaryLabel = new JLabel("未选择映射");
+    private final javax.swing.Timer refreshTimer;
+    private String title;
+    private Supplier<Iterable<ProxySession>> source;
+
+    SessionInspectorPanel() {
+        super(new BorderLayout(0, 5));
+
+        table.setFont(new Font("微软雅黑", Font.PLAIN, 12));
+        table.setRowHeight(22);
+        table.setFillsViewportHeight(true);
+
+        JButton killButton = new JButton("断开所选会话");
+        killButton.addActionListener(e -> killSelectedSessions());
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.add(summaryLabel, BorderLayout.CENTER);
+        topPanel.add(killButton, BorderLayout.EAST);
+
+        add(topPanel, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        refreshTimer = new javax.swing.Timer(REFRESH_INTERVAL, e -> {
+            if (isShowing()) {
+                refresh();
+            }
+        });
+        refreshTimer.start();
+    }
+
+    /**
+     * 切换显示的映射
+     *
+     * @param title  映射描述，null 表示未选择
+     * @param source 会话来源，映射未创建代理时为 null
+     */
+    void setSource(String title, Supplier<Iterable<ProxySession>> source) {
+        this.title = title;
+        this.source = source;
+        refresh();
+    }
+
+    void dispose() {
+        refreshTimer.stop();
+    }
+
+    private void refresh() {
+        List<ProxySession> snapshot = new ArrayList<>();
+        if (source != null) {
+            for (ProxySession session : source.get()) {
+                snapshot.add(session);
+            }
+        }
+        snapshot.sort(Comparator.comparingLong(ProxySession::getStartTime));
+
+        // 按会话ID保留选中状态
+        Set<Long> selectedIds = new HashSet<>();
+        for (int row : table.getSelectedRows()) {
+            selectedIds.add(model.getSession(row).getId());
+        }
+        model.setSessions(snapshot);
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (selectedIds.contains(snapshot.get(i).getId())) {
+                table.addRowSelectionInterval(i, i);
+            }
+        }
+
+        if (title == null) {
+            summaryLabel.setText("未选择映射");
+        } else if (source == null) {
+            summaryLabel.setText(title + " - 未启动");
+        } else {
+            summaryLabel.setText(title + " - 活动会话 " + snapshot.size());
+        }
+    }
+
+    private void killSelectedSessions() {
+        int[] rows = table.getSelectedRows();
+        for (int row : rows) {
+            model.getSession(row).kill();
+        }
+        if (rows.length > 0) {
+            refresh();
+        }
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    private static class SessionTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"客户端", "后端", "开始时间", "上行", "下行", "最后活动", "首字节耗时"};
+
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+        private List<ProxySession> sessions = new ArrayList<>();
+
+        void setSessions(List<ProxySession> sessions) {
+            this.sessions = sessions;
+            fireTableDataChanged();
+        }
+
+        ProxySession getSession(int row) {
+            return sessions.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return sessions.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ProxySession session = sessions.get(row);
+            switch (column) {
+                case 0:
+                    return session.getClient().getAddress().getHostAddress() + ":" + session.getClient().getPort();
+                case 1:
+                    return session.getBackend();
+                case 2:
+                    return timeFormat.format(new Date(session.getStartTime()));
+                case 3:
+                    return formatBytes(session.getBytesFromClient());
+                case 4:
+                    return formatBytes(session.getBytesToClient());
+                case 5:
+                    return (System.currentTimeMillis() - session.getLastActivity()) / 1000 + " 秒前";
+                case 6:
+                    return session.getTimeToFirstByte() < 0 ? "-" : session.getTimeToFirstByte() + " ms";
+                default:
+                    return null;
+            }
+        }
+    }
+}
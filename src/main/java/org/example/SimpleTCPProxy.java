@@ -0,0 +1,858 @@
+package org.example;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class SimpleTCPProxy implements ForwardingProxy {
+    private final ProxyOptions options;
+    // 当前路由，在线修改时整体替换；已建立的会话继续使用建立时的路由
+    private volatile Route route;
+    // 正在监听的端口，每个端口在每个 acceptor 的 Selector 上各有一个 key，在 routeLock 下修改
+    private final Map<Integer, List<SelectionKey>> listenerKeys = new HashMap<>();
+    private final Object routeLock = new Object();
+    private volatile boolean criticalError = false;
+    private volatile boolean manualStop = false;
+    private Exception criticalException = null;
+    // 每个 acceptor 一个 Selector
+    private final List<Selector> selectors = new CopyOnWriteArrayList<>();
+    private volatile int acceptorCount = 1;
+    private volatile AccessRules accessRules = AccessRules.allowAll();
+    private final Map<Long, ProxySession> sessions = new ConcurrentHashMap<>();
+    private final ConnectMetrics connectMetrics = new ConnectMetrics();
+    private final TrafficCounters traffic = new TrafficCounters();
+    private final RelayMemory relayMemory = new RelayMemory();
+    private volatile ProxyState state = ProxyState.INIT;
+    // SOCKS5 监听：目标由客户端在握手中指定，不使用路由中的后端
+    private final boolean socks;
+    private volatile DestinationWhitelist destinations = DestinationWhitelist.EMPTY;
+    // 开启抓包时在运行期间打开，停止时关闭
+    private volatile TrafficCapture capture;
+
+    // SOCKS5 握手的读超时
+    private static final int SOCKS_HANDSHAKE_TIMEOUT = 10000;
+
+    public SimpleTCPProxy(int localPort, String remoteHost, int remotePort) {
+        this(localPort, localPort, remoteHost, remotePort, ProxyOptions.DEFAULT);
+    }
+
+    /**
+     * 端口区间映射：本地 localPort..localPortEnd 按相同偏移转发到 remotePort 起始的远程端口
+     */
+    public SimpleTCPProxy(int localPort, int localPortEnd, String remoteHost, int remotePort, ProxyOptions options) {
+        this(localPort, localPortEnd, remoteHost, remotePort, options, false);
+    }
+
+    private SimpleTCPProxy(int localPort, int localPortEnd, String remoteHost, int remotePort, ProxyOptions options,
+                           boolean socks) {
+        this.options = options;
+        this.socks = socks;
+        this.route = new Route(localPort, localPortEnd, remoteHost, remotePort, newConnector(remoteHost));
+    }
+
+    /**
+     * SOCKS5 监听：目标由客户端指定，只允许访问环境白名单中的目标，
+     * 与静态映射共用转发引擎、后端连接器和各项统计
+     */
+    static SimpleTCPProxy socks5(int localPort, int localPortEnd, ProxyOptions options) {
+        return new SimpleTCPProxy(localPort, localPortEnd, "", 0, options, true);
+    }
+
+    private BackendConnector newConnector(String remoteHost) {
+        return new BackendConnector(remoteHost, options.getConnectRetries(), connectMetrics, () -> criticalError);
+    }
+
+    public void start() throws IOException {
+        setState(ProxyState.INIT);
+        criticalError = false;
+        criticalException = null;
+        manualStop = false;
+        // 重新启动时熔断器状态清零
+        Route startRoute = route.withFreshBreakers();
+        route = startRoute;
+
+        TlsOptions tls = options.getTls();
+        if (tls.isEnabled()) {
+            if (socks || isTunneled()) {
+                setState(ProxyState.STOPPED);
+                throw new IOException("SOCKS5 监听和隧道模式不支持 TLS 选项");
+            }
+            // 证书在启动时加载，配置错误立即报告
+            try {
+                tlsContexts();
+            } catch (IOException e) {
+                setState(ProxyState.STOPPED);
+                throw e;
+            }
+        }
+
+        // 多个 acceptor 需要每个都绑定同一组端口，只有支持 SO_REUSEPORT 时才可行
+        acceptorCount = options.getAcceptors() > 1 && isReusePortSupported() ? options.getAcceptors() : 1;
+
+        try {
+            synchronized (routeLock) {
+                for (int i = 0; i < acceptorCount; i++) {
+                    selectors.add(Selector.open());
+                }
+                for (int port = startRoute.localPort; port <= startRoute.localPortEnd; port++) {
+                    listenerKeys.put(port, bindPort(port));
+                }
+            }
+            if (options.isCapture()) {
+                capture = TrafficCapture.open(Paths.get(TrafficCapture.DIRECTORY, String.valueOf(startRoute.localPort)),
+                        options.getCaptureSegments());
+            }
+
+            // SOCKS5 监听没有固定后端，不做启动探测
+            if (!socks) {
+                testRemoteConnection();
+            }
+            setState(ProxyState.RUNNING);
+
+            // 第一个 acceptor 使用当前线程，其余各自一个线程，由内核在它们之间分配新连接
+            for (int i = 1; i < acceptorCount; i++) {
+                Selector selector = selectors.get(i);
+                Thread acceptor = new Thread(() -> acceptLoop(selector),
+                        "acceptor-" + startRoute.localPort + "-" + i);
+                acceptor.setDaemon(true);
+                acceptor.start();
+            }
+            acceptLoop(selectors.get(0));
+
+            if (manualStop) {
+                throw new ManualStopException("代理已手动停止");
+            }
+            throw new CriticalIOException("Proxy stopped due to critical error: " +
+                    criticalException.getMessage(), criticalException);
+        } catch (IOException e) {
+            setState(ProxyState.STOPPED);
+            throw e;
+        } finally {
+            synchronized (routeLock) {
+                for (List<SelectionKey> keys : listenerKeys.values()) {
+                    for (SelectionKey key : keys) {
+                        safeClose(key.channel());
+                    }
+                }
+                listenerKeys.clear();
+                for (Selector selector : selectors) {
+                    safeClose(selector);
+                }
+                selectors.clear();
+            }
+            if (capture != null) {
+                capture.close();
+                capture = null;
+            }
+        }
+    }
+
+    /**
+     * 在每个 acceptor 的 Selector 上监听一个端口，key 的附件是监听端口
+     *
+     * @throws IOException 端口绑定失败，已打开的通道会被关闭
+     */
+    private List<SelectionKey> bindPort(int port) throws IOException {
+        List<SelectionKey> keys = new ArrayList<>();
+        try {
+            for (Selector selector : selectors) {
+                ServerSocketChannel listener = ServerSocketChannel.open();
+                try {
+                    if (acceptorCount > 1) {
+                        listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                    }
+                    listener.bind(new InetSocketAddress(port));
+                    listener.configureBlocking(false);
+                    keys.add(listener.register(selector, SelectionKey.OP_ACCEPT, port));
+                } catch (IOException e) {
+                    safeClose(listener);
+                    throw e;
+                }
+            }
+            return keys;
+        } catch (IOException e) {
+            for (SelectionKey key : keys) {
+                safeClose(key.channel());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在线修改本地端口区间和后端，不中断运行
+     * <p>
+     * 新增的本地端口先绑定并开始接受连接，再切换路由，最后关闭不再需要的端口，
+     * 两个区间重叠的端口保持原监听不变。新连接立即使用新的后端，已建立的会话不受影响。
+     * 代理未运行时只记录新配置，下次启动时生效。
+     *
+     * @throws IOException 新端口绑定失败，此时配置保持不变
+     */
+    public void reconfigure(int localPort, int localPortEnd, String remoteHost, int remotePort) throws IOException {
+        synchronized (routeLock) {
+            Route old = route;
+            BackendConnector connector = old.remoteHost.equals(remoteHost) ? old.connector : newConnector(remoteHost);
+            Route next = new Route(localPort, localPortEnd, remoteHost, remotePort, connector);
+            if (old.remoteHost.equals(remoteHost) && old.remotePort == remotePort) {
+                // 后端不变时沿用熔断器状态
+                next.breakers.putAll(old.breakers);
+            }
+            if (selectors.isEmpty()) {
+                route = next;
+                return;
+            }
+
+            Map<Integer, List<SelectionKey>> added = new HashMap<>();
+            try {
+                for (int port = localPort; port <= localPortEnd; port++) {
+                    if (!listenerKeys.containsKey(port)) {
+                        added.put(port, bindPort(port));
+                    }
+                }
+            } catch (IOException e) {
+                for (List<SelectionKey> keys : added.values()) {
+                    for (SelectionKey key : keys) {
+                        safeClose(key.channel());
+                    }
+                }
+                throw e;
+            }
+            listenerKeys.putAll(added);
+            route = next;
+
+            Iterator<Map.Entry<Integer, List<SelectionKey>>> it = listenerKeys.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, List<SelectionKey>> entry = it.next();
+                if (entry.getKey() < localPort || entry.getKey() > localPortEnd) {
+                    for (SelectionKey key : entry.getValue()) {
+                        key.cancel();
+                        safeClose(key.channel());
+                    }
+                    it.remove();
+                }
+            }
+            // 新注册的 key 和取消的 key 都在下一次 select 时生效
+            for (Selector selector : selectors) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    private void acceptLoop(Selector selector) {
+        try {
+            while (!criticalError) {
+                selector.select();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid() || !key.isAcceptable()) {
+                        continue;
+                    }
+
+                    SocketChannel clientChannel = ((ServerSocketChannel) key.channel()).accept();
+                    if (clientChannel == null) {
+                        continue;
+                    }
+                    int listenPort = (Integer) key.attachment();
+                    Route acceptRoute = route;
+                    // 在线修改后即将关闭的端口上仍可能接受到连接
+                    if (!acceptRoute.contains(listenPort) || !isClientAllowed(clientChannel, listenPort)) {
+                        safeClose(clientChannel);
+                        continue;
+                    }
+                    new Thread(() -> {
+                        try {
+                            handleClientConnection(clientChannel, acceptRoute, listenPort);
+                        } catch (IOException e) {
+                            // 静默处理连接错误
+                        }
+                    }).start();
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // 代理停止时其他 acceptor 的 Selector 由启动线程关闭
+        } catch (IOException e) {
+            handleCriticalError(e);
+        }
+    }
+
+    private boolean isClientAllowed(SocketChannel clientChannel, int listenPort) {
+        try {
+            SocketAddress address = clientChannel.getRemoteAddress();
+            if (!(address instanceof InetSocketAddress)) {
+                return false;
+            }
+            InetSocketAddress client = (InetSocketAddress) address;
+            boolean allowed = accessRules.isAllowed(client.getAddress());
+            ProxyEvents.accept(listenPort, client, allowed);
+            return allowed;
+        } catch (IOException e) {
+            // 客户端已断开
+            return false;
+        }
+    }
+
+    public void setAccessRules(AccessRules rules) {
+        this.accessRules = rules.inheritHits(this.accessRules);
+    }
+
+    // 替换 SOCKS5 目标白名单，运行中立即生效，已建立的连接不受影响
+    void setDestinationWhitelist(DestinationWhitelist destinations) {
+        this.destinations = destinations;
+    }
+
+    public AccessRules getAccessRules() {
+        return accessRules;
+    }
+
+    static boolean isReusePortSupported() {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // 实际运行的 acceptor 数量，不支持 SO_REUSEPORT 时回退为1
+    int getAcceptorCount() {
+        return acceptorCount;
+    }
+
+    // 启动时确认后端可达，失败时代理不进入运行状态
+    private void testRemoteConnection() throws IOException {
+        try {
+            Route current = route;
+            if (isTunneled()) {
+                probeThroughTunnel(current);
+            } else {
+                safeClose(connectToRemote(current, current.localPort));
+            }
+        } catch (IOException e) {
+            handleCriticalError(e);
+            throw new CriticalIOException("Initial connection test failed", e);
+        }
+    }
+
+    // 单个会话的后端连接失败只结束该会话，不影响整个代理；后端熔断时立即失败
+    private SocketChannel connectToRemote(Route route, int listenPort) throws IOException {
+        int targetPort = route.targetPort(listenPort);
+        CircuitBreaker breaker = acquireBreaker(route, targetPort);
+        return connectBackend(route.connector, route.remoteHost + ":" + targetPort, targetPort, breaker, listenPort);
+    }
+
+    private CircuitBreaker acquireBreaker(Route route, int targetPort) throws ConnectException {
+        CircuitBreaker breaker = route.breakers.computeIfAbsent(targetPort, port -> new CircuitBreaker());
+        if (!breaker.tryAcquire(System.currentTimeMillis())) {
+            connectMetrics.recordRejected();
+            throw new ConnectException("后端 " + route.remoteHost + ":" + targetPort + " 已熔断");
+        }
+        return breaker;
+    }
+
+    /**
+     * @param breaker 为 null 时不经过熔断器（SOCKS5 的目标各不相同）
+     */
+    private SocketChannel connectBackend(BackendConnector connector, String target, int targetPort,
+                                         CircuitBreaker breaker, int listenPort) throws IOException {
+        ProxyEvents.BackendConnectEvent event = new ProxyEvents.BackendConnectEvent();
+        event.begin();
+        SocketChannel channel = null;
+        try {
+            channel = connector.connect(targetPort);
+            if (breaker != null) {
+                breaker.onSuccess();
+            }
+            event.success = true;
+            return channel;
+        } catch (IOException e) {
+            if (breaker != null) {
+                breaker.onFailure(System.currentTimeMillis());
+            }
+            event.error = e.toString();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.localPort = listenPort;
+                event.target = target;
+                event.address = channel != null ? remoteAddressOf(channel) : null;
+                event.commit();
+            }
+        }
+    }
+
+    private static String remoteAddressOf(SocketChannel channel) {
+        try {
+            return ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void handleCriticalError(Exception e) {
+        synchronized (this) {
+            if (!criticalError) {
+                criticalError = true;
+                criticalException = e;
+                ProxyEvents.criticalError(route.localPort, e, manualStop);
+                for (Selector selector : selectors) {
+                    selector.wakeup();
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        manualStop = true;
+        handleCriticalError(new Exception("代理已手动停止"));
+        setState(ProxyState.STOPPED);
+    }
+
+    public void clear() {
+        criticalError = false;
+        criticalException = null;
+        manualStop = false;
+        setState(ProxyState.INIT);
+    }
+
+    public ProxyState getState() {
+        return state;
+    }
+
+    private void setState(ProxyState newState) {
+        ProxyState oldState = state;
+        state = newState;
+        if (oldState != newState) {
+            ProxyEvents.stateChange(route.localPort, oldState, newState);
+        }
+    }
+
+    public boolean isManualStop() {
+        return manualStop;
+    }
+
+    private void handleClientConnection(SocketChannel clientChannel, Route route, int listenPort)
+            throws IOException {
+        if (socks) {
+            handleSocksConnection(clientChannel, listenPort);
+            return;
+        }
+        if (isTunneled()) {
+            handleTunnelConnection(clientChannel, route, listenPort);
+            return;
+        }
+        if (options.getTls().isEnabled()) {
+            handleTlsConnection(clientChannel, route, listenPort);
+            return;
+        }
+        SocketChannel remoteChannel = null;
+        try {
+            remoteChannel = connectToRemote(route, listenPort);
+            startRelay(clientChannel, remoteChannel, route.remoteHost + ":" + route.targetPort(listenPort), listenPort);
+        } catch (IOException e) {
+            safeClose(clientChannel);
+            safeClose(remoteChannel);
+            throw e;
+        }
+    }
+
+    // 在当前连接线程中完成握手和后端连接，之后与静态映射一样交给转发引擎
+    private void handleSocksConnection(SocketChannel clientChannel, int listenPort) throws IOException {
+        SocketChannel remoteChannel = null;
+        try {
+            Socket socket = clientChannel.socket();
+            socket.setSoTimeout(SOCKS_HANDSHAKE_TIMEOUT);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            Socks5Handshake.Request request = Socks5Handshake.accept(in, out,
+                    options.getSocksUser(), options.getSocksPassword());
+
+            if (!destinations.isAllowed(request.host, request.address, request.port)) {
+                connectMetrics.recordRejected();
+                Socks5Handshake.reply(out, Socks5Handshake.REPLY_NOT_ALLOWED, null);
+                throw new ConnectException("目标不在白名单中: " + request);
+            }
+            try {
+                remoteChannel = connectBackend(newConnector(request.host), request.toString(), request.port,
+                        null, listenPort);
+            } catch (IOException e) {
+                Socks5Handshake.reply(out, Socks5Handshake.replyCodeOf(e), null);
+                throw e;
+            }
+            Socks5Handshake.reply(out, Socks5Handshake.REPLY_SUCCEEDED,
+                    (InetSocketAddress) remoteChannel.getLocalAddress());
+            socket.setSoTimeout(0);
+            startRelay(clientChannel, remoteChannel, request.toString(), listenPort);
+        } catch (IOException e) {
+            safeClose(clientChannel);
+            safeClose(remoteChannel);
+            throw e;
+        }
+    }
+
+    /**
+     * TLS 会话：在当前连接线程中先与客户端握手再连接后端并握手，之后由 TlsRelay 转发明文。
+     * 客户端握手失败时不会连接后端。
+     */
+    private void handleTlsConnection(SocketChannel clientChannel, Route route, int listenPort) throws IOException {
+        TlsOptions tls = options.getTls();
+        SocketChannel remoteChannel = null;
+        try {
+            // 证书文件更新后重新加载，加载失败时同样要关闭客户端连接
+            SSLContext[] contexts = tlsContexts();
+            InetSocketAddress clientAddress = (InetSocketAddress) clientChannel.getRemoteAddress();
+            Socket client = clientChannel.socket();
+            if (tls.acceptsTls()) {
+                client = tlsHandshake(contexts[0], client, null, 0, listenPort);
+            }
+            int targetPort = route.targetPort(listenPort);
+            Socket remote;
+            if (tls.isBackend()) {
+                // 与后端握手完成才算连接成功，证书不受信任、后端不是 TLS 时同样计入熔断
+                CircuitBreaker breaker = acquireBreaker(route, targetPort);
+                try {
+                    remoteChannel = connectBackend(route.connector, route.remoteHost + ":" + targetPort, targetPort,
+                            null, listenPort);
+                    remote = tlsHandshake(contexts[1], remoteChannel.socket(), route.remoteHost, targetPort,
+                            listenPort);
+                } catch (IOException e) {
+                    breaker.onFailure(System.currentTimeMillis());
+                    throw e;
+                }
+                breaker.onSuccess();
+            } else {
+                remoteChannel = connectToRemote(route, listenPort);
+                remote = remoteChannel.socket();
+            }
+
+            TlsRelay[] relay = new TlsRelay[1];
+            ProxySession session = new ProxySession(clientAddress, route.remoteHost + ":" + targetPort,
+                    () -> relay[0].requestClose(ProxySession.CLOSE_KILLED));
+            relay[0] = TlsRelay.start(client, remote, session, relayListener(listenPort), relayMemory,
+                    newTap(session));
+            sessions.put(session.getId(), session);
+            traffic.sessionOpened();
+            // 会话可能在加入列表之前就已结束
+            if (relay[0].isClosed()) {
+                sessions.remove(session.getId());
+            }
+        } catch (IOException e) {
+            safeClose(clientChannel);
+            safeClose(remoteChannel);
+            throw e;
+        }
+    }
+
+    /**
+     * @return [对客户端的上下文, 对后端的上下文]，未开启的一侧为 null
+     */
+    private SSLContext[] tlsContexts() throws IOException {
+        TlsOptions tls = options.getTls();
+        return new SSLContext[]{
+                tls.acceptsTls() ? TlsContexts.server(tls.getKeystore(), tls.getKeystorePassword()) : null,
+                tls.isBackend() ? TlsContexts.client(tls.getTruststore(), tls.getTruststorePassword()) : null};
+    }
+
+    /**
+     * @param host 为 null 时作为服务端与客户端握手，否则作为客户端与后端握手
+     */
+    private SSLSocket tlsHandshake(SSLContext context, Socket socket, String host, int port, int listenPort)
+            throws IOException {
+        boolean backend = host != null;
+        ProxyEvents.TlsHandshakeEvent event = new ProxyEvents.TlsHandshakeEvent();
+        event.begin();
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        SSLSocket ssl = null;
+        try {
+            ssl = backend ? TlsContexts.connect(context, socket, host, port) : TlsContexts.accept(context, socket);
+            event.resumed = TlsContexts.isResumed(ssl, start);
+            connectMetrics.recordTlsHandshake(backend,
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), event.resumed);
+            return ssl;
+        } catch (IOException e) {
+            connectMetrics.recordTlsFailure(backend);
+            event.error = e.toString();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.localPort = listenPort;
+                event.backend = backend;
+                if (ssl != null) {
+                    event.protocol = ssl.getSession().getProtocol();
+                    event.cipherSuite = ssl.getSession().getCipherSuite();
+                }
+                event.commit();
+            }
+        }
+    }
+
+    private boolean isTunneled() {
+        return !options.getTunnel().isEmpty();
+    }
+
+    private TunnelClient tunnelClient() throws IOException {
+        try {
+            return TunnelClient.forAgent(options.getTunnel(), options.getTunnelToken(), options.getTunnelLinks());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * 隧道模式：会话作为一个流复用到中继的长连接上，由中继连接后端。
+     * 流打开后客户端数据立即开始发送，不等待中继连上后端；中继连接失败时会话随之结束。
+     */
+    private void handleTunnelConnection(SocketChannel clientChannel, Route route, int listenPort)
+            throws IOException {
+        int targetPort = route.targetPort(listenPort);
+        String backend = route.remoteHost + ":" + targetPort;
+        CircuitBreaker breaker = null;
+        TunnelStream[] stream = new TunnelStream[1];
+        try {
+            breaker = acquireBreaker(route, targetPort);
+            CircuitBreaker streamBreaker = breaker;
+            ProxySession session = new ProxySession((InetSocketAddress) clientChannel.getRemoteAddress(), backend,
+                    () -> stream[0].reset(ProxySession.CLOSE_KILLED, "会话被断开"));
+            stream[0] = tunnelClient().open(route.remoteHost, targetPort, new TunnelStream.Listener() {
+                private volatile boolean opened;
+
+                @Override
+                public void onOpened() {
+                    opened = true;
+                    streamBreaker.onSuccess();
+                }
+
+                @Override
+                public void onBytes(boolean fromLocal, long bytes, long now) {
+                    if (!fromLocal) {
+                        session.markFirstByte(now);
+                    }
+                    publishBytes(session, fromLocal, bytes, now);
+                }
+
+                @Override
+                public void onClosed(String reason) {
+                    if (!opened) {
+                        streamBreaker.onFailure(System.currentTimeMillis());
+                    }
+                    session.setCloseReason(reason);
+                    sessions.remove(session.getId());
+                    ProxyEvents.sessionClosed(listenPort, session, session.getCloseReason());
+                }
+            }, relayMemory, newTap(session));
+            sessions.put(session.getId(), session);
+            traffic.sessionOpened();
+            stream[0].attach(clientChannel);
+            // 会话可能在加入列表之前就已结束
+            if (stream[0].isClosed()) {
+                sessions.remove(session.getId());
+            }
+        } catch (IOException e) {
+            // 流没有创建时不会有 onOpened 或 onClosed，需要在这里结束半开状态的探测
+            if (breaker != null && stream[0] == null) {
+                breaker.onFailure(System.currentTimeMillis());
+            }
+            safeClose(clientChannel);
+            throw e;
+        }
+    }
+
+    // 经隧道打开一个流并等待中继连上后端
+    private void probeThroughTunnel(Route route) throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] opened = new boolean[1];
+        TunnelStream stream = tunnelClient().open(route.remoteHost, route.remotePort, new TunnelStream.Listener() {
+            @Override
+            public void onOpened() {
+                opened[0] = true;
+                done.countDown();
+            }
+
+            @Override
+            public void onBytes(boolean fromLocal, long bytes, long now) {
+            }
+
+            @Override
+            public void onClosed(String reason) {
+                done.countDown();
+            }
+        }, null, null);
+        try {
+            if (!done.await(BackendConnector.CONNECT_TIMEOUT + TunnelLink.HANDSHAKE_TIMEOUT,
+                    TimeUnit.MILLISECONDS) || !opened[0]) {
+                throw new ConnectException("经隧道连接后端失败: " + route.remoteHost + ":" + route.remotePort);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("隧道探测被中断");
+        } finally {
+            stream.reset(ProxySession.CLOSE_NORMAL, "探测结束");
+        }
+    }
+
+    // 会话由共用的转发引擎接管，当前线程建立连接后即返回
+    private void startRelay(SocketChannel clientChannel, SocketChannel remote, String backend, int listenPort)
+            throws IOException {
+        RelayEngine.Relay[] relay = new RelayEngine.Relay[1];
+        ProxySession session = new ProxySession((InetSocketAddress) clientChannel.getRemoteAddress(), backend,
+                () -> relay[0].requestClose(ProxySession.CLOSE_KILLED));
+        relay[0] = RelayEngine.shared().register(clientChannel, remote, session, relayListener(listenPort),
+                relayMemory, newTap(session), options.getPriority(), options.getFlowControl());
+        sessions.put(session.getId(), session);
+        traffic.sessionOpened();
+        // 会话可能在加入列表之前就已结束
+        if (relay[0].isClosed()) {
+            sessions.remove(session.getId());
+        }
+    }
+
+    private RelayEngine.Listener relayListener(int listenPort) {
+        return new RelayEngine.Listener() {
+            @Override
+            public void onBytes(ProxySession s, boolean fromClient, long bytes, long now) {
+                publishBytes(s, fromClient, bytes, now);
+            }
+
+            @Override
+            public void onClosed(ProxySession s) {
+                sessions.remove(s.getId());
+                ProxyEvents.sessionClosed(listenPort, s, s.getCloseReason());
+            }
+
+            @Override
+            public void onSlowConsumer(ProxySession s, boolean clientSide, long buffered, boolean disconnected) {
+                ProxyEvents.slowConsumer(listenPort, s, clientSide, buffered, disconnected);
+            }
+        };
+    }
+
+    private TrafficCapture.Tap newTap(ProxySession session) {
+        TrafficCapture current = capture;
+        return current != null ? current.tap(session.getId()) : null;
+    }
+
+    private void publishBytes(ProxySession session, boolean fromClient, long bytes, long now) {
+        if (fromClient) {
+            session.addBytesFromClient(bytes, now);
+            traffic.addBytesFromClient(bytes);
+        } else {
+            session.addBytesToClient(bytes, now);
+            traffic.addBytesToClient(bytes);
+        }
+    }
+
+    public Collection<ProxySession> getSessions() {
+        return sessions.values();
+    }
+
+    public ConnectMetrics getConnectMetrics() {
+        return connectMetrics;
+    }
+
+    public TrafficCounters getTraffic() {
+        return traffic;
+    }
+
+    public RelayMemory getRelayMemory() {
+        return relayMemory;
+    }
+
+    // 区间映射中任一后端端口熔断即显示熔断
+    public CircuitBreaker.State getBreakerState() {
+        CircuitBreaker.State result = CircuitBreaker.State.CLOSED;
+        for (CircuitBreaker breaker : route.breakers.values()) {
+            CircuitBreaker.State state = breaker.getState();
+            if (state == CircuitBreaker.State.OPEN) {
+                return state;
+            }
+            if (state == CircuitBreaker.State.HALF_OPEN) {
+                result = state;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 本地端口区间到后端的映射：本地 localPort..localPortEnd 按相同偏移转发到 remotePort 起始的远程端口
+     */
+    private static final class Route {
+        final int localPort;
+        final int localPortEnd;
+        final String remoteHost;
+        final int remotePort;
+        final BackendConnector connector;
+        // 每个后端端口一个熔断器，区间映射时按需创建
+        final Map<Integer, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+        Route(int localPort, int localPortEnd, String remoteHost, int remotePort, BackendConnector connector) {
+            this.localPort = localPort;
+            this.localPortEnd = localPortEnd;
+            this.remoteHost = remoteHost;
+            this.remotePort = remotePort;
+            this.connector = connector;
+        }
+
+        Route withFreshBreakers() {
+            return new Route(localPort, localPortEnd, remoteHost, remotePort, connector);
+        }
+
+        boolean contains(int listenPort) {
+            return listenPort >= localPort && listenPort <= localPortEnd;
+        }
+
+        int targetPort(int listenPort) {
+            return remotePort + (listenPort - localPort);
+        }
+    }
+
+    private static void safeClose(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // 忽略关闭异常
+            }
+        }
+    }
+
+    // 自定义异常类
+    private static class ManualStopException extends IOException {
+        public ManualStopException(String message) {
+            super(message);
+        }
+    }
+
+    private static class CriticalIOException extends IOException {
+        public CriticalIOException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * UDP 转发代理
+ * <p>
+ * 本地每个端口监听一个 DatagramChannel，为每个客户端地址建立一个连接到后端的 DatagramChannel（会话），
+ * 后端的回包通过监听通道发回对应客户端。端口区间内的所有通道注册在同一个 Selector 上，由 start() 所在线程处理。
+ */
+class SimpleUDPProxy implements ForwardingProxy {
+    // IPv4 下 UDP 负载的最大长度
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    // 会话空闲超过该时间后关闭对应的后端通道
+    private static final int SESSION_IDLE_TIMEOUT = 60000;
+    // 每次就绪时最多连续接收的数据报数量，避免单个通道饿死其他通道
+    private static final int RECEIVE_BATCH_SIZE = 64;
+    private static final int EXPIRY_CHECK_INTERVAL = 1000;
+
+    private final int localPort;
+    private final int localPortEnd;
+    private final String remoteHost;
+    private final int remotePort;
+    private final List<UdpListener> listeners = new CopyOnWriteArrayList<>();
+    // 只在事件循环线程中使用，所有收发共用
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private volatile Selector selector;
+    private volatile AccessRules accessRules = AccessRules.allowAll();
+    private final TrafficCounters traffic = new TrafficCounters();
+    private volatile boolean killRequested = false;
+    private volatile boolean manualStop = false;
+    private volatile ProxyState state = ProxyState.INIT;
+
+    public SimpleUDPProxy(int localPort, String remoteHost, int remotePort) {
+        this(localPort, localPort, remoteHost, remotePort);
+    }
+
+    public SimpleUDPProxy(int localPort, int localPortEnd, String remoteHost, int remotePort) {
+        this.localPort = localPort;
+        this.localPortEnd = localPortEnd;
+        this.remoteHost = remoteHost;
+        this.remotePort = remotePort;
+    }
+
+    @Override
+    public void start() throws IOException {
+        setState(ProxyState.INIT);
+        manualStop = false;
+
+        InetSocketAddress backend = new InetSocketAddress(remoteHost, remotePort);
+        if (backend.isUnresolved()) {
+            setState(ProxyState.STOPPED);
+            throw new UnknownHostException(remoteHost);
+        }
+
+        try (Selector sel = Selector.open()) {
+            selector = sel;
+            for (int port = localPort; port <= localPortEnd; port++) {
+                DatagramChannel channel = DatagramChannel.open();
+                UdpListener listener = new UdpListener(channel,
+                        new InetSocketAddress(backend.getAddress(), remotePort + (port - localPort)));
+                listeners.add(listener);
+                channel.bind(new InetSocketAddress(port));
+                channel.configureBlocking(false);
+                channel.register(sel, SelectionKey.OP_READ, listener);
+            }
+            setState(ProxyState.RUNNING);
+
+            long nextExpiryCheck = System.currentTimeMillis() + EXPIRY_CHECK_INTERVAL;
+            while (!manualStop) {
+                sel.select(EXPIRY_CHECK_INTERVAL);
+
+                Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    Object attachment = key.attachment();
+                    if (attachment instanceof UdpListener) {
+                        receiveFromClients((UdpListener) attachment);
+                    } else {
+                        receiveFromBackend((UdpSession) attachment);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= nextExpiryCheck || killRequested) {
+                    killRequested = false;
+                    sweepSessions(now);
+                    nextExpiryCheck = now + EXPIRY_CHECK_INTERVAL;
+                }
+            }
+        } catch (IOException e) {
+            if (!manualStop) {
+                setState(ProxyState.STOPPED);
+                throw e;
+            }
+        } finally {
+            selector = null;
+            for (UdpListener listener : listeners) {
+                listener.close();
+            }
+            listeners.clear();
+        }
+    }
+
+    private void receiveFromClients(UdpListener listener) throws IOException {
+        for (int i = 0; i < RECEIVE_BATCH_SIZE; i++) {
+            buffer.clear();
+            SocketAddress client = listener.channel.receive(buffer);
+            if (client == null) {
+                return;
+            }
+            buffer.flip();
+
+            UdpSession session = listener.sessions.get(client);
+            if (session == null) {
+                // 访问控制在建立会话时判断，被拒绝的客户端数据报直接丢弃
+                InetSocketAddress clientAddress = (InetSocketAddress) client;
+                boolean allowed = accessRules.isAllowed(clientAddress.getAddress());
+                ProxyEvents.accept(listener.channel.socket().getLocalPort(), clientAddress, allowed);
+                if (!allowed) {
+                    continue;
+                }
+                session = openSession(listener, client);
+                if (session == null) {
+                    continue;
+                }
+            }
+            session.lastActivity = System.currentTimeMillis();
+            session.pendingFromClient += buffer.remaining();
+            traffic.addBytesFromClient(buffer.remaining());
+            try {
+                session.channel.write(buffer);
+            } catch (IOException e) {
+                // 后端不可达（ICMP端口不可达等），丢弃该数据报
+            }
+        }
+    }
+
+    private UdpSession openSession(UdpListener listener, SocketAddress client) {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(listener.backend);
+            UdpSession session = new UdpSession(listener, client, channel);
+            // 断开请求可能来自界面线程，只做标记，由事件循环线程关闭
+            session.info = new ProxySession((InetSocketAddress) client,
+                    listener.backend.getHostString() + ":" + listener.backend.getPort(), () -> {
+                session.killRequested = true;
+                killRequested = true;
+                Selector sel = selector;
+                if (sel != null) {
+                    sel.wakeup();
+                }
+            });
+            channel.register(selector, SelectionKey.OP_READ, session);
+            listener.sessions.put(client, session);
+            traffic.sessionOpened();
+            return session;
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    // 忽略关闭异常
+                }
+            }
+            return null;
+        }
+    }
+
+    private void receiveFromBackend(UdpSession session) {
+        for (int i = 0; i < RECEIVE_BATCH_SIZE; i++) {
+            buffer.clear();
+            int bytesRead;
+            try {
+                bytesRead = session.channel.read(buffer);
+            } catch (IOException e) {
+                // 后端拒绝（ICMP端口不可达），关闭会话，下个数据报会重新建立
+                session.info.setCloseReason(ProxySession.CLOSE_ERROR);
+                session.listener.sessions.remove(session.client);
+                session.close();
+                return;
+            }
+            if (bytesRead <= 0) {
+                return;
+            }
+            buffer.flip();
+            session.lastActivity = System.currentTimeMillis();
+            session.pendingToClient += bytesRead;
+            traffic.addBytesToClient(bytesRead);
+            session.info.markFirstByte(session.lastActivity);
+            try {
+                session.listener.channel.send(buffer, session.client);
+            } catch (IOException e) {
+                // 客户端地址暂时不可达，只丢弃该数据报，不影响其他会话
+            }
+        }
+    }
+
+    // 关闭空闲或被请求断开的会话，同时把会话累计的字节数发布给会话查看器，统计值最多滞后一个检查间隔
+    private void sweepSessions(long now) {
+        for (UdpListener listener : listeners) {
+            Iterator<UdpSession> it = listener.sessions.values().iterator();
+            while (it.hasNext()) {
+                UdpSession session = it.next();
+                session.publishStats();
+                if (session.killRequested || now - session.lastActivity > SESSION_IDLE_TIMEOUT) {
+                    session.info.setCloseReason(ProxySession.CLOSE_IDLE_TIMEOUT);
+                    it.remove();
+                    session.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        manualStop = true;
+        setState(ProxyState.STOPPED);
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    @Override
+    public void clear() {
+        manualStop = false;
+        setState(ProxyState.INIT);
+    }
+
+    @Override
+    public void setAccessRules(AccessRules rules) {
+        this.accessRules = rules.inheritHits(this.accessRules);
+    }
+
+    @Override
+    public AccessRules getAccessRules() {
+        return accessRules;
+    }
+
+    @Override
+    public ProxyState getState() {
+        return state;
+    }
+
+    private void setState(ProxyState newState) {
+        ProxyState oldState = state;
+        state = newState;
+        if (oldState != newState) {
+            ProxyEvents.stateChange(localPort, oldState, newState);
+        }
+    }
+
+    @Override
+    public boolean isManualStop() {
+        return manualStop;
+    }
+
+    @Override
+    public Collection<ProxySession> getSessions() {
+        List<ProxySession> result = new ArrayList<>();
+        for (UdpListener listener : listeners) {
+            for (UdpSession session : listener.sessions.values()) {
+                result.add(session.info);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public TrafficCounters getTraffic() {
+        return traffic;
+    }
+
+    @Override
+    public ConnectMetrics getConnectMetrics() {
+        return null;
+    }
+
+    @Override
+    public RelayMemory getRelayMemory() {
+        return null;
+    }
+
+    @Override
+    public CircuitBreaker.State getBreakerState() {
+        return CircuitBreaker.State.CLOSED;
+    }
+
+    int getSessionCount() {
+        int count = 0;
+        for (UdpListener listener : listeners) {
+            count += listener.sessions.size();
+        }
+        return count;
+    }
+
+    // 单个本地端口的监听通道及其会话表
+    private static class UdpListener {
+        private final DatagramChannel channel;
+        private final InetSocketAddress backend;
+        // 客户端地址 -> 会话
+        private final Map<SocketAddress, UdpSession> sessions = new ConcurrentHashMap<>();
+
+        UdpListener(DatagramChannel channel, InetSocketAddress backend) {
+            this.channel = channel;
+            this.backend = backend;
+        }
+
+        void close() {
+            for (UdpSession session : sessions.values()) {
+                session.close();
+            }
+            sessions.clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略关闭异常
+            }
+        }
+    }
+
+    // 单个客户端地址对应的会话
+    private static class UdpSession {
+        private final UdpListener listener;
+        private final SocketAddress client;
+        private final DatagramChannel channel;
+        private volatile long lastActivity = System.currentTimeMillis();
+        private ProxySession info;
+        private volatile boolean killRequested = false;
+        // 事件循环线程中累计，定期发布到 info
+        private long pendingFromClient;
+        private long pendingToClient;
+
+        UdpSession(UdpListener listener, SocketAddress client, DatagramChannel channel) {
+            this.listener = listener;
+            this.client = client;
+            this.channel = channel;
+        }
+
+        void publishStats() {
+            if (pendingFromClient > 0) {
+                info.addBytesFromClient(pendingFromClient, lastActivity);
+                pendingFromClient = 0;
+            }
+            if (pendingToClient > 0) {
+                info.addBytesToClient(pendingToClient, lastActivity);
+                pendingToClient = 0;
+            }
+        }
+
+        void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略关闭异常
+            }
+            publishStats();
+            info.setCloseReason(ProxySession.CLOSE_PROXY_STOPPED);
+            ProxyEvents.sessionClosed(listener.channel.socket().getLocalPort(), info, info.getCloseReason());
+        }
+    }
+}
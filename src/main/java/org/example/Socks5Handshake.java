@@ -0,0 +1,194 @@
+package org.example;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.ProtocolException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * SOCKS5 握手（RFC 1928），只支持 CONNECT 命令
+ * <p>
+ * 认证方式为无认证，或配置了用户名时使用用户名/密码认证（RFC 1929）。
+ * 在阻塞模式的流上逐字节按长度读取，不会多读客户端在握手后紧接着发送的数据。
+ */
+final class Socks5Handshake {
+    static final int REPLY_SUCCEEDED = 0x00;
+    static final int REPLY_GENERAL_FAILURE = 0x01;
+    static final int REPLY_NOT_ALLOWED = 0x02;
+    static final int REPLY_HOST_UNREACHABLE = 0x04;
+    static final int REPLY_CONNECTION_REFUSED = 0x05;
+    static final int REPLY_COMMAND_NOT_SUPPORTED = 0x07;
+    static final int REPLY_ADDRESS_TYPE_NOT_SUPPORTED = 0x08;
+
+    private static final int VERSION = 0x05;
+    private static final int AUTH_VERSION = 0x01;
+    private static final int METHOD_NO_AUTH = 0x00;
+    private static final int METHOD_USERNAME_PASSWORD = 0x02;
+    private static final int METHOD_NONE_ACCEPTABLE = 0xFF;
+    private static final int CMD_CONNECT = 0x01;
+    private static final int ATYP_IPV4 = 0x01;
+    private static final int ATYP_DOMAIN = 0x03;
+    private static final int ATYP_IPV6 = 0x04;
+
+    private Socks5Handshake() {
+    }
+
+    /**
+     * 客户端请求的目标
+     */
+    static final class Request {
+        final String host;
+        // 客户端直接请求 IP 时的地址，请求域名时为 null
+        final InetAddress address;
+        final int port;
+
+        Request(String host, InetAddress address, int port) {
+            this.host = host;
+            this.address = address;
+            this.port = port;
+        }
+
+        @Override
+        public String toString() {
+            return (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port;
+        }
+    }
+
+    /**
+     * 完成认证并读取 CONNECT 请求，调用方检查目标并连接后通过 {@link #reply} 回复结果
+     *
+     * @param username 为 null 或空时不要求认证
+     * @throws IOException 协议错误或认证失败，已向客户端回复的错误码
+     */
+    static Request accept(InputStream in, OutputStream out, String username, String password) throws IOException {
+        if (readByte(in) != VERSION) {
+            throw new ProtocolException("不是 SOCKS5 请求");
+        }
+        boolean authRequired = username != null && !username.isEmpty();
+        int wanted = authRequired ? METHOD_USERNAME_PASSWORD : METHOD_NO_AUTH;
+        boolean offered = false;
+        for (int i = readByte(in); i > 0; i--) {
+            offered |= readByte(in) == wanted;
+        }
+        if (!offered) {
+            out.write(new byte[]{VERSION, (byte) METHOD_NONE_ACCEPTABLE});
+            out.flush();
+            throw new ProtocolException("客户端不支持所需的认证方式");
+        }
+        out.write(new byte[]{VERSION, (byte) wanted});
+        out.flush();
+
+        if (authRequired) {
+            authenticate(in, out, username, password);
+        }
+
+        if (readByte(in) != VERSION) {
+            throw new ProtocolException("SOCKS5 请求版本错误");
+        }
+        int command = readByte(in);
+        readByte(in);
+        int addressType = readByte(in);
+        String host;
+        InetAddress address = null;
+        switch (addressType) {
+            case ATYP_IPV4:
+                address = InetAddress.getByAddress(readBytes(in, 4));
+                host = address.getHostAddress();
+                break;
+            case ATYP_IPV6:
+                address = InetAddress.getByAddress(readBytes(in, 16));
+                host = address.getHostAddress();
+                break;
+            case ATYP_DOMAIN:
+                host = new String(readBytes(in, readByte(in)), StandardCharsets.US_ASCII);
+                break;
+            default:
+                reply(out, REPLY_ADDRESS_TYPE_NOT_SUPPORTED, null);
+                throw new ProtocolException("不支持的地址类型: " + addressType);
+        }
+        int port = readByte(in) << 8 | readByte(in);
+        if (command != CMD_CONNECT) {
+            reply(out, REPLY_COMMAND_NOT_SUPPORTED, null);
+            throw new ProtocolException("不支持的 SOCKS5 命令: " + command);
+        }
+        return new Request(host, address, port);
+    }
+
+    private static void authenticate(InputStream in, OutputStream out, String username, String password)
+            throws IOException {
+        if (readByte(in) != AUTH_VERSION) {
+            throw new ProtocolException("用户名/密码认证版本错误");
+        }
+        byte[] user = readBytes(in, readByte(in));
+        byte[] pass = readBytes(in, readByte(in));
+        // 固定时间比较，避免通过响应时间猜测密码
+        boolean ok = MessageDigest.isEqual(user, username.getBytes(StandardCharsets.UTF_8))
+                & MessageDigest.isEqual(pass, (password != null ? password : "").getBytes(StandardCharsets.UTF_8));
+        out.write(new byte[]{AUTH_VERSION, (byte) (ok ? 0x00 : 0x01)});
+        out.flush();
+        if (!ok) {
+            throw new ProtocolException("SOCKS5 用户名或密码错误");
+        }
+    }
+
+    /**
+     * 回复 CONNECT 结果
+     *
+     * @param bound 成功时为代理连接后端使用的本地地址，失败时为 null
+     */
+    static void reply(OutputStream out, int code, InetSocketAddress bound) throws IOException {
+        byte[] address = bound != null ? bound.getAddress().getAddress() : new byte[4];
+        int port = bound != null ? bound.getPort() : 0;
+        byte[] message = new byte[6 + address.length];
+        message[0] = VERSION;
+        message[1] = (byte) code;
+        message[3] = (byte) (address.length == 4 ? ATYP_IPV4 : ATYP_IPV6);
+        System.arraycopy(address, 0, message, 4, address.length);
+        message[4 + address.length] = (byte) (port >> 8);
+        message[5 + address.length] = (byte) port;
+        out.write(message);
+        out.flush();
+    }
+
+    /**
+     * 后端连接失败原因对应的回复码
+     */
+    static int replyCodeOf(IOException e) {
+        if (e instanceof UnknownHostException || e instanceof NoRouteToHostException) {
+            return REPLY_HOST_UNREACHABLE;
+        }
+        if (e instanceof ConnectException) {
+            return REPLY_CONNECTION_REFUSED;
+        }
+        return REPLY_GENERAL_FAILURE;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("SOCKS5 握手未完成客户端已断开");
+        }
+        return b;
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int n = in.read(bytes, offset, length - offset);
+            if (n < 0) {
+                throw new EOFException("SOCKS5 握手未完成客户端已断开");
+            }
+            offset += n;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,180 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import javax.swing.SwingUtilities;
+import java.awt.GraphicsEnvironment;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动耗时基准
+ * <p>
+ * 用法：--startup-benchmark [迭代次数]。依次输出 JVM 启动到配置绑定完成、到窗口显示（有图形环境时）的耗时，
+ * 然后对比 ConfigBinder 和先构造 JSONObject 树再读取同一配置的耗时。当前目录有 config.json 时使用它，
+ * 否则使用生成的配置。窗口只显示不恢复上次的会话，测完即退出。
+ * 也用作 AppCDS 归档的训练程序，见 pom.xml 中的 appcds 配置。
+ */
+final class StartupBenchmark {
+    private static final int DEFAULT_ITERATIONS = 200;
+    // 生成配置的规模
+    private static final int SYNTHETIC_ENVIRONMENTS = 20;
+    private static final int SYNTHETIC_MAPPINGS = 50;
+
+    private StartupBenchmark() {
+    }
+
+    static void main(String[] args) throws Exception {
+        int iterations = DEFAULT_ITERATIONS;
+        if (args.length > 1) {
+            try {
+                iterations = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("用法: --startup-benchmark [迭代次数]");
+                System.exit(1);
+            }
+        }
+
+        Path configFile = Paths.get("config.json");
+        boolean synthetic = !Files.exists(configFile);
+        byte[] json = synthetic ? syntheticConfig() : Files.readAllBytes(configFile);
+
+        long start = System.nanoTime();
+        int mappings = bind(json);
+        long coldMicros = (System.nanoTime() - start) / 1000;
+        System.out.printf("配置: %s，%d 字节，%d 个映射%n", synthetic ? "生成" : configFile.toAbsolutePath(),
+                json.length, mappings);
+        System.out.printf("首次绑定: %d us，JVM 启动至绑定完成: %d ms%n", coldMicros, uptime());
+
+        if (!GraphicsEnvironment.isHeadless()) {
+            TCPProxyManagerGUI[] gui = new TCPProxyManagerGUI[1];
+            SwingUtilities.invokeAndWait(() -> {
+                gui[0] = new TCPProxyManagerGUI(false);
+                gui[0].setVisible(true);
+            });
+            // 排在窗口首次绘制之后
+            SwingUtilities.invokeAndWait(() -> { });
+            System.out.printf("JVM 启动至窗口显示: %d ms%n", uptime());
+            SwingUtilities.invokeAndWait(() -> gui[0].dispose());
+        }
+
+        // 预热后各自测量
+        for (int i = 0; i < iterations; i++) {
+            bind(json);
+            treeParse(json);
+        }
+        long binder = time(json, iterations, true);
+        long tree = time(json, iterations, false);
+        System.out.printf("ConfigBinder: %d us/次，JSONObject 树: %d us/次（%d 次）%n",
+                binder / iterations / 1000, tree / iterations / 1000, iterations);
+        System.exit(0);
+    }
+
+    private static long time(byte[] json, int iterations, boolean binder) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (binder) {
+                bind(json);
+            } else {
+                treeParse(json);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long uptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    private static int bind(byte[] json) {
+        Map<String, List<ProxyConfig>> environments = new HashMap<>();
+        ConfigBinder.bind(json, environments, new HashMap<>());
+        return count(environments);
+    }
+
+    // 改用 ConfigBinder 之前的读取方式，作为对照；高级选项不再单独解析，只读取映射的基本字段，
+    // 因此是旧方式耗时的下限
+    private static int treeParse(byte[] json) {
+        Map<String, List<ProxyConfig>> environments = new HashMap<>();
+        Map<String, EnvironmentOptions> environmentOptions = new HashMap<>();
+        JSONObject config = JSON.parseObject(new String(json, StandardCharsets.UTF_8));
+        for (Map.Entry<String, Object> entry : config.entrySet()) {
+            JSONArray proxies;
+            if (entry.getValue() instanceof JSONObject) {
+                JSONObject envJson = (JSONObject) entry.getValue();
+                proxies = envJson.containsKey("mappings") ? envJson.getJSONArray("mappings") : new JSONArray();
+                environmentOptions.put(entry.getKey(), new EnvironmentOptions(
+                        ProxyOptions.cidrList(strings(envJson, "allow")),
+                        ProxyOptions.cidrList(strings(envJson, "deny")),
+                        EnvironmentOptions.whitelist(strings(envJson, "socksWhitelist"))));
+            } else {
+                proxies = (JSONArray) entry.getValue();
+            }
+            List<ProxyConfig> proxyList = new ArrayList<>();
+            for (int i = 0; i < proxies.size(); i++) {
+                JSONObject proxyJson = proxies.getJSONObject(i);
+                int localPort = proxyJson.getIntValue("localPort");
+                proxyList.add(new ProxyConfig(localPort,
+                        proxyJson.containsKey("localPortEnd") ? proxyJson.getIntValue("localPortEnd") : localPort,
+                        proxyJson.getString("remoteHost"), proxyJson.getIntValue("remotePort"),
+                        proxyJson.containsKey("desc") ? proxyJson.getString("desc") : "未命名代理",
+                        ProxyProtocol.parse(proxyJson.getString("protocol")), ProxyOptions.DEFAULT));
+            }
+            environments.put(entry.getKey(), proxyList);
+        }
+        return count(environments);
+    }
+
+    private static List<String> strings(JSONObject json, String key) {
+        List<String> values = json.getList(key, String.class);
+        return values != null ? values : Collections.emptyList();
+    }
+
+    private static int count(Map<String, List<ProxyConfig>> environments) {
+        int mappings = 0;
+        for (List<ProxyConfig> configs : environments.values()) {
+            mappings += configs.size();
+        }
+        return mappings;
+    }
+
+    private static byte[] syntheticConfig() {
+        JSONObject config = new JSONObject();
+        for (int e = 0; e < SYNTHETIC_ENVIRONMENTS; e++) {
+            JSONArray mappings = new JSONArray();
+            for (int m = 0; m < SYNTHETIC_MAPPINGS; m++) {
+                JSONObject mapping = new JSONObject();
+                int port = 10000 + e * SYNTHETIC_MAPPINGS + m;
+                mapping.put("localPort", port);
+                mapping.put("remoteHost", "10.0." + e + "." + (m + 1));
+                mapping.put("remotePort", 8080);
+                mapping.put("desc", "服务-" + e + "-" + m);
+                if (m % 5 == 0) {
+                    mapping.put("acceptors", 2);
+                    mapping.put("allow", new JSONArray(List.of("10.0.0.0/8", "192.168.0.0/16")));
+                }
+                mappings.add(mapping);
+            }
+            if (e % 2 == 0) {
+                JSONObject environment = new JSONObject();
+                environment.put("mappings", mappings);
+                environment.put("deny", new JSONArray(List.of("10.0.99.0/24")));
+                config.put("环境" + e, environment);
+            } else {
+                config.put("环境" + e, mappings);
+            }
+        }
+        return config.toJSONString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -3,59 +3,121 @@ package org.example;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.*;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class TCPProxyManagerGUI extends JFrame {
 
     private static final String VERSION = "v1.1";  // 版本常量
     private static final String CONFIG_FILE = "config.json";
+    // 退出时显示的环境和运行中的映射，见 LastSession
+    private static final String LAST_SESSION_FILE = "last-session.json";
+    // 各映射流量时间序列文件所在目录
+    private static final String METRICS_DIR = "metrics";
+
+    // 表格列索引，见 MappingTableModel
+    private static final int COL_SELECT = MappingTableModel.COL_SELECT;
+    private static final int COL_DESC = MappingTableModel.COL_DESC;
+    private static final int COL_PROTOCOL = MappingTableModel.COL_PROTOCOL;
+    private static final int COL_REMOTE_HOST = MappingTableModel.COL_REMOTE_HOST;
+    private static final int COL_REMOTE_PORT = MappingTableModel.COL_REMOTE_PORT;
+    private static final int COL_LOCAL_PORT = MappingTableModel.COL_LOCAL_PORT;
+    private static final int COL_STATUS = MappingTableModel.COL_STATUS;
+    private static final int COL_OPTIONS = MappingTableModel.COL_OPTIONS;
+    private static final int COL_BREAKER = MappingTableModel.COL_BREAKER;
+
+    // 底部标签页索引，0 为日志
+    private static final int TAB_SESSIONS = 1;
+    private static final int TAB_RUNNING = 2;
+    private static final int TAB_METRICS = 3;
+
     private final Map<String, List<ProxyConfig>> environments = new HashMap<>();
-    private final Map<ProxyConfig, ManagedProxy> activeProxies = new HashMap<>();
+    private final Map<String, EnvironmentOptions> environmentOptions = new HashMap<>();
+    // 各环境的代理互不影响，切换显示的环境时不停止其他环境中运行的代理
+    private final Map<String, Map<ProxyConfig, ManagedProxy>> environmentProxies = new HashMap<>();
+    // 当前显示环境的代理
+    private Map<ProxyConfig, ManagedProxy> activeProxies = new HashMap<>();
+    private final PortRegistry<PortClaim> portRegistry = new PortRegistry<>();
+    // 运行中代理当前的端口占用，在线修改本地端口时随之更新
+    private final Map<ManagedProxy, PortClaim> portClaims = new ConcurrentHashMap<>();
     private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final FlightRecorderControl flightRecorder = new FlightRecorderControl();
 
     private JLabel titleLabel;
     private JTable proxyTable;
-    private DefaultTableModel tableModel;
+    private MappingTableModel tableModel;
+    private TableRowSorter<MappingTableModel> tableSorter;
+    private JTextField searchField;
     private JButton startButton, stopButton, startAllButton, stopAllButton, addMappingButton, deleteMappingButton, renameEnvironmentButton;
     private JTextArea logArea;
     private JScrollPane logScrollPane;
+    private SessionInspectorPanel sessionInspector;
+    private RunningMappingsPanel runningMappingsPanel;
+    private MetricsChartPanel metricsChartPanel;
+    private final MetricsRecorder metricsRecorder = new MetricsRecorder(Paths.get(METRICS_DIR));
     private String currentEnvironment;
     private javax.swing.Timer statusUpdateTimer;
+    // 配置在后台线程读取，完成前不保存，避免覆盖配置文件
+    private boolean configLoaded;
+    // 配置读取完成后是否恢复上次的环境和运行中的映射，启动基准测试时不恢复
+    private final boolean restoreLastSession;
 
     public TCPProxyManagerGUI() {
+        this(true);
+    }
+
+    TCPProxyManagerGUI(boolean restoreLastSession) {
         super("TCP 代理管理器 " + VERSION);  // 修改窗口标题
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(900, 700);
+        this.restoreLastSession = restoreLastSession;
 
         // 设置字符编码
         System.setProperty("file.encoding", "UTF-8");
 
-        loadConfig();
+        // 先显示窗口，配置在后台读取，读取完成后恢复上次的环境和运行中的映射
         initComponents();
         layoutComponents();
         setLocationRelativeTo(null);
         startStatusUpdateTimer();
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                saveLastSession();
+            }
+        });
+        loadConfig();
 
         logMessage("程序启动成功");
     }
 
     private void startStatusUpdateTimer() {
-        statusUpdateTimer = new javax.swing.Timer(1000, e -> updateAllProxyStates());
+        statusUpdateTimer = new javax.swing.Timer(1000, e -> {
+            updateAllProxyStates();
+            recordMetrics();
+        });
         statusUpdateTimer.start();
     }
 
@@ -66,10 +128,16 @@ public class TCPProxyManagerGUI extends JFrame {
                 if (config != null) {
                     ManagedProxy proxy = activeProxies.get(config);
                     if (proxy != null) {
-                        ProxyState currentState = (ProxyState) tableModel.getValueAt(i, 5);
+                        ProxyState currentState = (ProxyState) tableModel.getValueAt(i, COL_STATUS);
                         ProxyState newState = proxy.getState();
                         if (currentState != newState) {
-                            tableModel.setValueAt(newState, i, 5);
+                            tableModel.setValueAt(newState, i, COL_STATUS);
+                        }
+                        CircuitBreaker.State breakerState = proxy.getBreakerState();
+                        if (tableModel.getValueAt(i, COL_BREAKER) != breakerState) {
+                            tableModel.setValueAt(breakerState, i, COL_BREAKER);
+                            // 熔断列隐藏，需要通知状态列重绘
+                            tableModel.fireTableCellUpdated(i, COL_STATUS);
                         }
                     }
                 }
@@ -77,45 +145,96 @@ public class TCPProxyManagerGUI extends JFrame {
         });
     }
 
+    // 由状态定时器每秒调用，在界面线程中执行
+    private void recordMetrics() {
+        long now = System.currentTimeMillis() / 1000;
+        for (ManagedProxy proxy : getAllProxies()) {
+            metricsRecorder.sample(MetricsRecorder.keyOf(proxy.getEnvironment(), proxy.getConfig()),
+                    proxy.getTraffic(), proxy.getState() == ProxyState.RUNNING, now);
+        }
+    }
+
     private void loadConfig() {
-        try (InputStreamReader reader = new InputStreamReader(
-                new FileInputStream(CONFIG_FILE), StandardCharsets.UTF_8)) {
-
-            // 读取所有内容到字符串
-            StringBuilder sb = new StringBuilder();
-            char[] buffer = new char[8192];
-            int len;
-            while ((len = reader.read(buffer)) != -1) {
-                sb.append(buffer, 0, len);
+        executor.execute(() -> {
+            Map<String, List<ProxyConfig>> loadedEnvironments = new HashMap<>();
+            Map<String, EnvironmentOptions> loadedOptions = new HashMap<>();
+            List<String> skipped = Collections.emptyList();
+            String error = null;
+            try {
+                skipped = readConfig(loadedEnvironments, loadedOptions);
+            } catch (Exception e) {
+                loadedEnvironments.clear();
+                loadedOptions.clear();
+                loadedEnvironments.put("默认环境", Collections.emptyList());
+                error = e.getMessage();
             }
+            LastSession lastSession = LastSession.read(Paths.get(LAST_SESSION_FILE));
+            String loadError = error;
+            skipped.forEach(this::logError);
+            SwingUtilities.invokeLater(() -> applyConfig(loadedEnvironments, loadedOptions, lastSession, loadError));
+        });
+    }
 
-            JSONObject config = JSON.parseObject(sb.toString());
-
-            for (Map.Entry<String, Object> entry : config.entrySet()) {
-                String env = entry.getKey();
-                JSONArray proxies = (JSONArray) entry.getValue();
-                List<ProxyConfig> proxyList = new ArrayList<>();
-
-                for (int i = 0; i < proxies.size(); i++) {
-                    JSONObject proxyJson = proxies.getJSONObject(i);
-                    ProxyConfig configObj = new ProxyConfig(
-                            proxyJson.getIntValue("localPort"),
-                            proxyJson.getString("remoteHost"),
-                            proxyJson.getIntValue("remotePort"),
-                            proxyJson.containsKey("desc") ? proxyJson.getString("desc") : "未命名代理"
-                    );
-                    proxyList.add(configObj);
-                }
+    // 在界面线程中合并读取到的配置，启动期间新增的环境保留
+    private void applyConfig(Map<String, List<ProxyConfig>> loadedEnvironments,
+                             Map<String, EnvironmentOptions> loadedOptions, LastSession lastSession, String error) {
+        loadedEnvironments.forEach(environments::putIfAbsent);
+        loadedOptions.forEach(environmentOptions::putIfAbsent);
+        configLoaded = true;
+        updateEnvironmentMenu(getJMenuBar().getMenu(0));
+        if (error != null) {
+            logError("配置文件加载失败: " + error);
+            return;
+        }
 
-                environments.put(env, proxyList);
+        String environment = lastSession.getEnvironment();
+        if (!restoreLastSession || currentEnvironment != null || environment == null || !environments.containsKey(environment)) {
+            return;
+        }
+        switchEnvironment(environment);
+        int restored = 0;
+        for (int i = 0; i < tableModel.getRowCount(); i++) {
+            ProxyConfig config = getProxyConfigFromRow(i);
+            if (config != null && lastSession.wasRunning(config)) {
+                startProxy(config, i);
+                restored++;
             }
-        } catch (Exception e) {
-            environments.put("默认环境", Collections.emptyList());
-            logError("配置文件加载失败: " + e.getMessage());
+        }
+        if (restored > 0) {
+            logMessage("已恢复上次运行的 " + restored + " 个映射");
         }
     }
 
+    private void saveLastSession() {
+        Set<String> running = new HashSet<>();
+        for (ManagedProxy proxy : activeProxies.values()) {
+            if (proxy.getState() == ProxyState.RUNNING) {
+                running.add(LastSession.keyOf(proxy.getConfig()));
+            }
+        }
+        try {
+            new LastSession(currentEnvironment, running).write(Paths.get(LAST_SESSION_FILE));
+        } catch (IOException e) {
+            // 退出时忽略保存失败，下次启动不恢复
+        }
+    }
+
+    /**
+     * 读取配置文件，界面和无界面模式共用
+     *
+     * @return 因端口无效被跳过的映射
+     * @throws IllegalArgumentException 配置格式错误
+     */
+    static List<String> readConfig(Map<String, List<ProxyConfig>> environments,
+                                   Map<String, EnvironmentOptions> environmentOptions) throws IOException {
+        return ConfigBinder.bind(Files.readAllBytes(Paths.get(CONFIG_FILE)), environments, environmentOptions);
+    }
+
     private void saveConfig() {
+        if (!configLoaded) {
+            logError("配置文件尚未加载完成，请稍后再保存");
+            return;
+        }
         try {
             JSONObject config = new JSONObject();
             for (Map.Entry<String, List<ProxyConfig>> entry : environments.entrySet()) {
@@ -123,12 +242,28 @@ public class TCPProxyManagerGUI extends JFrame {
                 for (ProxyConfig proxyConfig : entry.getValue()) {
                     JSONObject proxyJson = new JSONObject();
                     proxyJson.put("localPort", proxyConfig.getLocalPort());
+                    if (proxyConfig.isPortRange()) {
+                        proxyJson.put("localPortEnd", proxyConfig.getLocalPortEnd());
+                    }
                     proxyJson.put("remoteHost", proxyConfig.getRemoteHost());
                     proxyJson.put("remotePort", proxyConfig.getRemotePort());
                     proxyJson.put("desc", proxyConfig.getDescription());
+                    if (proxyConfig.getProtocol() != ProxyProtocol.TCP) {
+                        proxyJson.put("protocol", proxyConfig.getProtocol().name());
+                    }
+                    proxyConfig.getOptions().writeTo(proxyJson);
                     proxies.add(proxyJson);
                 }
-                config.put(entry.getKey(), proxies);
+
+                EnvironmentOptions envOptions = environmentOptions.get(entry.getKey());
+                if (envOptions != null && !envOptions.isDefault()) {
+                    JSONObject envJson = new JSONObject();
+                    envJson.put("mappings", proxies);
+                    envOptions.writeTo(envJson);
+                    config.put(entry.getKey(), envJson);
+                } else {
+                    config.put(entry.getKey(), proxies);
+                }
             }
 
             try (OutputStreamWriter writer = new OutputStreamWriter(
@@ -148,46 +283,16 @@ public class TCPProxyManagerGUI extends JFrame {
         }
 
         try {
-            // 从表格中读取当前数据更新到environments
-            List<ProxyConfig> updatedConfigs = new ArrayList<>();
+            // 表格模型已按行解析好配置，只对无法解析的行说明原因
             for (int i = 0; i < tableModel.getRowCount(); i++) {
-                String desc = (String) tableModel.getValueAt(i, 1);
-                String remoteHost = (String) tableModel.getValueAt(i, 2);
-                Object remotePortObj = tableModel.getValueAt(i, 3);
-                Object localPortObj = tableModel.getValueAt(i, 4);
-
-                // 处理可能的空值和类型转换
-                int remotePort = 0;
-                int localPort = 0;
-
-                if (remotePortObj instanceof Integer) {
-                    remotePort = (Integer) remotePortObj;
-                } else if (remotePortObj instanceof String) {
-                    try {
-                        remotePort = Integer.parseInt((String) remotePortObj);
-                    } catch (NumberFormatException e) {
-                        logError("第" + (i + 1) + "行远程端口格式错误: " + remotePortObj);
-                        continue;
-                    }
-                }
-
-                if (localPortObj instanceof Integer) {
-                    localPort = (Integer) localPortObj;
-                } else if (localPortObj instanceof String) {
-                    try {
-                        localPort = Integer.parseInt((String) localPortObj);
-                    } catch (NumberFormatException e) {
-                        logError("第" + (i + 1) + "行本地端口格式错误: " + localPortObj);
-                        continue;
+                if (tableModel.getConfig(i) == null) {
+                    String error = rowError(i);
+                    if (error != null) {
+                        logError("第" + (i + 1) + "行" + error);
                     }
                 }
-
-                if (desc != null && !desc.trim().isEmpty() &&
-                        remoteHost != null && !remoteHost.trim().isEmpty() &&
-                        remotePort > 0 && localPort > 0) {
-                    updatedConfigs.add(new ProxyConfig(localPort, remoteHost.trim(), remotePort, desc.trim()));
-                }
             }
+            List<ProxyConfig> updatedConfigs = tableModel.toConfigs();
 
             environments.put(currentEnvironment, updatedConfigs);
             saveConfig();
@@ -200,50 +305,39 @@ public class TCPProxyManagerGUI extends JFrame {
         }
     }
 
+    /**
+     * 无法解析的行的错误原因，描述或远程地址为空时返回 null，这些行保存时直接忽略
+     */
+    private String rowError(int row) {
+        ProxyProtocol protocol = (ProxyProtocol) tableModel.getValueAt(row, COL_PROTOCOL);
+        Object remotePortObj = tableModel.getValueAt(row, COL_REMOTE_PORT);
+        Object localPortObj = tableModel.getValueAt(row, COL_LOCAL_PORT);
+        PortRange localPorts;
+        try {
+            localPorts = PortRange.parse(localPortObj);
+        } catch (NumberFormatException e) {
+            return "本地端口格式错误: " + localPortObj;
+        }
+        if (protocol == ProxyProtocol.SOCKS5) {
+            return null;
+        }
+        PortRange remotePorts;
+        try {
+            remotePorts = PortRange.parse(remotePortObj);
+        } catch (NumberFormatException e) {
+            return "远程端口格式错误: " + remotePortObj;
+        }
+        if (!MappingTableModel.isValidPortMapping(localPorts, remotePorts)) {
+            return "远程端口区间与本地端口区间长度不一致";
+        }
+        return null;
+    }
+
     private void saveCurrentEnvironmentToMemory() {
         if (currentEnvironment == null) {
             return;
         }
-
-        List<ProxyConfig> updatedConfigs = new ArrayList<>();
-        for (int i = 0; i < tableModel.getRowCount(); i++) {
-            String desc = (String) tableModel.getValueAt(i, 1);
-            String remoteHost = (String) tableModel.getValueAt(i, 2);
-            Object remotePortObj = tableModel.getValueAt(i, 3);
-            Object localPortObj = tableModel.getValueAt(i, 4);
-
-            // 处理可能的空值和类型转换
-            int remotePort = 0;
-            int localPort = 0;
-
-            if (remotePortObj instanceof Integer) {
-                remotePort = (Integer) remotePortObj;
-            } else if (remotePortObj instanceof String) {
-                try {
-                    remotePort = Integer.parseInt((String) remotePortObj);
-                } catch (NumberFormatException e) {
-                    continue;
-                }
-            }
-
-            if (localPortObj instanceof Integer) {
-                localPort = (Integer) localPortObj;
-            } else if (localPortObj instanceof String) {
-                try {
-                    localPort = Integer.parseInt((String) localPortObj);
-                } catch (NumberFormatException e) {
-                    continue;
-                }
-            }
-
-            if (desc != null && !desc.trim().isEmpty() &&
-                    remoteHost != null && !remoteHost.trim().isEmpty() &&
-                    remotePort > 0 && localPort > 0) {
-                updatedConfigs.add(new ProxyConfig(localPort, remoteHost.trim(), remotePort, desc.trim()));
-            }
-        }
-
-        environments.put(currentEnvironment, updatedConfigs);
+        environments.put(currentEnvironment, tableModel.toConfigs());
     }
 
     private void initComponents() {
@@ -278,42 +372,81 @@ public class TCPProxyManagerGUI extends JFrame {
         saveMenu.add(saveItem);
         menuBar.add(saveMenu);
 
-        // 关于菜单
+        // 高级菜单和关于菜单在第一次展开时才创建菜单项
+        JMenu advancedMenu = new JMenu("高级");
+        populateOnFirstOpen(advancedMenu, this::populateAdvancedMenu);
+        menuBar.add(advancedMenu);
+
         JMenu aboutMenu = new JMenu("关于");
-        JMenuItem aboutItem = new JMenuItem("关于");
-        aboutItem.addActionListener(this::showAbout);
-        aboutMenu.add(aboutItem);
+        populateOnFirstOpen(aboutMenu, menu -> {
+            JMenuItem aboutItem = new JMenuItem("关于");
+            aboutItem.addActionListener(this::showAbout);
+            menu.add(aboutItem);
+        });
         menuBar.add(aboutMenu);
 
         setJMenuBar(menuBar);
 
-        String[] columnNames = {"选择", "描述", "远程地址", "远程端口", "本地端口", "状态"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public Class<?> getColumnClass(int column) {
-                if (column == 0) return Boolean.class;
-                if (column == 5) return ProxyState.class;
-                return String.class;
-            }
-
+        tableModel = new MappingTableModel() {
             @Override
             public boolean isCellEditable(int row, int column) {
-                if (column == 0) return true; // 选择列总是可编辑
-
-                // 对于非运行状态的行，允许编辑描述、远程地址、远程端口、本地端口
-                if (column >= 1 && column <= 4) {
-                    ProxyState state = (ProxyState) getValueAt(row, 5);
-                    return state != ProxyState.RUNNING;
+                if (column == COL_SELECT) return true; // 选择列总是可编辑
+
+                // 对于非运行状态的行，允许编辑描述、协议、远程地址、远程端口、本地端口
+                // 运行中的 TCP 映射除协议外可以在线修改
+                if (column >= COL_DESC && column <= COL_LOCAL_PORT) {
+                    ProxyState state = (ProxyState) getValueAt(row, COL_STATUS);
+                    if (state != ProxyState.RUNNING) {
+                        return true;
+                    }
+                    return column != COL_PROTOCOL && getValueAt(row, COL_PROTOCOL) == ProxyProtocol.TCP;
                 }
 
                 return false;
             }
+
+            @Override
+            public void setValueAt(Object value, int row, int column) {
+                if (column < COL_DESC || column > COL_LOCAL_PORT || getValueAt(row, COL_STATUS) != ProxyState.RUNNING) {
+                    super.setValueAt(value, row, column);
+                    return;
+                }
+                Object oldValue = getValueAt(row, column);
+                if (Objects.equals(oldValue, value)) {
+                    return;
+                }
+                ProxyConfig oldConfig = getProxyConfigFromRow(row);
+                super.setValueAt(value, row, column);
+                if (!reconfigureRunningRow(row, oldConfig)) {
+                    super.setValueAt(oldValue, row, column);
+                }
+            }
         };
 
         proxyTable = new JTable(tableModel);
-        proxyTable.getColumnModel().getColumn(0).setPreferredWidth(50);
-        proxyTable.getColumnModel().getColumn(0).setMaxWidth(80);
-        proxyTable.getColumnModel().getColumn(5).setCellRenderer(new StatusRenderer());
+        // 搜索结果由表格模型维护，过滤器只按行查询
+        tableSorter = new TableRowSorter<>(tableModel);
+        tableSorter.setRowFilter(new RowFilter<MappingTableModel, Integer>() {
+            @Override
+            public boolean include(Entry<? extends MappingTableModel, ? extends Integer> entry) {
+                return tableModel.isVisible(entry.getIdentifier());
+            }
+        });
+        tableSorter.setSortable(COL_SELECT, false);
+        Comparator<Object> byPort = Comparator.comparingInt(MappingTableModel::portSortKey);
+        tableSorter.setComparator(COL_REMOTE_PORT, byPort);
+        tableSorter.setComparator(COL_LOCAL_PORT, byPort);
+        // 编辑后的行按新值重新排序和过滤
+        tableSorter.setSortsOnUpdates(true);
+        proxyTable.setRowSorter(tableSorter);
+        proxyTable.removeColumn(proxyTable.getColumnModel().getColumn(COL_BREAKER));
+        proxyTable.removeColumn(proxyTable.getColumnModel().getColumn(COL_OPTIONS));
+        proxyTable.getColumnModel().getColumn(COL_SELECT).setPreferredWidth(50);
+        proxyTable.getColumnModel().getColumn(COL_SELECT).setMaxWidth(80);
+        proxyTable.getColumnModel().getColumn(COL_PROTOCOL).setMaxWidth(80);
+        proxyTable.getColumnModel().getColumn(COL_PROTOCOL).setCellEditor(
+                new DefaultCellEditor(new JComboBox<>(ProxyProtocol.values())));
+        proxyTable.getColumnModel().getColumn(COL_STATUS).setCellRenderer(new StatusRenderer());
 
         proxyTable.setRowHeight(40);
         proxyTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -322,14 +455,40 @@ public class TCPProxyManagerGUI extends JFrame {
 
         JCheckBox headerCheckBox = new JCheckBox();
         headerCheckBox.setHorizontalAlignment(JCheckBox.CENTER);
-        headerCheckBox.addActionListener(e -> {
-            boolean selected = headerCheckBox.isSelected();
-            for (int i = 0; i < tableModel.getRowCount(); i++) {
-                tableModel.setValueAt(selected, i, 0);
+        headerCheckBox.addActionListener(e -> tableModel.setAllChecked(headerCheckBox.isSelected()));
+
+        proxyTable.getColumnModel().getColumn(COL_SELECT).setHeaderRenderer((table, value, isSelected, hasFocus, row, column) -> headerCheckBox);
+        // 表头渲染组件收不到点击，由表头转发
+        proxyTable.getTableHeader().addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override
+            public void mouseClicked(java.awt.event.MouseEvent e) {
+                int column = proxyTable.columnAtPoint(e.getPoint());
+                if (column >= 0 && proxyTable.convertColumnIndexToModel(column) == COL_SELECT) {
+                    headerCheckBox.doClick();
+                    proxyTable.getTableHeader().repaint();
+                }
             }
         });
 
-        proxyTable.getColumnModel().getColumn(0).setHeaderRenderer((table, value, isSelected, hasFocus, row, column) -> headerCheckBox);
+        // 按描述、远程地址或端口搜索，输入时立即过滤
+        searchField = new JTextField();
+        searchField.setFont(new Font("微软雅黑", Font.PLAIN, 14));
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applySearch();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applySearch();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applySearch();
+            }
+        });
 
         // 初始化日志区域，解决中文乱码问题
         logArea = new JTextArea();
@@ -338,8 +497,13 @@ public class TCPProxyManagerGUI extends JFrame {
         logArea.setFont(new Font("Microsoft YaHei", Font.PLAIN, 12));
         logArea.setBackground(new Color(245, 245, 245));
         logScrollPane = new JScrollPane(logArea);
-        logScrollPane.setPreferredSize(new Dimension(0, 150));
-        logScrollPane.setBorder(BorderFactory.createTitledBorder("日志输出"));
+
+        // 会话查看器跟随表格中选中的映射
+        proxyTable.getSelectionModel().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                updateSessionInspector();
+            }
+        });
 
         startButton = new JButton("启动代理");
         startButton.addActionListener(this::startSelectedProxies);
@@ -373,6 +537,51 @@ public class TCPProxyManagerGUI extends JFrame {
         renameEnvironmentButton.setFont(buttonFont);
     }
 
+    private void applySearch() {
+        tableModel.setQuery(searchField.getText());
+        tableSorter.allRowsChanged();
+    }
+
+    private void populateAdvancedMenu(JMenu advancedMenu) {
+        JMenuItem mappingOptionsItem = new JMenuItem("映射高级选项...");
+        mappingOptionsItem.addActionListener(this::editMappingOptions);
+        advancedMenu.add(mappingOptionsItem);
+        JMenuItem environmentRulesItem = new JMenuItem("环境访问控制规则...");
+        environmentRulesItem.addActionListener(this::editEnvironmentRules);
+        advancedMenu.add(environmentRulesItem);
+        JMenuItem ruleHitsItem = new JMenuItem("访问控制命中统计");
+        ruleHitsItem.addActionListener(e -> showAccessRuleHits());
+        advancedMenu.add(ruleHitsItem);
+        JMenuItem connectMetricsItem = new JMenuItem("后端连接统计");
+        connectMetricsItem.addActionListener(e -> showConnectMetrics());
+        advancedMenu.add(connectMetricsItem);
+        advancedMenu.addSeparator();
+        JMenuItem jfrToggleItem = new JMenuItem("开始 JFR 记录");
+        jfrToggleItem.addActionListener(e -> toggleFlightRecording(jfrToggleItem));
+        advancedMenu.add(jfrToggleItem);
+        JMenuItem jfrDumpItem = new JMenuItem("导出 JFR 快照");
+        jfrDumpItem.addActionListener(e -> dumpFlightRecording());
+        advancedMenu.add(jfrDumpItem);
+    }
+
+    private static void populateOnFirstOpen(JMenu menu, Consumer<JMenu> populate) {
+        menu.addMenuListener(new javax.swing.event.MenuListener() {
+            @Override
+            public void menuSelected(javax.swing.event.MenuEvent e) {
+                menu.removeMenuListener(this);
+                populate.accept(menu);
+            }
+
+            @Override
+            public void menuDeselected(javax.swing.event.MenuEvent e) {
+            }
+
+            @Override
+            public void menuCanceled(javax.swing.event.MenuEvent e) {
+            }
+        });
+    }
+
     private void addMapping(ActionEvent e) {
         if (currentEnvironment == null) {
             logError("请先选择一个环境");
@@ -380,14 +589,7 @@ public class TCPProxyManagerGUI extends JFrame {
         }
 
         // 添加新行到表格
-        tableModel.addRow(new Object[]{
-                Boolean.FALSE,
-                "未命名",
-                "",
-                "",
-                "",
-                ProxyState.INIT
-        });
+        tableModel.addMapping("未命名");
 
         logMessage("已添加新的映射条目，请编辑后保存");
     }
@@ -422,11 +624,7 @@ public class TCPProxyManagerGUI extends JFrame {
                 }
             }
 
-            // 从后往前删除，避免索引变化影响
-            Collections.sort(selectedRows, Collections.reverseOrder());
-            for (int rowIndex : selectedRows) {
-                tableModel.removeRow(rowIndex);
-            }
+            tableModel.removeRows(selectedRows);
 
             logMessage("已删除 " + selectedRows.size() + " 个映射，请保存环境配置");
         }
@@ -470,14 +668,21 @@ public class TCPProxyManagerGUI extends JFrame {
             List<ProxyConfig> configs = environments.get(oldName);
             environments.remove(oldName);
             environments.put(newName, configs);
+            EnvironmentOptions envOptions = environmentOptions.remove(oldName);
+            if (envOptions != null) {
+                environmentOptions.put(newName, envOptions);
+            }
+            Map<ProxyConfig, ManagedProxy> envProxies = environmentProxies.remove(oldName);
+            if (envProxies != null) {
+                for (ManagedProxy proxy : envProxies.values()) {
+                    proxy.setEnvironment(newName);
+                }
+                environmentProxies.put(newName, envProxies);
+            }
 
-            // 立即保存到配置文件
+            // 内存中的配置已经是重命名后的，直接保存到配置文件
             saveConfig();
 
-            // 重新加载配置
-            environments.clear();
-            loadConfig();
-
             // 更新菜单
             JMenuBar menuBar = getJMenuBar();
             if (menuBar != null) {
@@ -492,6 +697,244 @@ public class TCPProxyManagerGUI extends JFrame {
         }
     }
 
+    private EnvironmentOptions currentEnvironmentOptions() {
+        return environmentOptions.getOrDefault(currentEnvironment, EnvironmentOptions.DEFAULT);
+    }
+
+    private void editMappingOptions(ActionEvent e) {
+        int viewRow = proxyTable.getSelectedRow();
+        if (viewRow < 0) {
+            logError("请先在表格中选中一个映射");
+            return;
+        }
+        int rowIndex = proxyTable.convertRowIndexToModel(viewRow);
+        ProxyOptions oldOptions = (ProxyOptions) tableModel.getValueAt(rowIndex, COL_OPTIONS);
+
+        JSONObject json = new JSONObject();
+        oldOptions.writeTo(json);
+        JTextArea editor = new JTextArea(JSON.toJSONString(json, JSONWriter.Feature.PrettyFormat), 12, 40);
+        editor.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        JPanel panel = new JPanel(new BorderLayout(0, 5));
+        panel.add(new JLabel("acceptors: 监听线程数；connectRetries: 后端连接重试轮数；allow/deny: 客户端 CIDR 列表；"
+                + "socksUser/socksPassword: SOCKS5 认证；tunnel/tunnelToken/tunnelLinks: 经中继的隧道；"
+                + "capture/captureSegments: 抓包到 capture 目录；"
+                + "tlsKeystore/tlsKeystorePassword: 对客户端启用 TLS；tlsBackend/tlsTruststore/tlsTruststorePassword: 以 TLS 连接后端；"
+                + "priority: 转发优先级 interactive/normal/bulk；"
+                + "highWatermark/lowWatermark: 积压暂停和恢复读取的字节数；"
+                + "slowConsumerTimeout/disconnectSlowConsumers: 慢消费者判定秒数及是否断开"),
+                BorderLayout.NORTH);
+        panel.add(new JScrollPane(editor), BorderLayout.CENTER);
+
+        int result = JOptionPane.showConfirmDialog(this, panel, "映射高级选项",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        ProxyOptions newOptions;
+        try {
+            String text = editor.getText().trim();
+            newOptions = ConfigBinder.readOptions(text.isEmpty() ? "{}" : text);
+        } catch (Exception ex) {
+            logError("高级选项格式错误: " + ex.getMessage());
+            return;
+        }
+        if (newOptions.equals(oldOptions)) {
+            return;
+        }
+
+        ProxyConfig oldConfig = getProxyConfigFromRow(rowIndex);
+        tableModel.setValueAt(newOptions, rowIndex, COL_OPTIONS);
+        ProxyConfig newConfig = getProxyConfigFromRow(rowIndex);
+
+        // 运行中的代理立即应用新的访问控制规则，无需重启监听
+        if (oldConfig != null && newConfig != null) {
+            ManagedProxy proxy = activeProxies.remove(oldConfig);
+            if (proxy != null) {
+                proxy.applyConfig(newConfig, currentEnvironmentOptions());
+                activeProxies.put(newConfig, proxy);
+                replaceInCurrentEnvironment(oldConfig, newConfig);
+                if (proxy.getState() == ProxyState.RUNNING
+                        && (newOptions.getAcceptors() != oldOptions.getAcceptors()
+                        || newOptions.getConnectRetries() != oldOptions.getConnectRetries()
+                        || !newOptions.getTunnel().equals(oldOptions.getTunnel())
+                        || !newOptions.getTunnelToken().equals(oldOptions.getTunnelToken())
+                        || newOptions.getTunnelLinks() != oldOptions.getTunnelLinks()
+                        || newOptions.isCapture() != oldOptions.isCapture()
+                        || newOptions.getCaptureSegments() != oldOptions.getCaptureSegments()
+                        || !newOptions.getTls().equals(oldOptions.getTls())
+                        || newOptions.getPriority() != oldOptions.getPriority()
+                        || !newOptions.getFlowControl().equals(oldOptions.getFlowControl()))) {
+                    logMessage("acceptor 数量、连接重试轮数、隧道、抓包、TLS、优先级和流量控制设置的修改需要重启代理后生效");
+                }
+            }
+        }
+        logMessage("映射高级选项已更新，请保存环境配置");
+    }
+
+    private void editEnvironmentRules(ActionEvent e) {
+        if (currentEnvironment == null) {
+            logError("请先选择一个环境");
+            return;
+        }
+
+        EnvironmentOptions oldOptions = currentEnvironmentOptions();
+        JTextArea allowArea = new JTextArea(String.join("\n", oldOptions.getAllow()), 10, 20);
+        JTextArea denyArea = new JTextArea(String.join("\n", oldOptions.getDeny()), 10, 20);
+        JPanel allowPanel = new JPanel(new BorderLayout());
+        allowPanel.add(new JLabel("允许（每行一个 CIDR）"), BorderLayout.NORTH);
+        allowPanel.add(new JScrollPane(allowArea), BorderLayout.CENTER);
+        JPanel denyPanel = new JPanel(new BorderLayout());
+        denyPanel.add(new JLabel("拒绝（每行一个 CIDR）"), BorderLayout.NORTH);
+        denyPanel.add(new JScrollPane(denyArea), BorderLayout.CENTER);
+        JTextArea whitelistArea = new JTextArea(String.join("\n", oldOptions.getSocksWhitelist()), 10, 20);
+        JPanel whitelistPanel = new JPanel(new BorderLayout());
+        whitelistPanel.add(new JLabel("SOCKS5 目标白名单（如 *.internal:443）"), BorderLayout.NORTH);
+        whitelistPanel.add(new JScrollPane(whitelistArea), BorderLayout.CENTER);
+        JPanel panel = new JPanel(new GridLayout(1, 3, 10, 0));
+        panel.add(allowPanel);
+        panel.add(denyPanel);
+        panel.add(whitelistPanel);
+
+        int result = JOptionPane.showConfirmDialog(this, panel, "环境访问控制规则 - " + currentEnvironment,
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        EnvironmentOptions newOptions;
+        try {
+            newOptions = new EnvironmentOptions(parseRuleLines(allowArea.getText(), AccessRules::validate),
+                    parseRuleLines(denyArea.getText(), AccessRules::validate),
+                    parseRuleLines(whitelistArea.getText(), DestinationWhitelist::validate));
+        } catch (IllegalArgumentException ex) {
+            logError("访问控制规则格式错误: " + ex.getMessage());
+            return;
+        }
+
+        environmentOptions.put(currentEnvironment, newOptions);
+        saveConfig();
+
+        // 运行中的代理立即应用新规则
+        for (Map.Entry<ProxyConfig, ManagedProxy> entry : activeProxies.entrySet()) {
+            entry.getValue().applyConfig(entry.getKey(), newOptions);
+        }
+        logMessage("环境 '" + currentEnvironment + "' 的访问控制规则已更新");
+    }
+
+    // 每行一条规则，格式错误时 validator 抛出 IllegalArgumentException
+    private static List<String> parseRuleLines(String text, Consumer<String> validator) {
+        List<String> rules = new ArrayList<>();
+        for (String line : text.split("\\R")) {
+            String rule = line.trim();
+            if (!rule.isEmpty()) {
+                validator.accept(rule);
+                rules.add(rule);
+            }
+        }
+        return Collections.unmodifiableList(rules);
+    }
+
+    private void showAccessRuleHits() {
+        boolean any = false;
+        for (int i = 0; i < tableModel.getRowCount(); i++) {
+            ProxyConfig config = getProxyConfigFromRow(i);
+            ManagedProxy proxy = config != null ? activeProxies.get(config) : null;
+            if (proxy == null) {
+                continue;
+            }
+            AccessRules rules = proxy.getAccessRules();
+            if (rules.isEmpty()) {
+                continue;
+            }
+            any = true;
+            StringBuilder sb = new StringBuilder("访问控制 [" + config.getDescription() + "]");
+            for (AccessRules.Rule rule : rules.getRules()) {
+                sb.append(String.format("%n    %s %s（%s）命中 %d 次", rule.isAllow() ? "允许" : "拒绝",
+                        rule.getCidr(), rule.isEnvironmentLevel() ? "环境" : "映射", rule.getHits()));
+            }
+            sb.append(String.format("%n    未匹配放行 %d 次，未匹配拒绝 %d 次",
+                    rules.getDefaultAllowed(), rules.getDefaultDenied()));
+            logMessage(sb.toString());
+        }
+        if (!any) {
+            logMessage("当前环境没有配置访问控制规则");
+        }
+    }
+
+    private void showConnectMetrics() {
+        boolean any = false;
+        for (int i = 0; i < tableModel.getRowCount(); i++) {
+            ProxyConfig config = getProxyConfigFromRow(i);
+            ManagedProxy proxy = config != null ? activeProxies.get(config) : null;
+            ConnectMetrics metrics = proxy != null ? proxy.getConnectMetrics() : null;
+            if (metrics == null || (metrics.getAttempts() == 0 && metrics.getRejected() == 0
+                    && metrics.getTlsFailures(false) == 0)) {
+                continue;
+            }
+            any = true;
+            StringBuilder sb = new StringBuilder(String.format(
+                    "后端连接 [%s] 尝试 %d 次，失败 %d 次，重试 %d 次，成功 %d 次（备选地址胜出 %d 次），熔断拒绝 %d 次",
+                    config.getDescription(), metrics.getAttempts(), metrics.getFailures(), metrics.getRetries(),
+                    metrics.getSuccesses(), metrics.getFallbackWins(), metrics.getRejected()));
+            for (Map.Entry<String, Long> entry : metrics.getWinsByAddress().entrySet()) {
+                sb.append(String.format("%n    %s 胜出 %d 次", entry.getKey(), entry.getValue()));
+            }
+            for (boolean backend : new boolean[]{false, true}) {
+                if (metrics.getTlsHandshakes(backend) > 0 || metrics.getTlsFailures(backend) > 0) {
+                    sb.append(String.format("%n    %s TLS 握手 %d 次（复用会话 %d 次），平均 %.1f 毫秒，失败 %d 次",
+                            backend ? "后端" : "客户端", metrics.getTlsHandshakes(backend),
+                            metrics.getTlsResumed(backend), metrics.getTlsAverageMillis(backend),
+                            metrics.getTlsFailures(backend)));
+                }
+            }
+            logMessage(sb.toString());
+        }
+        if (!any) {
+            logMessage("当前环境没有后端连接记录");
+        }
+
+        // 转发调度由所有映射共用，按优先级统计
+        RelayEngine engine = RelayEngine.current();
+        if (engine != null) {
+            StringBuilder sb = new StringBuilder("转发调度排队时间（所有环境）");
+            for (PriorityClass priority : PriorityClass.values()) {
+                sb.append(String.format("%n    %s: 处理 %d 次，平均 %.3f 毫秒，最大 %.1f 毫秒", priority.getLabel(),
+                        engine.getServed(priority), engine.getAverageQueueMillis(priority),
+                        engine.getMaxQueueMillis(priority)));
+            }
+            logMessage(sb.toString());
+        }
+    }
+
+    private void toggleFlightRecording(JMenuItem toggleItem) {
+        try {
+            if (flightRecorder.isRecording()) {
+                Path file = flightRecorder.stop();
+                toggleItem.setText("开始 JFR 记录");
+                logMessage("JFR 记录已停止，已导出到: " + file);
+            } else {
+                flightRecorder.start();
+                toggleItem.setText("停止 JFR 记录");
+                logMessage("JFR 持续记录已开始");
+            }
+        } catch (Exception ex) {
+            logError("JFR 记录操作失败: " + ex.getMessage());
+        }
+    }
+
+    private void dumpFlightRecording() {
+        if (!flightRecorder.isRecording()) {
+            logError("JFR 记录未启动");
+            return;
+        }
+        try {
+            logMessage("JFR 快照已导出到: " + flightRecorder.dump());
+        } catch (IOException ex) {
+            logError("JFR 快照导出失败: " + ex.getMessage());
+        }
+    }
+
     private void showAbout(ActionEvent e) {
         String aboutMessage = "author: dzz\ncreated at 25-6\nversion: " + VERSION;
         JOptionPane.showMessageDialog(this, aboutMessage, "关于", JOptionPane.INFORMATION_MESSAGE);
@@ -548,6 +991,7 @@ public class TCPProxyManagerGUI extends JFrame {
 
             // 删除环境
             environments.remove(currentEnvironment);
+            environmentOptions.remove(currentEnvironment);
             saveConfig();
 
             // 更新菜单
@@ -560,8 +1004,9 @@ public class TCPProxyManagerGUI extends JFrame {
             // 清空当前显示
             currentEnvironment = null;
             titleLabel.setText("选择环境");
-            tableModel.setRowCount(0);
-            activeProxies.clear();
+            tableModel.clear();
+            environmentProxies.remove(deletedEnv);
+            activeProxies = new HashMap<>();
 
             logMessage("成功删除环境: " + deletedEnv);
         }
@@ -575,8 +1020,13 @@ public class TCPProxyManagerGUI extends JFrame {
         titlePanel.add(titleLabel, BorderLayout.CENTER);
         titlePanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 15, 0));
 
-        JScrollPane tableScrollPane = new JScrollPane(proxyTable);
-        tableScrollPane.setBorder(BorderFactory.createTitledBorder("代理状态"));
+        JPanel tablePanel = new JPanel(new BorderLayout(0, 5));
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 0));
+        searchPanel.add(new JLabel("搜索"), BorderLayout.WEST);
+        searchPanel.add(searchField, BorderLayout.CENTER);
+        tablePanel.add(searchPanel, BorderLayout.NORTH);
+        tablePanel.add(new JScrollPane(proxyTable), BorderLayout.CENTER);
+        tablePanel.setBorder(BorderFactory.createTitledBorder("代理状态"));
 
         // 修改按钮面板，增加到7个按钮
         JPanel buttonPanel = new JPanel(new GridLayout(1, 7, 10, 0));
@@ -588,10 +1038,19 @@ public class TCPProxyManagerGUI extends JFrame {
         buttonPanel.add(deleteMappingButton);
         buttonPanel.add(renameEnvironmentButton);
 
+        // 日志和会话查看器共用底部区域
+        JTabbedPane bottomTabs = new JTabbedPane();
+        bottomTabs.addTab("日志输出", logScrollPane);
+        bottomTabs.addTab("会话", new JPanel());
+        bottomTabs.addTab("运行中映射", new JPanel());
+        bottomTabs.addTab("流量图表", new JPanel());
+        bottomTabs.addChangeListener(e -> createSelectedTab(bottomTabs));
+        bottomTabs.setPreferredSize(new Dimension(0, 200));
+
         // 中间面板包含表格和日志
         JPanel centerPanel = new JPanel(new BorderLayout(0, 10));
-        centerPanel.add(tableScrollPane, BorderLayout.CENTER);
-        centerPanel.add(logScrollPane, BorderLayout.SOUTH);
+        centerPanel.add(tablePanel, BorderLayout.CENTER);
+        centerPanel.add(bottomTabs, BorderLayout.SOUTH);
 
         contentPane.add(titlePanel, BorderLayout.NORTH);
         contentPane.add(centerPanel, BorderLayout.CENTER);
@@ -600,6 +1059,47 @@ public class TCPProxyManagerGUI extends JFrame {
         setContentPane(contentPane);
     }
 
+    // 会话、运行中映射和流量图表各带刷新定时器，第一次选中标签页时才创建
+    private void createSelectedTab(JTabbedPane tabs) {
+        int index = tabs.getSelectedIndex();
+        if (index == TAB_SESSIONS && sessionInspector == null) {
+            sessionInspector = new SessionInspectorPanel();
+            tabs.setComponentAt(index, sessionInspector);
+            updateSessionInspector();
+        } else if (index == TAB_RUNNING && runningMappingsPanel == null) {
+            runningMappingsPanel = new RunningMappingsPanel(this::getAllProxies);
+            tabs.setComponentAt(index, runningMappingsPanel);
+        } else if (index == TAB_METRICS && metricsChartPanel == null) {
+            metricsChartPanel = new MetricsChartPanel();
+            tabs.setComponentAt(index, metricsChartPanel);
+            updateSessionInspector();
+        }
+    }
+
+    private void updateSessionInspector() {
+        int viewRow = proxyTable.getSelectedRow();
+        ProxyConfig config = viewRow >= 0 ? getProxyConfigFromRow(proxyTable.convertRowIndexToModel(viewRow)) : null;
+        if (metricsChartPanel != null) {
+            if (config == null) {
+                metricsChartPanel.setSource(null, null);
+            } else {
+                String metricsKey = MetricsRecorder.keyOf(currentEnvironment, config);
+                metricsChartPanel.setSource(config.getDescription(),
+                        () -> metricsRecorder.storeFor(metricsKey, false));
+            }
+        }
+        if (sessionInspector != null) {
+            if (config == null) {
+                sessionInspector.setSource(null, null);
+            } else {
+                sessionInspector.setSource(config.getDescription(), () -> {
+                    ManagedProxy proxy = activeProxies.get(config);
+                    return proxy != null ? proxy.getSessions() : Collections.emptyList();
+                });
+            }
+        }
+    }
+
     private void logMessage(String message) {
         SwingUtilities.invokeLater(() -> {
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
@@ -617,45 +1117,51 @@ public class TCPProxyManagerGUI extends JFrame {
     }
 
     private void switchEnvironment(String environment) {
-        // 静默停止所有代理，不显示弹窗
-        stopAllProxiesQuietly();
-        activeProxies.clear();
-
         currentEnvironment = environment;
         titleLabel.setText(environment);
-
-        tableModel.setRowCount(0);
+        activeProxies = environmentProxies.computeIfAbsent(environment, k -> new HashMap<>());
 
         List<ProxyConfig> configs = environments.get(environment);
-        for (ProxyConfig config : configs) {
-            ManagedProxy proxy = new ManagedProxy(config);
-            activeProxies.put(config, proxy);
 
-            tableModel.addRow(new Object[]{
-                    Boolean.FALSE,
-                    config.getDescription(),
-                    config.getRemoteHost(),
-                    config.getRemotePort(),
-                    config.getLocalPort(),
-                    proxy.getState()
-            });
+        // 配置中已不存在的映射（删除或修改后保存）停止并移除
+        Set<ProxyConfig> current = new HashSet<>(configs);
+        Iterator<Map.Entry<ProxyConfig, ManagedProxy>> it = activeProxies.entrySet().iterator();
+        while (it.hasNext()) {
+            ManagedProxy proxy = it.next().getValue();
+            if (!current.contains(proxy.getConfig())) {
+                proxy.stop();
+                it.remove();
+            }
+        }
+
+        for (ProxyConfig config : configs) {
+            ManagedProxy proxy = activeProxies.get(config);
+            if (proxy == null) {
+                proxy = new ManagedProxy(config, currentEnvironmentOptions());
+                proxy.setEnvironment(environment);
+                activeProxies.put(config, proxy);
+            }
         }
+        tableModel.setMappings(configs, activeProxies);
 
         logMessage("已切换到环境: " + environment);
     }
 
+    // 静默停止所有环境的代理，不显示弹窗
     private void stopAllProxiesQuietly() {
-        for (int i = 0; i < tableModel.getRowCount(); i++) {
-            ProxyConfig config = getProxyConfigFromRow(i);
-            if (config != null) {
-                ManagedProxy proxy = activeProxies.get(config);
-                if (proxy != null) {
-                    proxy.stop();
-                }
-            }
+        for (ManagedProxy proxy : getAllProxies()) {
+            proxy.stop();
         }
     }
 
+    private List<ManagedProxy> getAllProxies() {
+        List<ManagedProxy> proxies = new ArrayList<>();
+        for (Map<ProxyConfig, ManagedProxy> envProxies : environmentProxies.values()) {
+            proxies.addAll(envProxies.values());
+        }
+        return proxies;
+    }
+
     private void startSelectedProxies(ActionEvent e) {
         List<Integer> selectedRows = getCheckedRows();
         if (selectedRows.isEmpty()) {
@@ -689,14 +1195,7 @@ public class TCPProxyManagerGUI extends JFrame {
     }
 
     private List<Integer> getCheckedRows() {
-        List<Integer> checkedRows = new ArrayList<>();
-        for (int i = 0; i < tableModel.getRowCount(); i++) {
-            Boolean checked = (Boolean) tableModel.getValueAt(i, 0);
-            if (checked != null && checked) {
-                checkedRows.add(i);
-            }
-        }
-        return checkedRows;
+        return tableModel.getCheckedRows();
     }
 
     private void startAllProxies() {
@@ -720,29 +1219,7 @@ public class TCPProxyManagerGUI extends JFrame {
     }
 
     private ProxyConfig getProxyConfigFromRow(int rowIndex) {
-        if (rowIndex >= 0 && rowIndex < tableModel.getRowCount()) {
-            String desc = (String) tableModel.getValueAt(rowIndex, 1);
-            String remoteHost = (String) tableModel.getValueAt(rowIndex, 2);
-            Object remotePortObj = tableModel.getValueAt(rowIndex, 3);
-            Object localPortObj = tableModel.getValueAt(rowIndex, 4);
-
-            // 处理可能的空值和字符串
-            if (desc == null || remoteHost == null || remotePortObj == null || localPortObj == null) {
-                return null;
-            }
-
-            try {
-                int remotePort = remotePortObj instanceof Integer ? (Integer) remotePortObj :
-                        Integer.parseInt(remotePortObj.toString());
-                int localPort = localPortObj instanceof Integer ? (Integer) localPortObj :
-                        Integer.parseInt(localPortObj.toString());
-
-                return new ProxyConfig(localPort, remoteHost, remotePort, desc);
-            } catch (NumberFormatException e) {
-                return null;
-            }
-        }
-        return null;
+        return tableModel.getConfig(rowIndex);
     }
 
     private void startProxy(ProxyConfig config, int rowIndex) {
@@ -753,16 +1230,30 @@ public class TCPProxyManagerGUI extends JFrame {
 
         ManagedProxy proxy = activeProxies.get(config);
         if (proxy == null) {
-            proxy = new ManagedProxy(config);
+            proxy = new ManagedProxy(config, currentEnvironmentOptions());
+            proxy.setEnvironment(currentEnvironment);
             activeProxies.put(config, proxy);
         }
 
         if (proxy.getState() != ProxyState.RUNNING) {
+            // 绑定前检查所有环境中已占用的本地端口
+            PortClaim claim = new PortClaim(proxy, config.getProtocol(), config.getLocalPort(), config.getLocalPortEnd());
+            PortClaim conflict = portRegistry.claim(config.getProtocol(), config.getLocalPort(),
+                    config.getLocalPortEnd(), claim);
+            if (conflict != null) {
+                logError("启动代理失败 [" + config.getDescription() + "]: 本地端口已被环境 '" +
+                        conflict.proxy.getEnvironment() + "' 的映射 '" +
+                        conflict.proxy.getConfig().getDescription() + "' 占用");
+                return;
+            }
+
+            portClaims.put(proxy, claim);
+
             proxy.clear();
             final ManagedProxy finalProxy = proxy;  // 创建final变量供lambda使用
             executor.execute(() -> {
                 try {
-                    logMessage("正在启动代理: " + config.getDescription() + " (本地端口:" + config.getLocalPort() + ")");
+                    logMessage("正在启动代理: " + config.getDescription() + " (本地端口:" + config.getLocalPorts() + ")");
                     finalProxy.start();
                 } catch (Exception e) {
                     if (finalProxy.isManualStop()) {
@@ -770,12 +1261,87 @@ public class TCPProxyManagerGUI extends JFrame {
                     } else {
                         logError("启动代理失败 [" + config.getDescription() + "]: " + e.getMessage());
                     }
+                } finally {
+                    portClaims.remove(finalProxy, claim);
+                    portRegistry.release(claim.protocol, claim.start, claim.end, claim);
                 }
             });
         }
     }
 
 
+    /**
+     * 运行中的行被编辑后在线修改代理，失败时返回 false，由调用方恢复原值
+     */
+    private boolean reconfigureRunningRow(int rowIndex, ProxyConfig oldConfig) {
+        ManagedProxy proxy = oldConfig != null ? activeProxies.get(oldConfig) : null;
+        if (proxy == null) {
+            return true;
+        }
+        ProxyConfig newConfig = getProxyConfigFromRow(rowIndex);
+        if (newConfig == null) {
+            logError("第" + (rowIndex + 1) + "行配置无效，已恢复原值");
+            return false;
+        }
+
+        int oldStart = oldConfig.getLocalPort();
+        int oldEnd = oldConfig.getLocalPortEnd();
+        int newStart = newConfig.getLocalPort();
+        int newEnd = newConfig.getLocalPortEnd();
+        boolean portsChanged = oldStart != newStart || oldEnd != newEnd;
+        PortClaim claim = portClaims.get(proxy);
+        if (portsChanged && claim != null) {
+            PortClaim conflict = portRegistry.claim(claim.protocol, newStart, newEnd, claim);
+            if (conflict != null) {
+                logError("在线修改失败 [" + oldConfig.getDescription() + "]: 本地端口已被环境 '" +
+                        conflict.proxy.getEnvironment() + "' 的映射 '" +
+                        conflict.proxy.getConfig().getDescription() + "' 占用");
+                return false;
+            }
+        }
+
+        try {
+            proxy.reconfigure(newConfig);
+        } catch (IOException ex) {
+            if (portsChanged && claim != null) {
+                releasePorts(claim, newStart, newEnd, oldStart, oldEnd);
+            }
+            logError("在线修改失败 [" + oldConfig.getDescription() + "]: " + ex.getMessage());
+            return false;
+        }
+        if (portsChanged && claim != null) {
+            releasePorts(claim, oldStart, oldEnd, newStart, newEnd);
+            claim.start = newStart;
+            claim.end = newEnd;
+        }
+
+        activeProxies.remove(oldConfig);
+        activeProxies.put(newConfig, proxy);
+        replaceInCurrentEnvironment(oldConfig, newConfig);
+        updateSessionInspector();
+        logMessage("映射已在线修改: " + newConfig.getDescription() + " (本地端口:" + newConfig.getLocalPorts() +
+                " -> " + newConfig.getRemoteHost() + ":" + newConfig.getRemotePorts() + ")，请保存环境配置");
+        return true;
+    }
+
+    // 运行中代理的配置变化同步到内存中的环境，切换环境后再切回时不会被当作已删除的映射停止
+    private void replaceInCurrentEnvironment(ProxyConfig oldConfig, ProxyConfig newConfig) {
+        List<ProxyConfig> configs = environments.get(currentEnvironment);
+        int index = configs != null ? configs.indexOf(oldConfig) : -1;
+        if (index >= 0) {
+            configs.set(index, newConfig);
+        }
+    }
+
+    // 释放 start..end 中不在 keepStart..keepEnd 内的端口
+    private void releasePorts(PortClaim claim, int start, int end, int keepStart, int keepEnd) {
+        for (int port = start; port <= end; port++) {
+            if (port < keepStart || port > keepEnd) {
+                portRegistry.release(claim.protocol, port, port, claim);
+            }
+        }
+    }
+
     private void stopProxy(ProxyConfig config, int rowIndex) {
         if (config == null) {
             return;
@@ -795,6 +1361,21 @@ public class TCPProxyManagerGUI extends JFrame {
         }
         stopAllProxiesQuietly();
         executor.shutdown();
+        if (sessionInspector != null) {
+            sessionInspector.dispose();
+        }
+        if (runningMappingsPanel != null) {
+            runningMappingsPanel.dispose();
+        }
+        if (metricsChartPanel != null) {
+            metricsChartPanel.dispose();
+        }
+        metricsRecorder.close();
+        try {
+            flightRecorder.stop();
+        } catch (IOException e) {
+            // 退出时忽略导出失败
+        }
         super.dispose();
     }
 
@@ -802,6 +1383,28 @@ public class TCPProxyManagerGUI extends JFrame {
         // 设置系统编码为UTF-8
         System.setProperty("file.encoding", "UTF-8");
 
+        if (args.length > 0 && "--headless".equals(args[0])) {
+            HeadlessRunner.main(args);
+            return;
+        }
+        if (args.length > 0 && "--agent".equals(args[0])) {
+            TunnelAgent.main(args);
+            return;
+        }
+        if (args.length > 0 && "--replay".equals(args[0])) {
+            CaptureReplay.main(args);
+            return;
+        }
+        if (args.length > 0 && "--startup-benchmark".equals(args[0])) {
+            try {
+                StartupBenchmark.main(args);
+            } catch (Exception e) {
+                System.err.println("启动基准测试失败: " + e);
+                System.exit(1);
+            }
+            return;
+        }
+
         SwingUtilities.invokeLater(() -> {
             TCPProxyManagerGUI gui = new TCPProxyManagerGUI();
             gui.setVisible(true);
@@ -811,21 +1414,55 @@ public class TCPProxyManagerGUI extends JFrame {
     // 配置类
     static class ProxyConfig {
         private final int localPort;
+        // 端口区间映射的结束端口，单端口映射时等于 localPort
+        private final int localPortEnd;
         private final String remoteHost;
         private final int remotePort;
         private final String description;
+        private final ProxyProtocol protocol;
+        private final ProxyOptions options;
 
         public ProxyConfig(int localPort, String remoteHost, int remotePort, String description) {
+            this(localPort, localPort, remoteHost, remotePort, description, ProxyProtocol.TCP, ProxyOptions.DEFAULT);
+        }
+
+        public ProxyConfig(int localPort, int localPortEnd, String remoteHost, int remotePort, String description,
+                           ProxyProtocol protocol, ProxyOptions options) {
             this.localPort = localPort;
+            this.localPortEnd = localPortEnd;
             this.remoteHost = remoteHost;
             this.remotePort = remotePort;
             this.description = description;
+            this.protocol = protocol;
+            this.options = options != null ? options : ProxyOptions.DEFAULT;
         }
 
         public int getLocalPort() { return localPort; }
+        public int getLocalPortEnd() { return localPortEnd; }
         public String getRemoteHost() { return remoteHost; }
         public int getRemotePort() { return remotePort; }
         public String getDescription() { return description; }
+        public ProxyProtocol getProtocol() { return protocol; }
+        public ProxyOptions getOptions() { return options; }
+        public PriorityClass getPriority() { return options.getPriority(); }
+
+        public boolean isPortRange() {
+            return localPortEnd != localPort;
+        }
+
+        // SOCKS5 监听没有固定的远程地址和端口
+        public boolean isDynamic() {
+            return protocol == ProxyProtocol.SOCKS5;
+        }
+
+        public PortRange getLocalPorts() {
+            return new PortRange(localPort, localPortEnd);
+        }
+
+        // 区间映射时本地端口按相同偏移映射到远程端口
+        public PortRange getRemotePorts() {
+            return new PortRange(remotePort, remotePort + (localPortEnd - localPort));
+        }
 
         @Override
         public boolean equals(Object obj) {
@@ -833,29 +1470,116 @@ public class TCPProxyManagerGUI extends JFrame {
             if (obj == null || getClass() != obj.getClass()) return false;
             ProxyConfig that = (ProxyConfig) obj;
             return localPort == that.localPort &&
+                    localPortEnd == that.localPortEnd &&
                     remotePort == that.remotePort &&
+                    protocol == that.protocol &&
+                    options.equals(that.options) &&
                     Objects.equals(remoteHost, that.remoteHost) &&
                     Objects.equals(description, that.description);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(localPort, remoteHost, remotePort, description);
+            return Objects.hash(localPort, localPortEnd, remoteHost, remotePort, description, protocol, options);
         }
     }
 
     // 带有状态管理的代理类
     static class ManagedProxy {
-        private final ProxyConfig config;
-        private SimpleTCPProxy proxy;
+        private ProxyConfig config;
+        private ForwardingProxy proxy;
+        // 所属环境名，环境重命名时更新
+        private volatile String environment = "";
+
+        public ManagedProxy(ProxyConfig config, EnvironmentOptions environmentOptions) {
+            this.config = config;
+            if (config.isDynamic()) {
+                this.proxy = SimpleTCPProxy.socks5(config.getLocalPort(), config.getLocalPortEnd(), config.getOptions());
+            } else if (config.getProtocol() == ProxyProtocol.UDP) {
+                this.proxy = new SimpleUDPProxy(
+                        config.getLocalPort(),
+                        config.getLocalPortEnd(),
+                        config.getRemoteHost(),
+                        config.getRemotePort()
+                );
+            } else {
+                this.proxy = new SimpleTCPProxy(
+                        config.getLocalPort(),
+                        config.getLocalPortEnd(),
+                        config.getRemoteHost(),
+                        config.getRemotePort(),
+                        config.getOptions()
+                );
+            }
+            applyEnvironment(environmentOptions);
+        }
+
+        // 应用修改后的选项，访问控制规则和目标白名单对运行中的代理立即生效
+        public void applyConfig(ProxyConfig config, EnvironmentOptions environmentOptions) {
+            this.config = config;
+            applyEnvironment(environmentOptions);
+        }
+
+        private void applyEnvironment(EnvironmentOptions environmentOptions) {
+            this.proxy.setAccessRules(environmentOptions.buildAccessRules(config.getOptions()));
+            if (config.isDynamic()) {
+                ((SimpleTCPProxy) proxy).setDestinationWhitelist(environmentOptions.buildDestinationWhitelist());
+            }
+        }
+
+        // 是否支持在运行中修改端口和后端
+        public boolean supportsReconfigure() {
+            return config.getProtocol() == ProxyProtocol.TCP;
+        }
 
-        public ManagedProxy(ProxyConfig config) {
+        /**
+         * 在线修改端口和后端，新连接立即使用新配置，已建立的会话不受影响
+         *
+         * @throws IOException 新端口绑定失败，配置保持不变
+         */
+        public void reconfigure(ProxyConfig config) throws IOException {
+            if (!supportsReconfigure()) {
+                throw new UnsupportedOperationException(config.getProtocol() + " 映射不支持在线修改");
+            }
+            ((SimpleTCPProxy) proxy).reconfigure(config.getLocalPort(), config.getLocalPortEnd(),
+                    config.getRemoteHost(), config.getRemotePort());
             this.config = config;
-            this.proxy = new SimpleTCPProxy(
-                    config.getLocalPort(),
-                    config.getRemoteHost(),
-                    config.getRemotePort()
-            );
+        }
+
+        public ProxyConfig getConfig() {
+            return config;
+        }
+
+        public String getEnvironment() {
+            return environment;
+        }
+
+        public void setEnvironment(String environment) {
+            this.environment = environment;
+        }
+
+        public AccessRules getAccessRules() {
+            return proxy.getAccessRules();
+        }
+
+        public Collection<ProxySession> getSessions() {
+            return proxy.getSessions();
+        }
+
+        public ConnectMetrics getConnectMetrics() {
+            return proxy.getConnectMetrics();
+        }
+
+        public TrafficCounters getTraffic() {
+            return proxy.getTraffic();
+        }
+
+        public RelayMemory getRelayMemory() {
+            return proxy.getRelayMemory();
+        }
+
+        public CircuitBreaker.State getBreakerState() {
+            return proxy.getBreakerState();
         }
 
         public void start() throws IOException {
@@ -879,6 +1603,21 @@ public class TCPProxyManagerGUI extends JFrame {
         }
     }
 
+    // 一次启动占用的本地端口，代理退出时按引用释放，避免释放掉重启后的新占用
+    private static final class PortClaim {
+        private final ManagedProxy proxy;
+        private final ProxyProtocol protocol;
+        private volatile int start;
+        private volatile int end;
+
+        PortClaim(ManagedProxy proxy, ProxyProtocol protocol, int start, int end) {
+            this.proxy = proxy;
+            this.protocol = protocol;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
     // 状态渲染器
     static class StatusRenderer implements TableCellRenderer {
         private final JLabel label = new JLabel();
@@ -897,223 +1636,20 @@ public class TCPProxyManagerGUI extends JFrame {
         ) {
             if (value instanceof ProxyState) {
                 ProxyState state = (ProxyState) value;
-                label.setText(state.getText());
-                label.setBackground(state.getColor());
+                Object breaker = table.getModel().getValueAt(table.convertRowIndexToModel(row), COL_BREAKER);
+                if (state == ProxyState.RUNNING && breaker == CircuitBreaker.State.OPEN) {
+                    label.setText(state.getText() + "（" + CircuitBreaker.State.OPEN.getText() + "）");
+                    label.setBackground(Color.ORANGE);
+                } else if (state == ProxyState.RUNNING && breaker == CircuitBreaker.State.HALF_OPEN) {
+                    label.setText(state.getText() + "（" + CircuitBreaker.State.HALF_OPEN.getText() + "）");
+                    label.setBackground(Color.YELLOW);
+                } else {
+                    label.setText(state.getText());
+                    label.setBackground(state.getColor());
+                }
                 label.setForeground(Color.BLACK);
             }
             return label;
         }
     }
 }
-
-// 状态枚举
-enum ProxyState {
-    INIT("未启动", Color.YELLOW),
-    RUNNING("运行中", Color.GREEN),
-    STOPPED("已停止", Color.RED);
-
-    private final String text;
-    private final Color color;
-
-    ProxyState(String text, Color color) {
-        this.text = text;
-        this.color = color;
-    }
-
-    public String getText() { return text; }
-    public Color getColor() { return color; }
-}
-
-// SimpleTCPProxy类保持不变
-class SimpleTCPProxy {
-    private final int localPort;
-    private final String remoteHost;
-    private final int remotePort;
-    private volatile boolean criticalError = false;
-    private volatile boolean manualStop = false;
-    private Exception criticalException = null;
-    private volatile ServerSocket serverSocket;
-    private volatile ProxyState state = ProxyState.INIT;
-
-    private static final int CONNECTION_TEST_TIMEOUT = 5000;
-
-    public SimpleTCPProxy(int localPort, String remoteHost, int remotePort) {
-        this.localPort = localPort;
-        this.remoteHost = remoteHost;
-        this.remotePort = remotePort;
-    }
-
-    public void start() throws IOException {
-        state = ProxyState.INIT;
-        criticalError = false;
-        criticalException = null;
-        manualStop = false;
-
-        try {
-            serverSocket = new ServerSocket(localPort);
-
-            testRemoteConnection();
-            state = ProxyState.RUNNING;
-
-            while (!criticalError) {
-                Socket clientSocket;
-                try {
-                    clientSocket = serverSocket.accept();
-                } catch (SocketException e) {
-                    if (criticalError) {
-                        if (manualStop) {
-                            throw new ManualStopException("代理已手动停止");
-                        } else {
-                            throw new CriticalIOException("Proxy stopped due to critical error: " +
-                                    criticalException.getMessage(), criticalException);
-                        }
-                    }
-                    throw e;
-                }
-
-                new Thread(() -> {
-                    try {
-                        handleClientConnection(clientSocket);
-                    } catch (IOException e) {
-                        // 静默处理连接错误
-                    }
-                }).start();
-            }
-        } catch (IOException e) {
-            state = ProxyState.STOPPED;
-            throw e;
-        } finally {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                try {
-                    serverSocket.close();
-                } catch (IOException e) {
-                    // 忽略关闭异常
-                }
-                serverSocket = null;
-            }
-        }
-    }
-
-    private void testRemoteConnection() throws IOException {
-        try (Socket testSocket = new Socket()) {
-            testSocket.connect(new InetSocketAddress(remoteHost, remotePort), 5000);
-        } catch (SocketTimeoutException e) {
-            handleCriticalError(new ConnectException("Connection to " + remoteHost + ":" + remotePort +
-                    " timed out after 5000ms"));
-            throw new CriticalIOException("Initial connection test failed", e);
-        } catch (UnknownHostException | ConnectException e) {
-            handleCriticalError(e);
-            throw new CriticalIOException("Initial connection test failed", e);
-        }
-    }
-
-    private Socket connectToRemote() throws IOException {
-        try {
-            Socket socket = new Socket();
-            socket.connect(new InetSocketAddress(remoteHost, remotePort), CONNECTION_TEST_TIMEOUT);
-            return socket;
-        } catch (UnknownHostException | ConnectException | SocketTimeoutException e) {
-            handleCriticalError(e);
-            throw e;
-        }
-    }
-
-    private void handleCriticalError(Exception e) {
-        synchronized (this) {
-            if (!criticalError) {
-                criticalError = true;
-                criticalException = e;
-                if (serverSocket != null && !serverSocket.isClosed()) {
-                    try {
-                        serverSocket.close();
-                    } catch (IOException ex) {
-                        // 忽略关闭异常
-                    }
-                }
-            }
-        }
-    }
-
-    public void stop() {
-        manualStop = true;
-        handleCriticalError(new Exception("代理已手动停止"));
-        state = ProxyState.STOPPED;
-    }
-
-    public void clear() {
-        criticalError = false;
-        criticalException = null;
-        serverSocket = null;
-        manualStop = false;
-        state = ProxyState.INIT;
-    }
-
-    public ProxyState getState() {
-        return state;
-    }
-
-    public boolean isManualStop() {
-        return manualStop;
-    }
-
-    private void handleClientConnection(Socket clientSocket) throws IOException {
-        try {
-            Socket remoteSocket = connectToRemote();
-
-            Thread clientToRemote = new Thread(() -> transferData(clientSocket, remoteSocket));
-            Thread remoteToClient = new Thread(() -> transferData(remoteSocket, clientSocket));
-
-            clientToRemote.start();
-            remoteToClient.start();
-
-            clientToRemote.join();
-            remoteToClient.join();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        } finally {
-            safeCloseSocket(clientSocket);
-        }
-    }
-
-    private void transferData(Socket source, Socket destination) {
-        try (InputStream sourceInput = source.getInputStream();
-             OutputStream destinationOutput = destination.getOutputStream()) {
-
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = sourceInput.read(buffer)) != -1) {
-                destinationOutput.write(buffer, 0, bytesRead);
-                destinationOutput.flush();
-            }
-            destination.shutdownOutput();
-        } catch (IOException e) {
-            // 静默处理传输异常
-        } finally {
-            safeCloseSocket(source);
-            safeCloseSocket(destination);
-        }
-    }
-
-    private static void safeCloseSocket(Socket socket) {
-        if (socket != null && !socket.isClosed()) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                // 忽略关闭异常
-            }
-        }
-    }
-
-    // 自定义异常类
-    private static class ManualStopException extends IOException {
-        public ManualStopException(String message) {
-            super(message);
-        }
-    }
-
-    private static class CriticalIOException extends IOException {
-        public CriticalIOException(String message, Throwable cause) {
-            super(message, cause);
-        }
-    }
-}
@@ -0,0 +1,148 @@
+package org.example;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按证书文件共用的 SSLContext，以及在已建立的连接上完成 TLS 握手
+ * <p>
+ * 会话缓存属于 SSLContext，所以使用同一证书的映射共用一个 SSLContext：客户端重连时服务端缓存命中，
+ * 代理连接后端时按 主机:端口 复用之前的会话，都只需要简短握手。证书文件修改后再次获取时重新加载，
+ * 已建立的连接不受影响。
+ */
+final class TlsContexts {
+    static final int HANDSHAKE_TIMEOUT = 10000;
+    // 会话缓存的条目数和有效期（秒）
+    static final int SESSION_CACHE_SIZE = 20000;
+    static final int SESSION_TIMEOUT = 24 * 3600;
+
+    // 键为 用途|路径|修改时间|密码
+    private static final Map<String, SSLContext> contexts = new HashMap<>();
+
+    private TlsContexts() {
+    }
+
+    /**
+     * 对客户端出示证书的上下文
+     *
+     * @throws IOException 证书文件无法读取或格式错误
+     */
+    static synchronized SSLContext server(String keystore, String password) throws IOException {
+        String key = keyOf("server", keystore, password);
+        SSLContext context = contexts.get(key);
+        if (context == null) {
+            try {
+                KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                factory.init(load(keystore, password), password.toCharArray());
+                context = SSLContext.getInstance("TLS");
+                context.init(factory.getKeyManagers(), null, null);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("加载证书失败: " + keystore + ": " + e.getMessage(), e);
+            }
+            configureCache(context.getServerSessionContext());
+            putReplacing(key, context);
+        }
+        return context;
+    }
+
+    /**
+     * 连接后端的上下文
+     *
+     * @param truststore 为空时使用 JVM 默认信任库
+     * @throws IOException 信任库无法读取或格式错误
+     */
+    static synchronized SSLContext client(String truststore, String password) throws IOException {
+        String key = keyOf("client", truststore, password);
+        SSLContext context = contexts.get(key);
+        if (context == null) {
+            try {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(
+                        TrustManagerFactory.getDefaultAlgorithm());
+                factory.init(truststore.isEmpty() ? null : load(truststore, password));
+                context = SSLContext.getInstance("TLS");
+                context.init(null, factory.getTrustManagers(), null);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("加载信任库失败: " + truststore + ": " + e.getMessage(), e);
+            }
+            configureCache(context.getClientSessionContext());
+            putReplacing(key, context);
+        }
+        return context;
+    }
+
+    /**
+     * 在客户端连接上作为服务端握手，握手成功后返回的 SSLSocket 接管原连接
+     */
+    static SSLSocket accept(SSLContext context, Socket socket) throws IOException {
+        SSLSocket ssl = (SSLSocket) context.getSocketFactory().createSocket(socket, null, true);
+        ssl.setUseClientMode(false);
+        return handshake(ssl);
+    }
+
+    /**
+     * 在后端连接上作为客户端握手，校验证书链和主机名
+     *
+     * @param host 用于 SNI、主机名校验和会话复用
+     */
+    static SSLSocket connect(SSLContext context, Socket socket, String host, int port) throws IOException {
+        SSLSocket ssl = (SSLSocket) context.getSocketFactory().createSocket(socket, host, port, true);
+        SSLParameters parameters = ssl.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        ssl.setSSLParameters(parameters);
+        return handshake(ssl);
+    }
+
+    /**
+     * 会话是否由之前的握手复用而来
+     *
+     * @param handshakeStart 握手开始时间（毫秒）
+     */
+    static boolean isResumed(SSLSocket socket, long handshakeStart) {
+        return socket.getSession().getCreationTime() < handshakeStart;
+    }
+
+    private static SSLSocket handshake(SSLSocket ssl) throws IOException {
+        int timeout = ssl.getSoTimeout();
+        ssl.setSoTimeout(HANDSHAKE_TIMEOUT);
+        try {
+            ssl.startHandshake();
+        } catch (IOException e) {
+            ssl.close();
+            throw e;
+        }
+        ssl.setSoTimeout(timeout);
+        return ssl;
+    }
+
+    private static KeyStore load(String path, String password) throws IOException, GeneralSecurityException {
+        // 自动识别 PKCS12 和 JKS
+        return KeyStore.getInstance(new File(path), password.toCharArray());
+    }
+
+    private static void configureCache(SSLSessionContext sessions) {
+        sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(SESSION_TIMEOUT);
+    }
+
+    private static String keyOf(String usage, String path, String password) {
+        return usage + "|" + path + "|" + new File(path).lastModified() + "|" + password;
+    }
+
+    // 证书文件修改后旧的上下文不再使用
+    private static void putReplacing(String key, SSLContext context) {
+        String prefix = key.substring(0, key.indexOf('|', key.indexOf('|') + 1) + 1);
+        contexts.keySet().removeIf(existing -> existing.startsWith(prefix));
+        contexts.put(key, context);
+    }
+}
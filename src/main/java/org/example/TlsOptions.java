@@ -0,0 +1,78 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.Objects;
+
+/**
+ * 映射的 TLS 选项，与其他高级选项一起平铺保存
+ * <p>
+ * 配置了 tlsKeystore 时代理对客户端终止 TLS；tlsBackend 为 true 时代理以 TLS 连接后端，
+ * 校验后端证书和主机名，未配置 tlsTruststore 时使用 JVM 默认信任库。两者可以同时开启。
+ */
+final class TlsOptions {
+    static final TlsOptions NONE = new TlsOptions("", "", false, "", "");
+
+    // 对客户端出示的证书和私钥（PKCS12 或 JKS）
+    private final String keystore;
+    private final String keystorePassword;
+    private final boolean backend;
+    // 校验后端证书的信任库
+    private final String truststore;
+    private final String truststorePassword;
+
+    TlsOptions(String keystore, String keystorePassword, boolean backend, String truststore,
+               String truststorePassword) {
+        this.keystore = keystore;
+        this.keystorePassword = keystorePassword;
+        this.backend = backend;
+        this.truststore = truststore;
+        this.truststorePassword = truststorePassword;
+    }
+
+    void writeTo(JSONObject json) {
+        if (!keystore.isEmpty()) {
+            json.put("tlsKeystore", keystore);
+            json.put("tlsKeystorePassword", keystorePassword);
+        }
+        if (backend) {
+            json.put("tlsBackend", true);
+            if (!truststore.isEmpty()) {
+                json.put("tlsTruststore", truststore);
+                json.put("tlsTruststorePassword", truststorePassword);
+            }
+        }
+    }
+
+    boolean isEnabled() {
+        return acceptsTls() || backend;
+    }
+
+    // 客户端连接需要 TLS
+    boolean acceptsTls() {
+        return !keystore.isEmpty();
+    }
+
+    boolean isBackend() { return backend; }
+    String getKeystore() { return keystore; }
+    String getKeystorePassword() { return keystorePassword; }
+    String getTruststore() { return truststore; }
+    String getTruststorePassword() { return truststorePassword; }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        TlsOptions that = (TlsOptions) obj;
+        return backend == that.backend &&
+                keystore.equals(that.keystore) &&
+                keystorePassword.equals(that.keystorePassword) &&
+                truststore.equals(that.truststore) &&
+                truststorePassword.equals(that.truststorePassword);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(keystore, keystorePassword, backend, truststore, truststorePassword);
+    }
+}
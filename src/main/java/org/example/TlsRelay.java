@@ -0,0 +1,154 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * TLS 会话的转发，任一端为 SSLSocket 时使用
+ * <p>
+ * SSLSocket 只能阻塞读写，所以每个方向一个线程，缓冲区固定为一个 TLS 记录的大小并计入转发缓冲。
+ * 事件回调与 {@link RelayEngine} 相同；半关闭语义也一致：一个方向结束后只向另一端传递关闭，
+ * 反方向继续转发，空闲超过 {@link RelayEngine#HALF_CLOSE_LINGER_TIMEOUT} 后结束会话。
+ */
+final class TlsRelay {
+    // 一个 TLS 记录的最大明文长度
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Socket client;
+    private final Socket remote;
+    private final ProxySession session;
+    private final RelayEngine.Listener listener;
+    private final RelayMemory memory;
+    private final TrafficCapture.Tap tap;
+    // 以下字段由 this 保护
+    private int finished;
+    private boolean closed;
+
+    private TlsRelay(Socket client, Socket remote, ProxySession session, RelayEngine.Listener listener,
+                     RelayMemory memory, TrafficCapture.Tap tap) {
+        this.client = client;
+        this.remote = remote;
+        this.session = session;
+        this.listener = listener;
+        this.memory = memory;
+        this.tap = tap;
+    }
+
+    /**
+     * 开始转发，两个连接由转发线程接管并在会话结束时关闭
+     *
+     * @param tap 会话的抓包入口，记录的是解密后的数据；不抓包时为 null
+     */
+    static TlsRelay start(Socket client, Socket remote, ProxySession session, RelayEngine.Listener listener,
+                          RelayMemory memory, TrafficCapture.Tap tap) {
+        TlsRelay relay = new TlsRelay(client, remote, session, listener, memory, tap);
+        memory.add(2 * BUFFER_SIZE);
+        Thread fromClient = new Thread(() -> relay.pump(client, remote, true), "tls-relay-" + session.getId());
+        Thread toClient = new Thread(() -> relay.pump(remote, client, false), "tls-relay-" + session.getId());
+        fromClient.setDaemon(true);
+        toClient.setDaemon(true);
+        fromClient.start();
+        toClient.start();
+        return relay;
+    }
+
+    /**
+     * 从任意线程关闭会话
+     */
+    void requestClose(String reason) {
+        close(reason);
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void pump(Socket source, Socket destination, boolean isFromClient) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        // 字节数先在本地累计，按采样间隔发布
+        long pendingBytes = 0;
+        long lastPublish = 0;
+        boolean firstByte = true;
+        try {
+            InputStream in = source.getInputStream();
+            OutputStream out = destination.getOutputStream();
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                long now = System.currentTimeMillis();
+                if (!isFromClient && firstByte) {
+                    session.markFirstByte(now);
+                    firstByte = false;
+                }
+                if (tap != null) {
+                    tap.data(isFromClient, buffer, 0, n);
+                }
+                out.write(buffer, 0, n);
+                pendingBytes += n;
+                if (now - lastPublish >= ProxySession.STATS_PUBLISH_INTERVAL) {
+                    listener.onBytes(session, isFromClient, pendingBytes, now);
+                    pendingBytes = 0;
+                    lastPublish = now;
+                }
+            }
+            if (pendingBytes > 0) {
+                listener.onBytes(session, isFromClient, pendingBytes, System.currentTimeMillis());
+                pendingBytes = 0;
+            }
+            finish(destination);
+        } catch (SocketTimeoutException e) {
+            close(ProxySession.CLOSE_LINGER_TIMEOUT);
+        } catch (IOException | UnsupportedOperationException e) {
+            // 传输异常（如连接被重置）或对端不支持半关闭时中止整个会话
+            close(ProxySession.CLOSE_ERROR);
+        } finally {
+            if (pendingBytes > 0) {
+                listener.onBytes(session, isFromClient, pendingBytes, System.currentTimeMillis());
+            }
+        }
+    }
+
+    // 源端已结束，只关闭目标端的输出；另一方向仍在转发时限制其空闲时间
+    private void finish(Socket destination) throws IOException {
+        boolean done;
+        synchronized (this) {
+            done = ++finished == 2;
+        }
+        if (done) {
+            close(ProxySession.CLOSE_NORMAL);
+            return;
+        }
+        // SSLSocket 以 close_notify 传递关闭，TLS 1.2 的对端收到后通常关闭整个连接，另一方向随之结束
+        destination.shutdownOutput();
+        int linger = (int) RelayEngine.HALF_CLOSE_LINGER_TIMEOUT;
+        client.setSoTimeout(linger);
+        remote.setSoTimeout(linger);
+    }
+
+    private void close(String reason) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        session.setCloseReason(reason);
+        closeQuietly(client);
+        closeQuietly(remote);
+        memory.add(-2 * BUFFER_SIZE);
+        if (tap != null) {
+            tap.close();
+        }
+        listener.onClosed(session);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+    }
+}
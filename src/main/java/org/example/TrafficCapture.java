@@ -0,0 +1,356 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 映射的流量抓包，记录转发的每段数据，供排查问题和回放压测使用
+ * <p>
+ * 数据写入目录下固定数量的段文件，段文件通过 MappedByteBuffer 映射到内存，写满后切换到下一个，
+ * 全部写满后覆盖最旧的一段，因此只保留最近一段时间的流量。
+ * 转发线程只复制数据并放入队列，由单独的写入线程写入映射内存；队列积压超过 {@link #QUEUE_LIMIT}
+ * 时丢弃数据并计数，转发永远不会因抓包而等待。
+ * <p>
+ * 段文件格式：文件头为 魔数(4) + 版本(4) + 段序号(8) + 创建时间(8，毫秒) + 创建时的 nanoTime(8) + 运行标识(8)，
+ * 之后是连续的记录：类型(1) + 会话编号(8) + nanoTime(8) + 数据长度(4) + 数据，类型为 0 表示段结束。
+ * 会话编号在每个进程中都从 1 开始，段文件又跨重启保留，所以每次开始抓包生成一个随机的运行标识，
+ * 会话由 (运行标识, 会话编号) 确定。
+ */
+final class TrafficCapture implements Closeable {
+    static final String DIRECTORY = "capture";
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    // 记录类型，0 保留为段结束标记
+    static final byte OPEN = 1;
+    static final byte FROM_CLIENT = 2;
+    static final byte TO_CLIENT = 3;
+    static final byte CLOSE = 4;
+
+    // 写入线程最多积压的数据字节数
+    static final long QUEUE_LIMIT = 8L * 1024 * 1024;
+
+    private static final int MAGIC = 0x50584350;  // "PXCP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int RECORD_HEADER_SIZE = 1 + 8 + 8 + 4;
+    private static final String FILE_PREFIX = "segment-";
+    private static final String FILE_SUFFIX = ".cap";
+    private static final Record STOP = new Record(CLOSE, 0, 0, new byte[0]);
+
+    private final Path directory;
+    private final int segments;
+    private final int segmentSize;
+    private final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private final long run = ThreadLocalRandom.current().nextLong();
+    // 以下字段只由写入线程访问
+    private long sequence;
+    private RandomAccessFile file;
+    private MappedByteBuffer segment;
+    private volatile boolean closed;
+
+    private TrafficCapture(Path directory, int segments, int segmentSize, long lastSequence) {
+        this.directory = directory;
+        this.segments = segments;
+        this.segmentSize = segmentSize;
+        this.sequence = lastSequence;
+        this.writer = new Thread(this::writeLoop, "capture-" + directory.getFileName());
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * 在目录中开始抓包，已有的段文件保留，从最旧的一段开始覆盖
+     */
+    static TrafficCapture open(Path directory, int segments) throws IOException {
+        return open(directory, segments, DEFAULT_SEGMENT_SIZE);
+    }
+
+    static TrafficCapture open(Path directory, int segments, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE + RECORD_HEADER_SIZE + RelayEngine.MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException("段文件太小: " + segmentSize);
+        }
+        Files.createDirectories(directory);
+        long lastSequence = -1;
+        for (Path path : segmentFiles(directory)) {
+            lastSequence = Math.max(lastSequence, readSequence(path));
+        }
+        TrafficCapture capture = new TrafficCapture(directory, Math.max(1, segments), segmentSize, lastSequence);
+        capture.nextSegment();
+        capture.writer.start();
+        return capture;
+    }
+
+    /**
+     * 开始记录一个会话
+     */
+    Tap tap(long sessionId) {
+        enqueue(new Record(OPEN, sessionId, System.nanoTime(), null));
+        return new Tap(sessionId);
+    }
+
+    // 因积压被丢弃的数据记录数
+    long getDropped() {
+        return dropped.get();
+    }
+
+    private void enqueue(Record record) {
+        if (!closed) {
+            queue.add(record);
+        }
+    }
+
+    private void enqueueData(Record record) {
+        if (closed) {
+            return;
+        }
+        if (queuedBytes.addAndGet(record.data.length) > QUEUE_LIMIT) {
+            queuedBytes.addAndGet(-record.data.length);
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.add(record);
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Record record = queue.take();
+                if (record == STOP) {
+                    return;
+                }
+                if (record.data != null) {
+                    queuedBytes.addAndGet(-record.data.length);
+                }
+                write(record);
+            }
+        } catch (InterruptedException e) {
+            // 关闭
+        } catch (IOException e) {
+            // 磁盘写满等情况下停止抓包，不影响转发
+            closed = true;
+            queue.clear();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void write(Record record) throws IOException {
+        int length = record.data != null ? record.data.length : 0;
+        if (segment.remaining() < RECORD_HEADER_SIZE + length) {
+            nextSegment();
+        }
+        segment.put(record.type);
+        segment.putLong(record.sessionId);
+        segment.putLong(record.nanos);
+        segment.putInt(length);
+        if (length > 0) {
+            segment.put(record.data);
+        }
+        markEnd();
+    }
+
+    // 下一个写入位置标记为段结束，覆盖旧段时不会读到上一轮的记录
+    private void markEnd() {
+        if (segment.hasRemaining()) {
+            segment.put(segment.position(), (byte) 0);
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        closeSegment();
+        sequence++;
+        Path path = directory.resolve(FILE_PREFIX + (sequence % segments) + FILE_SUFFIX);
+        file = new RandomAccessFile(path.toFile(), "rw");
+        file.setLength(segmentSize);
+        segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putLong(sequence);
+        segment.putLong(System.currentTimeMillis());
+        segment.putLong(System.nanoTime());
+        segment.putLong(run);
+        markEnd();
+    }
+
+    private void closeSegment() {
+        if (file != null) {
+            segment.force();
+            try {
+                file.close();
+            } catch (IOException e) {
+                // 忽略关闭异常
+            }
+            file = null;
+            segment = null;
+        }
+    }
+
+    /**
+     * 停止抓包，已进入队列的记录写完后返回
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 按段序号顺序读取目录中的全部记录
+     */
+    static void read(Path directory, RecordHandler handler) throws IOException {
+        List<Path> paths = segmentFiles(directory);
+        List<long[]> ordered = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            long sequence = readSequence(paths.get(i));
+            if (sequence >= 0) {
+                ordered.add(new long[]{sequence, i});
+            }
+        }
+        ordered.sort(Comparator.comparingLong(entry -> entry[0]));
+        for (long[] entry : ordered) {
+            readSegment(paths.get((int) entry[1]), handler);
+        }
+    }
+
+    private static void readSegment(Path path, RecordHandler handler) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            // 用段创建时的时间换算，不同进程写入的段也能排在同一时间轴上
+            long baseMillis = buffer.getLong(16);
+            long baseNanos = buffer.getLong(24);
+            long run = buffer.getLong(32);
+            buffer.position(HEADER_SIZE);
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                byte type = buffer.get();
+                if (type == 0) {
+                    return;
+                }
+                long sessionId = buffer.getLong();
+                long nanos = buffer.getLong();
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    // 写入中断留下的不完整记录
+                    return;
+                }
+                byte[] data = new byte[length];
+                buffer.get(data);
+                long micros = TimeUnit.MILLISECONDS.toMicros(baseMillis)
+                        + TimeUnit.NANOSECONDS.toMicros(nanos - baseNanos);
+                handler.onRecord(type, run, sessionId, micros, data);
+            }
+        }
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return paths;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().forEach(paths::add);
+        }
+        return paths;
+    }
+
+    // 读取段序号，不是有效段文件时返回 -1
+    private static long readSequence(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+                return -1;
+            }
+            int version = file.readInt();
+            if (version != VERSION) {
+                return -1;
+            }
+            return file.readLong();
+        }
+    }
+
+    /**
+     * 读取记录的回调，data 为空数组表示没有数据
+     */
+    interface RecordHandler {
+        // run 为写入该段的抓包的运行标识，micros 为记录时间（微秒）
+        void onRecord(byte type, long run, long sessionId, long micros, byte[] data) throws IOException;
+    }
+
+    /**
+     * 一个会话的抓包入口，数据方法由会话的转发线程调用
+     */
+    final class Tap {
+        private final long sessionId;
+        // 会话关闭后转发线程可能还有最后一段数据，不再记录
+        private volatile boolean closed;
+
+        private Tap(long sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * 复制 position 到 limit 之间的数据，不改变 buffer 的位置
+         */
+        void data(boolean fromClient, ByteBuffer buffer) {
+            if (closed) {
+                return;
+            }
+            byte[] copy = new byte[buffer.remaining()];
+            buffer.duplicate().get(copy);
+            enqueueData(new Record(fromClient ? FROM_CLIENT : TO_CLIENT, sessionId, System.nanoTime(), copy));
+        }
+
+        void data(boolean fromClient, byte[] array, int offset, int length) {
+            if (closed) {
+                return;
+            }
+            byte[] copy = new byte[length];
+            System.arraycopy(array, offset, copy, 0, length);
+            enqueueData(new Record(fromClient ? FROM_CLIENT : TO_CLIENT, sessionId, System.nanoTime(), copy));
+        }
+
+        void close() {
+            closed = true;
+            enqueue(new Record(CLOSE, sessionId, System.nanoTime(), null));
+        }
+    }
+
+    private static final class Record {
+        final byte type;
+        final long sessionId;
+        final long nanos;
+        final byte[] data;
+
+        Record(byte type, long sessionId, long nanos, byte[] data) {
+            this.type = type;
+            this.sessionId = sessionId;
+            this.nanos = nanos;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.example;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 映射级累计流量，代理重启后继续累加，由指标记录器按秒取增量
+ */
+final class TrafficCounters {
+    private final LongAdder bytesFromClient = new LongAdder();
+    private final LongAdder bytesToClient = new LongAdder();
+    private final LongAdder sessions = new LongAdder();
+
+    void addBytesFromClient(long bytes) {
+        bytesFromClient.add(bytes);
+    }
+
+    void addBytesToClient(long bytes) {
+        bytesToClient.add(bytes);
+    }
+
+    void sessionOpened() {
+        sessions.increment();
+    }
+
+    long getBytesFromClient() { return bytesFromClient.sum(); }
+    long getBytesToClient() { return bytesToClient.sum(); }
+    long getSessions() { return sessions.sum(); }
+}
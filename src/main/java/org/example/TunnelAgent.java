@@ -0,0 +1,159 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 隧道中继，部署在目标网络一侧，接受代理端的链路并在本地连接目标
+ * <p>
+ * 用法：--agent &lt;监听端口&gt; [--token &lt;令牌&gt;]，代理端映射的 tunnelToken 必须与令牌一致。
+ * 中继会连接代理端请求的任意目标，监听端口只应对代理端开放。
+ */
+final class TunnelAgent implements Closeable {
+    private final ServerSocket server;
+    private final String token;
+    private final Set<TunnelLink> links = ConcurrentHashMap.newKeySet();
+    private final ConnectMetrics connectMetrics = new ConnectMetrics();
+    // 连接目标可能耗时，不能在链路读线程中进行
+    private final ExecutorService connectExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tunnel-agent-connect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+
+    TunnelAgent(int port, String token) throws IOException {
+        this.server = new ServerSocket();
+        this.server.bind(new InetSocketAddress(port));
+        this.token = token;
+    }
+
+    static void main(String[] args) {
+        int port = -1;
+        String token = "";
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if ("--token".equals(args[i]) && i + 1 < args.length) {
+                    token = args[++i];
+                } else {
+                    port = Integer.parseInt(args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            port = -1;
+        }
+        if (port < 0 || port > 65535) {
+            System.err.println("用法: --agent <监听端口> [--token <令牌>]");
+            System.exit(1);
+        }
+
+        try {
+            TunnelAgent agent = new TunnelAgent(port, token);
+            log("隧道中继已启动，监听端口: " + agent.getPort());
+            agent.start();
+            CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                agent.close();
+                stopped.countDown();
+            }, "agent-shutdown"));
+            stopped.await();
+        } catch (IOException e) {
+            System.err.println("隧道中继启动失败: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 在后台线程中接受链路
+     */
+    void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "tunnel-agent-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    // 当前连接的链路数
+    int getLinkCount() {
+        links.removeIf(TunnelLink::isClosed);
+        return links.size();
+    }
+
+    ConnectMetrics getConnectMetrics() {
+        return connectMetrics;
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            // 令牌校验会等待对端数据，放到连接线程中进行
+            connectExecutor.execute(() -> {
+                try {
+                    TunnelLink link = TunnelLink.accept(socket, token, this::openTarget);
+                    links.add(link);
+                    log("链路已建立: " + socket.getRemoteSocketAddress());
+                } catch (IOException e) {
+                    log("链路建立失败: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void openTarget(TunnelStream stream, String host, int port) {
+        connectExecutor.execute(() -> {
+            SocketChannel channel;
+            try {
+                channel = new BackendConnector(host, 0, connectMetrics, () -> closed).connect(port);
+            } catch (IOException e) {
+                stream.reset(ProxySession.CLOSE_ERROR, "连接目标失败: " + e.getMessage());
+                return;
+            }
+            stream.attach(channel);
+            try {
+                stream.sendOpened();
+            } catch (IOException e) {
+                stream.reset(ProxySession.CLOSE_ERROR, null);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+        for (TunnelLink link : links) {
+            link.close();
+        }
+        connectExecutor.shutdownNow();
+    }
+
+    private static void log(String message) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+        System.out.printf("[%s] %s%n", timestamp, message);
+    }
+}
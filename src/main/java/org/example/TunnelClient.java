@@ -0,0 +1,85 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 代理端到一个中继的链路组
+ * <p>
+ * 同一中继地址和令牌的映射共用一组链路。链路按需建立，新流分配到承载流最少的链路上，
+ * 断开的链路在下次打开流时重连。
+ */
+final class TunnelClient {
+    private static final Map<String, TunnelClient> clients = new ConcurrentHashMap<>();
+
+    private final String host;
+    private final int port;
+    private final String token;
+    private final TunnelLink[] links;
+
+    private TunnelClient(String host, int port, String token, int links) {
+        this.host = host;
+        this.port = port;
+        this.token = token;
+        this.links = new TunnelLink[links];
+    }
+
+    /**
+     * @param address 中继地址，格式为 主机:端口
+     * @throws IllegalArgumentException 地址格式错误
+     */
+    static TunnelClient forAgent(String address, String token, int links) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("无效的中继地址: " + address);
+        }
+        String host = address.substring(0, colon).trim();
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的中继地址: " + address);
+        }
+        String finalHost = host;
+        return clients.computeIfAbsent(finalHost + ":" + port + "/" + links + "/" + token,
+                key -> new TunnelClient(finalHost, port, token, links));
+    }
+
+    /**
+     * 经隧道打开到目标的流
+     *
+     * @throws IOException 没有可用的链路
+     */
+    TunnelStream open(String targetHost, int targetPort, TunnelStream.Listener listener, RelayMemory memory,
+                      TrafficCapture.Tap tap) throws IOException {
+        return pickLink().open(targetHost, targetPort, listener, memory, tap);
+    }
+
+    // 重连断开的链路，其中部分连不上时使用其余的链路
+    private synchronized TunnelLink pickLink() throws IOException {
+        IOException failure = null;
+        TunnelLink best = null;
+        for (int i = 0; i < links.length; i++) {
+            if (links[i] == null || links[i].isClosed()) {
+                try {
+                    links[i] = TunnelLink.connect(host, port, token);
+                } catch (IOException e) {
+                    links[i] = null;
+                    failure = e;
+                    continue;
+                }
+            }
+            if (best == null || links[i].getStreamCount() < best.getStreamCount()) {
+                best = links[i];
+            }
+        }
+        if (best == null) {
+            throw failure;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,196 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 代理与中继之间的一条长连接，承载多个流
+ * <p>
+ * 一个读线程按流编号分发收到的帧，写入由各流的线程在链路锁下整帧写出。
+ * 链路断开时其上的所有流都被中止。
+ */
+final class TunnelLink implements Closeable {
+    // 建立链路和等待 HELLO 的超时
+    static final int HANDSHAKE_TIMEOUT = 5000;
+
+    /**
+     * 中继端收到 OPEN 时调用，在读线程中执行，不能阻塞
+     */
+    interface OpenHandler {
+        void onOpen(TunnelStream stream, String host, int port);
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final Object writeLock = new Object();
+    private final Map<Integer, TunnelStream> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger nextStream = new AtomicInteger();
+    // 代理端为 null
+    private final OpenHandler openHandler;
+    private volatile boolean closed;
+
+    private TunnelLink(Socket socket, OpenHandler openHandler) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = socket.getOutputStream();
+        this.openHandler = openHandler;
+    }
+
+    /**
+     * 代理端：连接中继并完成令牌校验
+     */
+    static TunnelLink connect(String host, int port, String token) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), HANDSHAKE_TIMEOUT);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            TunnelLink link = new TunnelLink(socket, null);
+            link.send(TunnelProtocol.HELLO, 0, TunnelProtocol.text(token));
+            TunnelProtocol.Frame reply = TunnelProtocol.read(link.in);
+            if (reply.type != TunnelProtocol.HELLO) {
+                throw new ProtocolException("中继拒绝链路: " + TunnelProtocol.textOf(reply.payload));
+            }
+            socket.setSoTimeout(0);
+            link.startReader();
+            return link;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 中继端：校验代理端发来的令牌
+     */
+    static TunnelLink accept(Socket socket, String token, OpenHandler openHandler) throws IOException {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            TunnelLink link = new TunnelLink(socket, openHandler);
+            TunnelProtocol.Frame hello = TunnelProtocol.read(link.in);
+            // 固定时间比较，避免通过响应时间猜测令牌
+            if (hello.type != TunnelProtocol.HELLO
+                    || !MessageDigest.isEqual(hello.payload, TunnelProtocol.text(token))) {
+                link.send(TunnelProtocol.RST, 0, TunnelProtocol.text("令牌错误"));
+                throw new ProtocolException("隧道令牌错误: " + socket.getRemoteSocketAddress());
+            }
+            link.send(TunnelProtocol.HELLO, 0, new byte[0]);
+            socket.setSoTimeout(0);
+            link.startReader();
+            return link;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void startReader() {
+        Thread reader = new Thread(this::readLoop, "tunnel-link-" + socket.getLocalPort() + "-" + socket.getPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 代理端打开新流，OPEN 发出后即可发送数据，中继连上目标前收到的数据在中继端排队
+     */
+    TunnelStream open(String host, int port, TunnelStream.Listener listener, RelayMemory memory,
+                      TrafficCapture.Tap tap) throws IOException {
+        TunnelStream stream = new TunnelStream(this, nextStream.incrementAndGet(), listener, memory, tap);
+        streams.put(stream.getId(), stream);
+        if (closed) {
+            streams.remove(stream.getId());
+            throw new IOException("隧道链路已断开");
+        }
+        send(TunnelProtocol.OPEN, stream.getId(), TunnelProtocol.openPayload(host, port));
+        return stream;
+    }
+
+    void send(int type, int stream, byte[] payload) throws IOException {
+        send(type, stream, payload, 0, payload.length);
+    }
+
+    /**
+     * 整帧写出，写失败时关闭链路
+     */
+    void send(int type, int stream, byte[] payload, int offset, int length) throws IOException {
+        byte[] frame = TunnelProtocol.encode(type, stream, payload, offset, length);
+        try {
+            synchronized (writeLock) {
+                out.write(frame);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                TunnelProtocol.Frame frame = TunnelProtocol.read(in);
+                if (frame.type == TunnelProtocol.OPEN) {
+                    if (openHandler == null) {
+                        throw new ProtocolException("代理端不接受 OPEN");
+                    }
+                    TunnelStream stream = new TunnelStream(this, frame.stream, null, null, null);
+                    streams.put(frame.stream, stream);
+                    openHandler.onOpen(stream, TunnelProtocol.openHost(frame.payload),
+                            TunnelProtocol.openPort(frame.payload));
+                    continue;
+                }
+                TunnelStream stream = streams.get(frame.stream);
+                if (stream != null) {
+                    stream.onFrame(frame.type, frame.payload);
+                }
+            }
+        } catch (IOException e) {
+            // 链路断开
+        } finally {
+            close();
+        }
+    }
+
+    void remove(int stream) {
+        streams.remove(stream);
+    }
+
+    int getStreamCount() {
+        return streams.size();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+        for (TunnelStream stream : new ArrayList<>(streams.values())) {
+            stream.linkClosed();
+        }
+        streams.clear();
+    }
+}
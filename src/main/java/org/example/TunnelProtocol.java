@@ -0,0 +1,100 @@
+package org.example;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 隧道链路的帧格式
+ * <p>
+ * 每帧为 类型(1字节) + 流编号(4字节) + 载荷长度(4字节) + 载荷。流编号 0 用于链路级的 HELLO。
+ * <ul>
+ *     <li>HELLO：链路建立后代理端发送令牌，中继端校验通过后回复空的 HELLO</li>
+ *     <li>OPEN：代理端打开新流，载荷为目标端口(2字节) + 主机名</li>
+ *     <li>OPENED：中继端已连上目标</li>
+ *     <li>DATA：流数据，不超过 {@link #MAX_PAYLOAD}</li>
+ *     <li>WINDOW：接收方已写出的字节数(4字节)，发送方据此增加发送窗口</li>
+ *     <li>FIN：发送方向结束，接收方对本地连接半关闭</li>
+ *     <li>RST：中止流，载荷为原因</li>
+ * </ul>
+ * 每个流每个方向的初始窗口为 {@link #INITIAL_WINDOW}，发送方在窗口用尽时等待 WINDOW，
+ * 一个流的接收方写得慢只会让该流停下，不会阻塞同一链路上的其他流。
+ */
+final class TunnelProtocol {
+    static final int HELLO = 0;
+    static final int OPEN = 1;
+    static final int OPENED = 2;
+    static final int DATA = 3;
+    static final int WINDOW = 4;
+    static final int FIN = 5;
+    static final int RST = 6;
+
+    static final int HEADER_SIZE = 9;
+    static final int MAX_PAYLOAD = 16 * 1024;
+    static final int INITIAL_WINDOW = 256 * 1024;
+
+    private TunnelProtocol() {
+    }
+
+    static final class Frame {
+        final int type;
+        final int stream;
+        final byte[] payload;
+
+        Frame(int type, int stream, byte[] payload) {
+            this.type = type;
+            this.stream = stream;
+            this.payload = payload;
+        }
+    }
+
+    static Frame read(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        int stream = in.readInt();
+        int length = in.readInt();
+        if (type > RST || length < 0 || length > MAX_PAYLOAD) {
+            throw new ProtocolException("无效的隧道帧: 类型 " + type + "，长度 " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, stream, payload);
+    }
+
+    static byte[] encode(int type, int stream, byte[] payload, int offset, int length) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+        frame.put((byte) type).putInt(stream).putInt(length).put(payload, offset, length);
+        return frame.array();
+    }
+
+    static byte[] openPayload(String host, int port) {
+        byte[] name = host.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(2 + name.length).putShort((short) port).put(name).array();
+    }
+
+    static String openHost(byte[] payload) {
+        return new String(payload, 2, payload.length - 2, StandardCharsets.UTF_8);
+    }
+
+    static int openPort(byte[] payload) {
+        return (payload[0] & 0xFF) << 8 | payload[1] & 0xFF;
+    }
+
+    static byte[] intPayload(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    static int intOf(byte[] payload) {
+        return ByteBuffer.wrap(payload).getInt();
+    }
+
+    static byte[] text(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_PAYLOAD ? bytes : new byte[0];
+    }
+
+    static String textOf(byte[] payload) {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,332 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 隧道中的一个流，把链路上的一个流编号和本地的一个 TCP 连接对接起来
+ * <p>
+ * 代理端的本地连接是客户端，中继端的本地连接是目标。本地连接使用阻塞模式：
+ * 一个线程读取本地连接并按发送窗口发出 DATA，另一个线程把收到的 DATA 写入本地连接并回复 WINDOW。
+ * 收到的数据最多积压一个窗口，所以链路读线程从不阻塞。
+ * 两个方向都收到并传递 FIN 后流正常结束，任一方出错时发送 RST 中止。
+ * <p>
+ * 流不经过 {@link RelayEngine}：每个流占用两个线程和一个固定 {@link TunnelProtocol#MAX_PAYLOAD} 的读缓冲区，
+ * 缓冲区不随流量伸缩，空闲时也不归还，映射的优先级对隧道会话不生效。读缓冲区和已收到未写出的数据都计入
+ * {@link RelayMemory}。
+ */
+final class TunnelStream {
+    // 队列中的结束标记，按引用比较
+    private static final byte[] EOF = new byte[0];
+    private static final byte[] CLOSED = new byte[0];
+
+    /**
+     * 流事件回调，中继端不需要统计时为 null
+     */
+    interface Listener {
+        // 中继端已连上目标
+        void onOpened();
+
+        void onBytes(boolean fromLocal, long bytes, long now);
+
+        // reason 为 ProxySession 的关闭原因
+        void onClosed(String reason);
+    }
+
+    private final TunnelLink link;
+    private final int id;
+    private final Listener listener;
+    private final RelayMemory memory;
+    private final TrafficCapture.Tap tap;
+    private final LinkedBlockingQueue<byte[]> inbound = new LinkedBlockingQueue<>();
+    private volatile SocketChannel local;
+    // 以下字段由 this 保护
+    private int sendWindow = TunnelProtocol.INITIAL_WINDOW;
+    private int queuedBytes;
+    private boolean localDone;
+    private boolean remoteDone;
+    // 读缓冲区已计入 memory
+    private boolean bufferCounted;
+    private volatile boolean closed;
+
+    /**
+     * @param tap 代理端会话的抓包入口，本地连接即客户端；不抓包时为 null
+     */
+    TunnelStream(TunnelLink link, int id, Listener listener, RelayMemory memory, TrafficCapture.Tap tap) {
+        this.link = link;
+        this.id = id;
+        this.listener = listener;
+        this.memory = memory != null ? memory : new RelayMemory();
+        this.tap = tap;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 对接本地连接并开始双向转发
+     */
+    void attach(SocketChannel channel) {
+        local = channel;
+        synchronized (this) {
+            // 先于 close 计入，关闭时才能对应扣除
+            bufferCounted = !closed;
+            if (bufferCounted) {
+                memory.add(TunnelProtocol.MAX_PAYLOAD);
+            }
+        }
+        if (closed) {
+            safeClose(channel);
+            return;
+        }
+        Thread out = new Thread(this::pumpToLink, "tunnel-out-" + id);
+        Thread in = new Thread(this::pumpToLocal, "tunnel-in-" + id);
+        out.setDaemon(true);
+        in.setDaemon(true);
+        out.start();
+        in.start();
+    }
+
+    // 中继端连上目标后通知代理端
+    void sendOpened() throws IOException {
+        link.send(TunnelProtocol.OPENED, id, EOF);
+    }
+
+    /**
+     * 中止流并通知对端，用于断开会话或中继端连接目标失败
+     */
+    void reset(String reason, String message) {
+        close(reason, message);
+    }
+
+    // 由链路读线程调用
+    void onFrame(int type, byte[] payload) {
+        switch (type) {
+            case TunnelProtocol.OPENED:
+                if (listener != null) {
+                    listener.onOpened();
+                }
+                break;
+            case TunnelProtocol.DATA:
+                synchronized (this) {
+                    queuedBytes += payload.length;
+                    if (queuedBytes > TunnelProtocol.INITIAL_WINDOW) {
+                        // 对端没有遵守流量控制
+                        close(ProxySession.CLOSE_ERROR, "超出接收窗口");
+                        return;
+                    }
+                }
+                memory.add(payload.length);
+                memory.addBuffered(payload.length);
+                inbound.add(payload);
+                break;
+            case TunnelProtocol.WINDOW:
+                synchronized (this) {
+                    sendWindow += TunnelProtocol.intOf(payload);
+                    notifyAll();
+                }
+                break;
+            case TunnelProtocol.FIN:
+                inbound.add(EOF);
+                break;
+            case TunnelProtocol.RST:
+                close(ProxySession.CLOSE_ERROR, null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    void linkClosed() {
+        close(ProxySession.CLOSE_ERROR, null);
+    }
+
+    // 本地连接 -> 链路
+    private void pumpToLink() {
+        ByteBuffer buffer = ByteBuffer.allocate(TunnelProtocol.MAX_PAYLOAD);
+        // 字节数先在本地累计，按采样间隔发布，避免每次读写都更新共享状态
+        long pendingBytes = 0;
+        long lastPublish = 0;
+        try {
+            while (true) {
+                buffer.clear();
+                int n = local.read(buffer);
+                if (n < 0) {
+                    link.send(TunnelProtocol.FIN, id, EOF);
+                    finish(true);
+                    return;
+                }
+                if (tap != null) {
+                    tap.data(true, buffer.array(), 0, n);
+                }
+                int sent = 0;
+                while (sent < n) {
+                    int chunk = acquireWindow(n - sent);
+                    if (chunk == 0) {
+                        return;
+                    }
+                    link.send(TunnelProtocol.DATA, id, buffer.array(), sent, chunk);
+                    sent += chunk;
+                }
+
+                long now = System.currentTimeMillis();
+                pendingBytes += n;
+                if (now - lastPublish >= ProxySession.STATS_PUBLISH_INTERVAL) {
+                    publish(true, pendingBytes, now);
+                    pendingBytes = 0;
+                    lastPublish = now;
+                }
+            }
+        } catch (IOException e) {
+            close(ProxySession.CLOSE_ERROR, "本地连接异常");
+        } catch (InterruptedException e) {
+            close(ProxySession.CLOSE_ERROR, null);
+        } finally {
+            publish(true, pendingBytes, System.currentTimeMillis());
+        }
+    }
+
+    // 等待发送窗口，流已关闭时返回 0
+    private synchronized int acquireWindow(int wanted) throws InterruptedException {
+        while (sendWindow <= 0 && !closed) {
+            wait();
+        }
+        if (closed) {
+            return 0;
+        }
+        int granted = Math.min(wanted, sendWindow);
+        sendWindow -= granted;
+        return granted;
+    }
+
+    // 链路 -> 本地连接
+    private void pumpToLocal() {
+        long pendingBytes = 0;
+        long lastPublish = 0;
+        int credit = 0;
+        try {
+            while (true) {
+                byte[] data = inbound.take();
+                if (data == CLOSED) {
+                    return;
+                }
+                if (data == EOF) {
+                    local.shutdownOutput();
+                    finish(false);
+                    return;
+                }
+                memory.add(-data.length);
+                memory.addBuffered(-data.length);
+                if (tap != null) {
+                    tap.data(false, data, 0, data.length);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    local.write(buffer);
+                }
+                synchronized (this) {
+                    queuedBytes -= data.length;
+                }
+
+                // 积累到四分之一窗口或队列已空时归还窗口，减少 WINDOW 帧数量
+                credit += data.length;
+                if (credit >= TunnelProtocol.INITIAL_WINDOW / 4 || inbound.isEmpty()) {
+                    link.send(TunnelProtocol.WINDOW, id, TunnelProtocol.intPayload(credit));
+                    credit = 0;
+                }
+
+                long now = System.currentTimeMillis();
+                pendingBytes += data.length;
+                if (now - lastPublish >= ProxySession.STATS_PUBLISH_INTERVAL) {
+                    publish(false, pendingBytes, now);
+                    pendingBytes = 0;
+                    lastPublish = now;
+                }
+            }
+        } catch (IOException e) {
+            close(ProxySession.CLOSE_ERROR, "本地连接异常");
+        } catch (InterruptedException e) {
+            close(ProxySession.CLOSE_ERROR, null);
+        } finally {
+            publish(false, pendingBytes, System.currentTimeMillis());
+        }
+    }
+
+    private void publish(boolean fromLocal, long bytes, long now) {
+        if (listener != null && bytes > 0) {
+            listener.onBytes(fromLocal, bytes, now);
+        }
+    }
+
+    // 一个方向已传递 FIN，两个方向都结束时流正常关闭
+    private void finish(boolean localSide) {
+        boolean done;
+        synchronized (this) {
+            if (localSide) {
+                localDone = true;
+            } else {
+                remoteDone = true;
+            }
+            done = localDone && remoteDone;
+        }
+        if (done) {
+            close(ProxySession.CLOSE_NORMAL, null);
+        }
+    }
+
+    /**
+     * @param rstMessage 不为 null 时向对端发送 RST
+     */
+    private void close(String reason, String rstMessage) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+            // 读线程随后退出，缓冲区不再使用
+            if (bufferCounted) {
+                memory.add(-TunnelProtocol.MAX_PAYLOAD);
+            }
+        }
+        link.remove(id);
+        if (rstMessage != null && !link.isClosed()) {
+            try {
+                link.send(TunnelProtocol.RST, id, TunnelProtocol.text(rstMessage));
+            } catch (IOException e) {
+                // 链路已断开
+            }
+        }
+        SocketChannel channel = local;
+        if (channel != null) {
+            safeClose(channel);
+        }
+        byte[] data;
+        while ((data = inbound.poll()) != null) {
+            memory.add(-data.length);
+            memory.addBuffered(-data.length);
+        }
+        inbound.add(CLOSED);
+        if (tap != null) {
+            tap.close();
+        }
+        if (listener != null) {
+            listener.onClosed(reason);
+        }
+    }
+
+    private static void safeClose(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+    }
+}
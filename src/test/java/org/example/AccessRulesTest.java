@@ -0,0 +1,94 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 访问控制规则与前缀树匹配测试
+ */
+public class AccessRulesTest extends TestCase {
+
+    public void testEmptyRulesAllowEverything() throws Exception {
+        AccessRules rules = AccessRules.allowAll();
+        assertTrue(rules.isAllowed(InetAddress.getByName("10.1.2.3")));
+        assertTrue(rules.isAllowed(InetAddress.getByName("2001:db8::1")));
+        assertEquals(2, rules.getDefaultAllowed());
+    }
+
+    public void testLongestPrefixWins() throws Exception {
+        AccessRules rules = AccessRules.build(list("10.0.0.0/8", "10.1.2.0/24"), list("10.1.0.0/16"),
+                list(), list());
+        assertTrue(rules.isAllowed(InetAddress.getByName("10.9.9.9")));
+        assertFalse(rules.isAllowed(InetAddress.getByName("10.1.9.9")));
+        assertTrue(rules.isAllowed(InetAddress.getByName("10.1.2.200")));
+        // 存在允许规则时，未匹配的地址被拒绝
+        assertFalse(rules.isAllowed(InetAddress.getByName("192.168.1.1")));
+        assertEquals(1, rules.getDefaultDenied());
+    }
+
+    public void testDenyOverridesAllowForSamePrefix() throws Exception {
+        AccessRules rules = AccessRules.build(list("192.168.1.0/24"), list("192.168.1.0/24"), list(), list());
+        assertFalse(rules.isAllowed(InetAddress.getByName("192.168.1.7")));
+    }
+
+    public void testMappingRulesCheckedBeforeEnvironmentRules() throws Exception {
+        AccessRules rules = AccessRules.build(list("172.16.5.5"), list(), list(), list("172.16.0.0/12"));
+        assertTrue(rules.isAllowed(InetAddress.getByName("172.16.5.5")));
+        assertFalse(rules.isAllowed(InetAddress.getByName("172.16.5.6")));
+    }
+
+    public void testIpv6Prefixes() throws Exception {
+        AccessRules rules = AccessRules.build(list(), list("2001:db8::/32", "::1"), list(), list());
+        assertFalse(rules.isAllowed(InetAddress.getByName("2001:db8:1234::1")));
+        assertFalse(rules.isAllowed(InetAddress.getByName("::1")));
+        assertTrue(rules.isAllowed(InetAddress.getByName("2001:db9::1")));
+        // IPv4 地址不受 IPv6 规则影响
+        assertTrue(rules.isAllowed(InetAddress.getByName("127.0.0.1")));
+    }
+
+    public void testZeroLengthPrefixMatchesAll() throws Exception {
+        AccessRules rules = AccessRules.build(list(), list(), list(), list("0.0.0.0/0"));
+        assertFalse(rules.isAllowed(InetAddress.getByName("8.8.8.8")));
+    }
+
+    public void testManyRulesStillMatchExactly() throws Exception {
+        List<String> deny = new ArrayList<>();
+        for (int i = 0; i < 4096; i++) {
+            deny.add("10." + (i >> 8) + "." + (i & 0xff) + ".0/24");
+        }
+        AccessRules rules = AccessRules.build(list(), deny, list(), list());
+        assertFalse(rules.isAllowed(InetAddress.getByName("10.15.255.1")));
+        assertTrue(rules.isAllowed(InetAddress.getByName("10.16.0.1")));
+    }
+
+    public void testHitCountersSurviveReplacement() throws Exception {
+        AccessRules first = AccessRules.build(list(), list("10.0.0.0/8"), list(), list());
+        first.isAllowed(InetAddress.getByName("10.0.0.1"));
+        first.isAllowed(InetAddress.getByName("10.0.0.2"));
+
+        AccessRules second = AccessRules.build(list(), list("10.0.0.0/8", "11.0.0.0/8"), list(), list())
+                .inheritHits(first);
+        assertEquals(2, second.getRules().get(0).getHits());
+        assertEquals(0, second.getRules().get(1).getHits());
+    }
+
+    public void testRejectsHostNamesAndBadPrefixes() {
+        for (String bad : Arrays.asList("example.com", "10.0.0.0/33", "::1/129", "10.0.0/8", "1.2.3.4/x")) {
+            try {
+                AccessRules.validate(bad);
+                fail("应拒绝: " + bad);
+            } catch (IllegalArgumentException expected) {
+                // 预期
+            }
+        }
+    }
+
+    private static List<String> list(String... values) {
+        return values.length == 0 ? Collections.emptyList() : Arrays.asList(values);
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 后端连接器测试：地址交错、错开并行连接与退避
+ */
+public class BackendConnectorTest extends TestCase {
+
+    public void testInterleavesAddressFamiliesStartingWithFirst() throws Exception {
+        InetAddress v6a = InetAddress.getByName("2001:db8::1");
+        InetAddress v6b = InetAddress.getByName("2001:db8::2");
+        InetAddress v4a = InetAddress.getByName("192.0.2.1");
+        InetAddress v4b = InetAddress.getByName("192.0.2.2");
+        InetAddress v4c = InetAddress.getByName("192.0.2.3");
+
+        List<InetAddress> ordered = BackendConnector.interleave(new InetAddress[]{v6a, v6b, v4a, v4b, v4c});
+        assertEquals(Arrays.asList(v6a, v4a, v6b, v4b, v4c), ordered);
+
+        ordered = BackendConnector.interleave(new InetAddress[]{v4a, v4b, v6a});
+        assertEquals(Arrays.asList(v4a, v6a, v4b), ordered);
+    }
+
+    public void testFallsBackToNextAddressWhenFirstRefuses() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            ConnectMetrics metrics = new ConnectMetrics();
+            BackendConnector connector = new BackendConnector("localhost", 0, metrics, () -> false);
+            // 127.0.0.2 同样是回环地址，但该端口没有监听，会立即被拒绝
+            List<InetAddress> addresses = Arrays.asList(InetAddress.getByName("127.0.0.2"),
+                    InetAddress.getByName("127.0.0.1"));
+
+            try (SocketChannel channel = connector.connectOnce(addresses, server.getLocalPort())) {
+                assertTrue(channel.isBlocking());
+                assertEquals("127.0.0.1",
+                        ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress());
+            }
+            assertEquals(2, metrics.getAttempts());
+            assertEquals(1, metrics.getFailures());
+            assertEquals(1, metrics.getFallbackWins());
+            assertEquals(Long.valueOf(1), metrics.getWinsByAddress().get("127.0.0.1"));
+        }
+    }
+
+    public void testRetriesWholeRoundBeforeGivingUp() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        ConnectMetrics metrics = new ConnectMetrics();
+        BackendConnector connector = new BackendConnector("127.0.0.1", 2, metrics, () -> false);
+        try {
+            connector.connect(port).close();
+            fail("端口没有监听，应连接失败");
+        } catch (java.io.IOException expected) {
+            // 预期
+        }
+        assertEquals(3, metrics.getAttempts());
+        assertEquals(2, metrics.getRetries());
+        assertEquals(0, metrics.getSuccesses());
+    }
+
+    public void testBackoffIsJitteredWithinBounds() {
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long ceiling = Math.min(2000, 100L << attempt);
+            for (int i = 0; i < 100; i++) {
+                long delay = BackendConnector.backoff(attempt);
+                assertTrue(delay >= ceiling / 2 && delay <= ceiling);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+/**
+ * 熔断器状态转换测试
+ */
+public class CircuitBreakerTest extends TestCase {
+
+    public void testOpensOnlyAfterMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(1000);
+        for (int i = 0; i < CircuitBreaker.MIN_CALLS - 1; i++) {
+            assertTrue(breaker.tryAcquire(0));
+            breaker.onFailure(0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.tryAcquire(0));
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(999));
+    }
+
+    public void testStaysClosedBelowFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker(1000);
+        for (int i = 0; i < CircuitBreaker.WINDOW_SIZE * 3; i++) {
+            assertTrue(breaker.tryAcquire(0));
+            if (i % 3 == 0) {
+                breaker.onFailure(0);
+            } else {
+                breaker.onSuccess();
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    public void testHalfOpenAllowsSingleProbe() {
+        CircuitBreaker breaker = openBreaker();
+
+        assertTrue(breaker.tryAcquire(1000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse("半开状态只放行一个探测连接", breaker.tryAcquire(1000));
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire(1000));
+    }
+
+    public void testFailedProbeReopens() {
+        CircuitBreaker breaker = openBreaker();
+
+        assertTrue(breaker.tryAcquire(1000));
+        breaker.onFailure(1000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(1999));
+        assertTrue(breaker.tryAcquire(2000));
+    }
+
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(1000);
+        for (int i = 0; i < CircuitBreaker.MIN_CALLS; i++) {
+            breaker.tryAcquire(0);
+            breaker.onFailure(0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
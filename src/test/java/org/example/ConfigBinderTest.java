@@ -0,0 +1,124 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONObject;
+import junit.framework.TestCase;
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 配置绑定测试
+ */
+public class ConfigBinderTest extends TestCase {
+    private final Map<String, List<ProxyConfig>> environments = new HashMap<>();
+    private final Map<String, EnvironmentOptions> environmentOptions = new HashMap<>();
+
+    public void testBindsBothEnvironmentForms() {
+        bind("{\"开发\": [{\"localPort\": 8080, \"remoteHost\": \"10.0.0.1\", \"remotePort\": 80, \"desc\": \"web\"},"
+                + " {\"localPort\": 9000, \"localPortEnd\": 9009, \"remoteHost\": \"10.0.0.2\", \"remotePort\": 9100,"
+                + " \"protocol\": \"udp\"}],"
+                + " \"测试\": {\"allow\": [\"10.0.0.0/8\", \" \"], \"socksWhitelist\": [\"*.example.com:443\"],"
+                + " \"mappings\": [{\"localPort\": 1080, \"protocol\": \"SOCKS5\", \"desc\": \"socks\"}]},"
+                + " \"空\": {}}");
+
+        List<ProxyConfig> dev = environments.get("开发");
+        assertEquals(2, dev.size());
+        assertEquals(new ProxyConfig(8080, "10.0.0.1", 80, "web"), dev.get(0));
+        ProxyConfig range = dev.get(1);
+        assertEquals(ProxyProtocol.UDP, range.getProtocol());
+        assertEquals(9009, range.getLocalPortEnd());
+        assertEquals("未命名代理", range.getDescription());
+        assertFalse(environmentOptions.containsKey("开发"));
+
+        assertEquals(ProxyProtocol.SOCKS5, environments.get("测试").get(0).getProtocol());
+        EnvironmentOptions test = environmentOptions.get("测试");
+        assertEquals(Arrays.asList("10.0.0.0/8"), test.getAllow());
+        assertEquals(Arrays.asList("*.example.com:443"), test.getSocksWhitelist());
+        assertTrue(environments.get("空").isEmpty());
+        assertTrue(environmentOptions.get("空").isDefault());
+    }
+
+    public void testOptionsRoundTrip() {
+        String mapping = "{\"localPort\": 8443, \"remoteHost\": \"backend\", \"remotePort\": 443,"
+                + " \"acceptors\": 4, \"connectRetries\": 0, \"allow\": [\"192.168.0.0/16\"], \"deny\": [\"192.168.1.0/24\"],"
+                + " \"socksUser\": \"u\", \"socksPassword\": \"p\", \"tunnel\": \" relay:7000 \", \"tunnelToken\": \"t\","
+                + " \"tunnelLinks\": 3, \"capture\": true, \"captureSegments\": 8,"
+                + " \"tlsKeystore\": \"server.p12\", \"tlsKeystorePassword\": \"secret\", \"tlsBackend\": true,"
+                + " \"tlsTruststore\": \"trust.p12\", \"tlsTruststorePassword\": \"changeit\", \"priority\": \"bulk\","
+                + " \"highWatermark\": 1048576, \"lowWatermark\": 4194304, \"slowConsumerTimeout\": 5,"
+                + " \"disconnectSlowConsumers\": true}";
+        bind("{\"env\": [" + mapping + "]}");
+
+        ProxyOptions actual = environments.get("env").get(0).getOptions();
+        assertEquals(4, actual.getAcceptors());
+        assertEquals(0, actual.getConnectRetries());
+        assertEquals(Arrays.asList("192.168.0.0/16"), actual.getAllow());
+        assertEquals(Arrays.asList("192.168.1.0/24"), actual.getDeny());
+        assertEquals("relay:7000", actual.getTunnel());
+        assertEquals(3, actual.getTunnelLinks());
+        assertTrue(actual.isCapture());
+        assertEquals(8, actual.getCaptureSegments());
+        assertEquals("server.p12", actual.getTls().getKeystore());
+        assertTrue(actual.getTls().isBackend());
+        assertEquals("changeit", actual.getTls().getTruststorePassword());
+        assertEquals(PriorityClass.BULK, actual.getPriority());
+        // 低水位不超过高水位
+        assertEquals(1048576, actual.getFlowControl().getLowWatermark());
+        assertTrue(actual.getFlowControl().isDisconnectSlowConsumers());
+        assertEquals(5, actual.getFlowControl().getSlowConsumerTimeout());
+
+        // 保存后按对话框的方式读回，结果不变
+        JSONObject saved = new JSONObject();
+        actual.writeTo(saved);
+        assertEquals(actual, ProxyTestSupport.options(saved));
+        assertEquals(ProxyOptions.DEFAULT, ConfigBinder.readOptions("{}"));
+    }
+
+    public void testUnknownFieldsAreSkipped() {
+        bind("{\"env\": {\"comment\": {\"nested\": [1, 2, {\"x\": null}]}, \"mappings\": [{\"localPort\": 80,"
+                + " \"future\": [\"a\", {\"b\": true}], \"remoteHost\": \"h\", \"remotePort\": 81, \"allow\": null}]}}");
+        ProxyConfig config = environments.get("env").get(0);
+        assertEquals(80, config.getLocalPort());
+        assertEquals("h", config.getRemoteHost());
+        assertEquals(81, config.getRemotePort());
+        assertEquals(ProxyOptions.DEFAULT, config.getOptions());
+    }
+
+    public void testInvalidRulesAreRejected() {
+        try {
+            bind("{\"env\": [{\"localPort\": 80, \"remoteHost\": \"h\", \"remotePort\": 81, \"allow\": [\"10.0.0.0/33\"]}]}");
+            fail("应拒绝无效的 CIDR");
+        } catch (IllegalArgumentException expected) {
+            // 预期
+        }
+        try {
+            bind("{\"env\": \"mappings\"}");
+            fail("应拒绝无效的环境");
+        } catch (IllegalArgumentException expected) {
+            // 预期
+        }
+    }
+
+    public void testMappingsWithInvalidPortsAreSkipped() {
+        List<String> skipped = bind("{\"env\": [{\"localPort\": 9010, \"localPortEnd\": 9000, \"remoteHost\": \"h\","
+                + " \"remotePort\": 80, \"desc\": \"反向区间\"},"
+                + " {\"localPort\": 65530, \"localPortEnd\": 65539, \"remoteHost\": \"h\", \"remotePort\": 80},"
+                + " {\"localPort\": 8000, \"localPortEnd\": 8009, \"remoteHost\": \"h\", \"remotePort\": 65530},"
+                + " {\"localPort\": 1080, \"protocol\": \"SOCKS5\", \"desc\": \"socks\"},"
+                + " {\"localPort\": 8080, \"remoteHost\": \"h\", \"remotePort\": 80, \"desc\": \"ok\"}]}");
+        assertEquals(3, skipped.size());
+        assertTrue(skipped.get(0).contains("反向区间"));
+        List<ProxyConfig> env = environments.get("env");
+        assertEquals(2, env.size());
+        assertEquals(ProxyProtocol.SOCKS5, env.get(0).getProtocol());
+        assertEquals("ok", env.get(1).getDescription());
+    }
+
+    private List<String> bind(String json) {
+        return ConfigBinder.bind(json.getBytes(StandardCharsets.UTF_8), environments, environmentOptions);
+    }
+}
@@ -0,0 +1,54 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * SOCKS5 目标白名单测试
+ */
+public class DestinationWhitelistTest extends TestCase {
+
+    public void testHostSuffixAndPortRules() {
+        DestinationWhitelist whitelist = DestinationWhitelist.build(Arrays.asList(
+                "db.internal:5432", "*.svc.local:8000-8999", "cache.internal"));
+
+        assertTrue(whitelist.isAllowed("DB.internal", null, 5432));
+        assertFalse(whitelist.isAllowed("db.internal", null, 5433));
+        assertTrue(whitelist.isAllowed("api.svc.local", null, 8080));
+        assertFalse(whitelist.isAllowed("svc.local", null, 8080));
+        assertFalse(whitelist.isAllowed("api.svc.local", null, 9000));
+        assertTrue(whitelist.isAllowed("cache.internal", null, 6379));
+        assertFalse(whitelist.isAllowed("other.internal", null, 6379));
+    }
+
+    public void testCidrOnlyMatchesAddressRequests() throws Exception {
+        DestinationWhitelist whitelist = DestinationWhitelist.build(Arrays.asList(
+                "10.0.0.0/8:*", "[fd00::/8]:443"));
+
+        assertTrue(whitelist.isAllowed("10.1.2.3", InetAddress.getByName("10.1.2.3"), 22));
+        assertFalse(whitelist.isAllowed("11.1.2.3", InetAddress.getByName("11.1.2.3"), 22));
+        assertTrue(whitelist.isAllowed("fd00::1", InetAddress.getByName("fd00::1"), 443));
+        assertFalse(whitelist.isAllowed("fd00::1", InetAddress.getByName("fd00::1"), 80));
+        // 按域名请求时不解析后匹配 CIDR
+        assertFalse(whitelist.isAllowed("host.example", null, 22));
+    }
+
+    public void testEmptyWhitelistDeniesEverything() {
+        assertFalse(DestinationWhitelist.EMPTY.isAllowed("db.internal", null, 5432));
+        assertTrue(DestinationWhitelist.build(Collections.singletonList("*")).isAllowed("any.host", null, 1));
+    }
+
+    public void testInvalidRulesAreRejected() {
+        for (String rule : Arrays.asList("db.internal:abc", "10.0.0.0/40", "[fd00::/8", ":443")) {
+            try {
+                DestinationWhitelist.validate(rule);
+                fail("应拒绝规则: " + rule);
+            } catch (IllegalArgumentException expected) {
+                // 预期
+            }
+        }
+    }
+}
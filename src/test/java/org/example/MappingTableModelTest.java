@@ -0,0 +1,115 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.example.TCPProxyManagerGUI.ProxyConfig;
+
+import javax.swing.event.TableModelEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 映射表格模型测试
+ */
+public class MappingTableModelTest extends TestCase {
+    private final MappingTableModel model = new MappingTableModel();
+
+    @Override
+    protected void setUp() {
+        List<ProxyConfig> mappings = new ArrayList<>();
+        mappings.add(new ProxyConfig(8080, "web.internal", 80, "Web 前端"));
+        mappings.add(new ProxyConfig(9000, 9009, "10.0.0.2", 9100, "数据库集群", ProxyProtocol.TCP, ProxyOptions.DEFAULT));
+        mappings.add(new ProxyConfig(2222, "jump.internal", 22, "跳板机 SSH"));
+        mappings.add(new ProxyConfig(1080, 1080, "", 0, "socks", ProxyProtocol.SOCKS5, ProxyOptions.DEFAULT));
+        model.setMappings(mappings, new HashMap<>());
+    }
+
+    public void testRowsAreParsedOnce() {
+        assertEquals(4, model.getRowCount());
+        assertEquals(new ProxyConfig(8080, "web.internal", 80, "Web 前端"), model.getConfig(0));
+        assertEquals("9000-9009", model.getValueAt(1, MappingTableModel.COL_LOCAL_PORT));
+        assertEquals(ProxyProtocol.SOCKS5, model.getConfig(3).getProtocol());
+        assertEquals(ProxyState.INIT, model.getValueAt(0, MappingTableModel.COL_STATUS));
+
+        // 编辑后重新解析，格式错误时没有配置
+        model.setValueAt("abc", 0, MappingTableModel.COL_LOCAL_PORT);
+        assertNull(model.getConfig(0));
+        model.setValueAt("8081", 0, MappingTableModel.COL_LOCAL_PORT);
+        assertEquals(8081, model.getConfig(0).getLocalPort());
+        assertNull(model.getConfig(4));
+    }
+
+    public void testSearchMatchesTextAndPortRanges() {
+        model.setQuery("INTERNAL");
+        assertVisible(0, 2);
+        model.setQuery("集群");
+        assertVisible(1);
+        // 端口号匹配包含它的区间
+        model.setQuery("9005");
+        assertVisible(1);
+        model.setQuery("22");
+        assertVisible(2);
+        model.setQuery("  ");
+        assertVisible(0, 1, 2, 3);
+    }
+
+    public void testSearchFollowsEditsAndRemovals() {
+        model.setQuery("jump");
+        assertVisible(2);
+        model.setValueAt("bastion.internal", 2, MappingTableModel.COL_REMOTE_HOST);
+        assertVisible();
+        model.setValueAt("jump.example.com", 0, MappingTableModel.COL_REMOTE_HOST);
+        assertVisible(0);
+
+        model.removeRows(Collections.singletonList(0));
+        model.setQuery("bastion");
+        assertVisible(1);
+        model.addMapping("jumpbox");
+        model.setQuery("jump");
+        assertVisible(3);
+    }
+
+    public void testBulkSelectionAffectsVisibleRows() {
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+        model.setQuery("internal");
+        model.setAllChecked(true);
+        assertEquals(Arrays.asList(0, 2), model.getCheckedRows());
+        assertEquals(1, events.size());
+        assertEquals(MappingTableModel.COL_SELECT, events.get(0).getColumn());
+
+        model.setQuery(null);
+        model.setAllChecked(true);
+        assertEquals(Arrays.asList(0, 1, 2, 3), model.getCheckedRows());
+        model.removeRows(Arrays.asList(1, 3));
+        assertEquals(Arrays.asList(0, 1), model.getCheckedRows());
+        assertEquals("跳板机 SSH", model.getValueAt(1, MappingTableModel.COL_DESC));
+        model.setAllChecked(false);
+        assertTrue(model.getCheckedRows().isEmpty());
+    }
+
+    public void testSavedConfigsAreTrimmed() {
+        model.setValueAt(" Web 前端 ", 0, MappingTableModel.COL_DESC);
+        model.addMapping("未命名");
+        List<ProxyConfig> configs = model.toConfigs();
+        assertEquals(4, configs.size());
+        assertEquals("Web 前端", configs.get(0).getDescription());
+        assertEquals(" Web 前端 ", model.getConfig(0).getDescription());
+    }
+
+    private void assertVisible(int... rows) {
+        List<Integer> expected = new ArrayList<>();
+        for (int row : rows) {
+            expected.add(row);
+        }
+        List<Integer> visible = new ArrayList<>();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            if (model.isVisible(row)) {
+                visible.add(row);
+            }
+        }
+        assertEquals(expected, visible);
+    }
+}
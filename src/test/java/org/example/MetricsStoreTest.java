@@ -0,0 +1,72 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 时间序列存储测试
+ */
+public class MetricsStoreTest extends TestCase {
+    private Path file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = Files.createTempFile("proxyer-metrics", ".ts");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    public void testRecordsIntoEveryArchive() throws Exception {
+        long t = 1_700_000_000L;
+        try (MetricsStore store = MetricsStore.open(file)) {
+            store.record(t, 100, 1000, 1);
+            store.record(t + 1, 50, 500, 0);
+
+            long[][] seconds = store.read(0, t + 1);
+            assertEquals(MetricsStore.SLOTS[0], seconds.length);
+            assertEquals(100, seconds[seconds.length - 2][MetricsStore.FIELD_BYTES_FROM_CLIENT]);
+            assertEquals(500, seconds[seconds.length - 1][MetricsStore.FIELD_BYTES_TO_CLIENT]);
+
+            // 两次记录落在同一分钟内时合并
+            long[][] minutes = store.read(1, t + 1);
+            long[] minute = minutes[minutes.length - 1];
+            if (t / 60 == (t + 1) / 60) {
+                assertEquals(150, minute[MetricsStore.FIELD_BYTES_FROM_CLIENT]);
+                assertEquals(1, minute[MetricsStore.FIELD_SESSIONS]);
+            }
+        }
+    }
+
+    public void testStaleSlotIsResetAfterWrapAround() throws Exception {
+        long t = 1_700_000_000L;
+        try (MetricsStore store = MetricsStore.open(file)) {
+            store.record(t, 7, 7, 7);
+            // 一整轮之后写入同一槽位，旧值不能累加进来
+            long later = t + MetricsStore.SLOTS[0];
+            store.record(later, 1, 0, 0);
+
+            long[][] seconds = store.read(0, later);
+            assertEquals(1, seconds[seconds.length - 1][MetricsStore.FIELD_BYTES_FROM_CLIENT]);
+            assertEquals(0, seconds[seconds.length - 1][MetricsStore.FIELD_SESSIONS]);
+            // 超出归档范围的旧数据不再返回
+            assertEquals(0, store.read(0, later + 10)[0][MetricsStore.FIELD_BYTES_TO_CLIENT]);
+        }
+    }
+
+    public void testDataSurvivesReopen() throws Exception {
+        long t = 1_700_000_000L;
+        try (MetricsStore store = MetricsStore.open(file)) {
+            store.record(t, 42, 0, 0);
+        }
+        assertEquals(MetricsStore.fileSize(), Files.size(file));
+        try (MetricsStore store = MetricsStore.open(file)) {
+            long[][] hours = store.read(2, t);
+            assertEquals(42, hours[hours.length - 1][MetricsStore.FIELD_BYTES_FROM_CLIENT]);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+/**
+ * 全局端口占用索引测试
+ */
+public class PortRegistryTest extends TestCase {
+
+    public void testConflictingRangeIsRejectedWithoutPartialClaim() {
+        PortRegistry<String> registry = new PortRegistry<>();
+        assertNull(registry.claim(ProxyProtocol.TCP, 10001, 10001, "环境1"));
+
+        assertEquals("环境1", registry.claim(ProxyProtocol.TCP, 10000, 10005, "环境2"));
+        assertNull("冲突时不应占用区间内的其他端口", registry.ownerOf(ProxyProtocol.TCP, 10000));
+        assertNull(registry.ownerOf(ProxyProtocol.TCP, 10005));
+    }
+
+    public void testTcpAndUdpPortsAreIndependent() {
+        PortRegistry<String> registry = new PortRegistry<>();
+        assertNull(registry.claim(ProxyProtocol.TCP, 53, 53, "tcp"));
+        assertNull(registry.claim(ProxyProtocol.UDP, 53, 53, "udp"));
+        assertEquals("udp", registry.ownerOf(ProxyProtocol.UDP, 53));
+    }
+
+    public void testReleaseOnlyClearsOwnClaim() {
+        PortRegistry<Object> registry = new PortRegistry<>();
+        Object first = new Object();
+        Object second = new Object();
+        assertNull(registry.claim(ProxyProtocol.TCP, 20000, 20002, first));
+        registry.release(ProxyProtocol.TCP, 20000, 20002, first);
+        assertNull(registry.claim(ProxyProtocol.TCP, 20000, 20002, second));
+
+        // 旧的占用者延迟释放，不影响新的占用
+        registry.release(ProxyProtocol.TCP, 20000, 20002, first);
+        assertSame(second, registry.ownerOf(ProxyProtocol.TCP, 20001));
+    }
+}
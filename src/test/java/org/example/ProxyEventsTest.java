@@ -0,0 +1,67 @@
+package org.example;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * JFR 自定义事件测试
+ */
+public class ProxyEventsTest extends TestCase {
+
+    public void testEventsAreRecorded() throws Exception {
+        Path file = Files.createTempFile("proxyer-test", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ProxyEvents.AcceptEvent.class);
+            recording.enable(ProxyEvents.SessionCloseEvent.class);
+            recording.start();
+
+            InetSocketAddress client = new InetSocketAddress("127.0.0.1", 50000);
+            ProxyEvents.accept(30000, client, false);
+            ProxySession session = new ProxySession(client, "10.0.0.1:80", () -> { });
+            session.addBytesFromClient(10, System.currentTimeMillis());
+            session.setCloseReason(ProxySession.CLOSE_NORMAL);
+            ProxyEvents.sessionClosed(30000, session, session.getCloseReason());
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        try {
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            RecordedEvent accept = find(events, "org.example.proxyer.Accept");
+            assertEquals(30000, accept.getInt("localPort"));
+            assertEquals("127.0.0.1:50000", accept.getString("client"));
+            assertFalse(accept.getBoolean("allowed"));
+
+            RecordedEvent close = find(events, "org.example.proxyer.SessionClose");
+            assertEquals(10, close.getLong("bytesFromClient"));
+            assertEquals("10.0.0.1:80", close.getString("backend"));
+            assertEquals(ProxySession.CLOSE_NORMAL, close.getString("reason"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testEventsAreSkippedWithoutRecording() {
+        // 未开启记录时不应抛出异常，也不会填充字段
+        ProxyEvents.stateChange(30000, ProxyState.STOPPED, ProxyState.RUNNING);
+        ProxyEvents.criticalError(30000, new java.io.IOException("test"), false);
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        fail("未找到事件: " + name);
+        return null;
+    }
+}
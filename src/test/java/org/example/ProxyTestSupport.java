@@ -0,0 +1,46 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONObject;
+import junit.framework.Assert;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 代理测试共用的启动步骤和选项构造
+ */
+final class ProxyTestSupport {
+    private ProxyTestSupport() {
+    }
+
+    // 取一个当前空闲的本地端口
+    static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    // 按配置文件中的字段读取高级选项
+    static ProxyOptions options(JSONObject json) {
+        return ConfigBinder.readOptions(json.toJSONString());
+    }
+
+    // 在后台线程运行代理，等待进入运行状态
+    static void run(ForwardingProxy proxy) throws InterruptedException {
+        Thread runner = new Thread(() -> {
+            try {
+                proxy.start();
+            } catch (IOException e) {
+                // 停止代理时抛出
+            }
+        });
+        runner.setDaemon(true);
+        runner.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (proxy.getState() != ProxyState.RUNNING) {
+            Assert.assertTrue("代理未能启动", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 转发引擎测试
+ */
+public class RelayEngineTest extends TestCase {
+    private ServerSocketChannel server;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testIdleSessionHoldsNoBuffer() throws Exception {
+        SocketChannel[] clientPair = connectedPair();
+        SocketChannel[] backendPair = connectedPair();
+        RecordingListener listener = new RecordingListener();
+        RelayMemory memory = new RelayMemory();
+        ProxySession session = newSession();
+        RelayEngine.shared().register(clientPair[1], backendPair[0], session, listener, memory);
+
+        SocketChannel client = clientPair[0];
+        SocketChannel backend = backendPair[1];
+        client.write(ByteBuffer.wrap("ping".getBytes()));
+        assertEquals("ping", readString(backend, 4));
+        backend.write(ByteBuffer.wrap("pong".getBytes()));
+        assertEquals("pong", readString(client, 4));
+
+        // 小数据一次写完，会话不持有任何缓冲区
+        assertEquals(0, memory.getCurrent());
+        assertEquals(0, memory.getPeak());
+        assertTrue(session.getTimeToFirstByte() >= 0);
+
+        client.close();
+        backend.close();
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(4, listener.fromClient.get());
+        assertEquals(4, listener.toClient.get());
+    }
+
+    public void testBlockedDestinationGrowsAndThenReleasesBuffer() throws Exception {
+        SocketChannel[] clientPair = connectedPair();
+        SocketChannel[] backendPair = connectedPair();
+        RecordingListener listener = new RecordingListener();
+        RelayMemory memory = new RelayMemory();
+        ProxySession session = newSession();
+        // 缩小后端方向的内核缓冲区，让转发引擎在客户端积压的数据读完之前就写不下
+        backendPair[0].setOption(StandardSocketOptions.SO_SNDBUF, 32 * 1024);
+        backendPair[1].setOption(StandardSocketOptions.SO_RCVBUF, 32 * 1024);
+
+        int total = 16 * 1024 * 1024;
+        SocketChannel client = clientPair[0];
+        AtomicLong written = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            try {
+                ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+                for (int sent = 0; sent < total; sent += chunk.capacity()) {
+                    chunk.clear();
+                    while (chunk.hasRemaining()) {
+                        written.addAndGet(client.write(chunk));
+                    }
+                }
+                client.shutdownOutput();
+            } catch (IOException e) {
+                // 测试失败时由读取端断言
+            }
+        });
+        writer.start();
+        // 客户端的数据先积压在内核缓冲区中，积压量足够让转发引擎注册后连续读满多次再开始转发
+        long deadline = System.currentTimeMillis() + 5000;
+        while (written.get() < 64 * 1024 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(written.get() >= 64 * 1024);
+        RelayEngine.shared().register(clientPair[1], backendPair[0], session, listener, memory);
+
+        // 后端暂不读取，转发引擎写不下时保留缓冲区，连续读满后缓冲区已经加倍
+        deadline = System.currentTimeMillis() + 5000;
+        // 后端仍可能随后腾出空间让缓冲区提前归还，所以按峰值判断
+        while (memory.getPeak() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(memory.getPeak() > RelayEngine.MIN_BUFFER_SIZE);
+
+        SocketChannel backend = backendPair[1];
+        ByteBuffer sink = ByteBuffer.allocate(256 * 1024);
+        long received = 0;
+        int n;
+        while ((n = backend.read(sink)) != -1) {
+            received += n;
+            sink.clear();
+        }
+        assertEquals(total, received);
+        writer.join(5000);
+
+        // 源端结束且数据写完后缓冲区全部归还
+        assertEquals(0, memory.getCurrent());
+        backend.close();
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(ProxySession.CLOSE_NORMAL, session.getCloseReason());
+        assertEquals(total, listener.fromClient.get());
+    }
+
+    public void testKillFromAnotherThreadClosesBothSides() throws Exception {
+        SocketChannel[] clientPair = connectedPair();
+        SocketChannel[] backendPair = connectedPair();
+        RecordingListener listener = new RecordingListener();
+        RelayEngine.Relay relay = RelayEngine.shared().register(clientPair[1], backendPair[0], newSession(),
+                listener, new RelayMemory());
+
+        relay.requestClose(ProxySession.CLOSE_KILLED);
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertTrue(relay.isClosed());
+        assertEquals(-1, clientPair[0].read(ByteBuffer.allocate(16)));
+        assertEquals(-1, backendPair[1].read(ByteBuffer.allocate(16)));
+        clientPair[0].close();
+        backendPair[1].close();
+    }
+
+    public void testInteractiveSessionIsServedAheadOfSaturatedBulkSessions() throws Exception {
+        RelayEngine engine = RelayEngine.shared();
+        long interactiveBefore = engine.getServed(PriorityClass.INTERACTIVE);
+        List<SocketChannel> channels = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        AtomicLong bulkReceived = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            // 批量会话两端都不停读写，转发引擎始终有数据可转发
+            for (int i = 0; i < 4; i++) {
+                SocketChannel[] clientPair = connectedPair();
+                SocketChannel[] backendPair = connectedPair();
+                channels.addAll(Arrays.asList(clientPair[0], backendPair[1]));
+                engine.register(clientPair[1], backendPair[0], newSession(), new RecordingListener(),
+                        new RelayMemory(), null, PriorityClass.BULK, FlowControl.DEFAULT);
+                threads.add(startLoop(running, () -> {
+                    ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+                    while (chunk.hasRemaining()) {
+                        clientPair[0].write(chunk);
+                    }
+                }));
+                ByteBuffer sink = ByteBuffer.allocate(64 * 1024);
+                threads.add(startLoop(running, () -> {
+                    sink.clear();
+                    bulkReceived.addAndGet(Math.max(0, backendPair[1].read(sink)));
+                }));
+            }
+
+            SocketChannel[] clientPair = connectedPair();
+            SocketChannel[] backendPair = connectedPair();
+            channels.addAll(Arrays.asList(clientPair[0], backendPair[1]));
+            engine.register(clientPair[1], backendPair[0], newSession(), new RecordingListener(), new RelayMemory(),
+                    null, PriorityClass.INTERACTIVE, FlowControl.DEFAULT);
+            for (int i = 0; i < 50; i++) {
+                clientPair[0].write(ByteBuffer.wrap("k".getBytes()));
+                assertEquals("k", readString(backendPair[1], 1));
+                backendPair[1].write(ByteBuffer.wrap("e".getBytes()));
+                assertEquals("e", readString(clientPair[0], 1));
+            }
+        } finally {
+            running.set(false);
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+            for (Thread thread : threads) {
+                thread.join(5000);
+            }
+        }
+
+        assertTrue(bulkReceived.get() > 0);
+        assertTrue(engine.getServed(PriorityClass.INTERACTIVE) - interactiveBefore >= 100);
+        // 交互会话每轮最先处理，批量会话排在它和其他批量会话之后
+        assertTrue(engine.getAverageQueueMillis(PriorityClass.INTERACTIVE)
+                < engine.getAverageQueueMillis(PriorityClass.BULK));
+    }
+
+    public void testBufferedDataStaysBelowHighWatermark() throws Exception {
+        SocketChannel[] clientPair = connectedPair();
+        SocketChannel[] backendPair = connectedPair();
+        RecordingListener listener = new RecordingListener();
+        RelayMemory memory = new RelayMemory();
+        ProxySession session = newSession();
+        backendPair[0].setOption(StandardSocketOptions.SO_SNDBUF, 32 * 1024);
+        backendPair[1].setOption(StandardSocketOptions.SO_RCVBUF, 32 * 1024);
+        FlowControl flowControl = FlowControl.create(128 * 1024, 32 * 1024, 0, false);
+        RelayEngine.shared().register(clientPair[1], backendPair[0], session, listener, memory, null,
+                PriorityClass.NORMAL, flowControl);
+
+        int total = 8 * 1024 * 1024;
+        SocketChannel client = clientPair[0];
+        Thread writer = startWriter(client, total);
+
+        // 后端暂不读取，积压达到高水位后暂停读取客户端
+        long deadline = System.currentTimeMillis() + 5000;
+        while (memory.getPauses() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, memory.getPauses());
+        Thread.sleep(200);
+        assertTrue(memory.getBufferedPeak() >= flowControl.getHighWatermark());
+        assertTrue(memory.getBufferedPeak() < flowControl.getHighWatermark() + RelayEngine.MAX_BUFFER_SIZE);
+
+        SocketChannel backend = backendPair[1];
+        ByteBuffer sink = ByteBuffer.allocate(256 * 1024);
+        long received = 0;
+        int n;
+        while ((n = backend.read(sink)) != -1) {
+            received += n;
+            sink.clear();
+        }
+        assertEquals(total, received);
+        writer.join(5000);
+
+        // 积压降到低水位后恢复读取，数据全部写出后不再有积压
+        assertTrue(memory.getPauses() > 1);
+        assertEquals(0, memory.getBuffered());
+        assertEquals(0, memory.getCurrent());
+        backend.close();
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(ProxySession.CLOSE_NORMAL, session.getCloseReason());
+        assertEquals(0, memory.getSlowConsumers());
+    }
+
+    public void testSlowConsumerIsDisconnected() throws Exception {
+        SocketChannel[] clientPair = connectedPair();
+        SocketChannel[] backendPair = connectedPair();
+        RecordingListener listener = new RecordingListener();
+        RelayMemory memory = new RelayMemory();
+        ProxySession session = newSession();
+        FlowControl flowControl = FlowControl.create(RelayEngine.MIN_BUFFER_SIZE, 0, 1, true);
+        RelayEngine.shared().register(clientPair[1], backendPair[0], session, listener, memory, null,
+                PriorityClass.NORMAL, flowControl);
+
+        // 后端始终不读取
+        Thread writer = startWriter(clientPair[0], 64 * 1024 * 1024);
+        assertTrue(listener.closed.await(10, TimeUnit.SECONDS));
+        assertEquals(ProxySession.CLOSE_SLOW_CONSUMER, session.getCloseReason());
+        assertEquals(Boolean.FALSE, listener.slowClientSide);
+        assertEquals(1, memory.getSlowConsumers());
+        assertEquals(1, memory.getSlowDisconnects());
+        // 断开时丢弃积压的数据
+        assertEquals(0, memory.getBuffered());
+        clientPair[0].close();
+        backendPair[1].close();
+        writer.join(5000);
+    }
+
+    // 写完后半关闭，通道关闭时结束
+    private static Thread startWriter(SocketChannel channel, int total) {
+        Thread writer = new Thread(() -> {
+            try {
+                ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+                for (int sent = 0; sent < total; sent += chunk.capacity()) {
+                    chunk.clear();
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+                channel.shutdownOutput();
+            } catch (IOException e) {
+                // 测试失败时由读取端断言
+            }
+        });
+        writer.setDaemon(true);
+        writer.start();
+        return writer;
+    }
+
+    private interface IoStep {
+        void run() throws IOException;
+    }
+
+    private static Thread startLoop(AtomicBoolean running, IoStep step) {
+        Thread thread = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    step.run();
+                }
+            } catch (IOException e) {
+                // 测试结束关闭通道
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // [0] 为测试端，[1] 为交给转发引擎的一端
+    private SocketChannel[] connectedPair() throws IOException {
+        SocketChannel outer = SocketChannel.open(server.getLocalAddress());
+        SocketChannel inner = server.accept();
+        return new SocketChannel[]{outer, inner};
+    }
+
+    private static ProxySession newSession() {
+        return new ProxySession(new InetSocketAddress(InetAddress.getLoopbackAddress(), 1), "backend", () -> {
+        });
+    }
+
+    private static String readString(SocketChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position());
+    }
+
+    private static class RecordingListener implements RelayEngine.Listener {
+        final AtomicLong fromClient = new AtomicLong();
+        final AtomicLong toClient = new AtomicLong();
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile Boolean slowClientSide;
+
+        @Override
+        public void onBytes(ProxySession session, boolean fromClient, long bytes, long now) {
+            (fromClient ? this.fromClient : toClient).addAndGet(bytes);
+        }
+
+        @Override
+        public void onClosed(ProxySession session) {
+            closed.countDown();
+        }
+
+        @Override
+        public void onSlowConsumer(ProxySession session, boolean clientSide, long buffered, boolean disconnected) {
+            slowClientSide = clientSide;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONObject;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleTCPProxy 半关闭转发测试
+ */
+public class SimpleTCPProxyTest extends TestCase {
+
+    private ServerSocket backend;
+    private SimpleTCPProxy proxy;
+    private int proxyPort;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (proxy != null) {
+            proxy.stop();
+        }
+        if (backend != null) {
+            backend.close();
+        }
+    }
+
+    /**
+     * 客户端发送完请求后半关闭，后端读到EOF才开始响应，响应必须完整送达
+     */
+    public void testClientHalfCloseKeepsResponseDirection() throws Exception {
+        startBackend(socket -> {
+            byte[] request = readFully(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            out.write(request);
+            out.flush();
+        });
+        startProxy();
+
+        byte[] payload = randomBytes(2 * 1024 * 1024);
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(10000);
+            OutputStream out = client.getOutputStream();
+            out.write(payload);
+            out.flush();
+            client.shutdownOutput();
+
+            byte[] response = readFully(client.getInputStream());
+            assertEquals(payload.length, response.length);
+            assertTrue(Arrays.equals(payload, response));
+        }
+    }
+
+    /**
+     * 后端先发送完数据并半关闭，客户端之后上传的数据仍需完整送达后端
+     */
+    public void testBackendHalfCloseKeepsRequestDirection() throws Exception {
+        byte[] greeting = randomBytes(256 * 1024);
+        BlockingQueue<byte[]> received = new ArrayBlockingQueue<>(4);
+        startBackend(socket -> {
+            OutputStream out = socket.getOutputStream();
+            out.write(greeting);
+            out.flush();
+            socket.shutdownOutput();
+            byte[] data = readFully(socket.getInputStream());
+            // 代理启动时的连通性测试连接不会上传数据
+            if (data.length > 0) {
+                received.add(data);
+            }
+        });
+        startProxy();
+
+        byte[] upload = randomBytes(1024 * 1024);
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(10000);
+            assertTrue(Arrays.equals(greeting, readFully(client.getInputStream())));
+
+            OutputStream out = client.getOutputStream();
+            out.write(upload);
+            out.flush();
+            client.shutdownOutput();
+
+            byte[] uploaded = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(uploaded);
+            assertTrue(Arrays.equals(upload, uploaded));
+        }
+    }
+
+    /**
+     * 端口区间映射：本地区间内每个端口转发到相同偏移的远程端口
+     */
+    public void testPortRangeMapsEachPortWithOffset() throws Exception {
+        int size = 4;
+        List<ServerSocket> backends = bindConsecutive(size);
+        List<ServerSocket> probes = bindConsecutive(size);
+        int proxyBase = probes.get(0).getLocalPort();
+        for (ServerSocket probe : probes) {
+            probe.close();
+        }
+
+        try {
+            for (int i = 0; i < size; i++) {
+                ServerSocket server = backends.get(i);
+                int index = i;
+                Thread acceptor = new Thread(() -> {
+                    while (!server.isClosed()) {
+                        try (Socket socket = server.accept()) {
+                            socket.getOutputStream().write(index);
+                        } catch (IOException e) {
+                            return;
+                        }
+                    }
+                });
+                acceptor.setDaemon(true);
+                acceptor.start();
+            }
+
+            proxy = new SimpleTCPProxy(proxyBase, proxyBase + size - 1, "127.0.0.1", backends.get(0).getLocalPort(),
+                    ProxyOptions.DEFAULT);
+            ProxyTestSupport.run(proxy);
+
+            for (int i = size - 1; i >= 0; i--) {
+                try (Socket client = new Socket("127.0.0.1", proxyBase + i)) {
+                    client.setSoTimeout(5000);
+                    assertEquals(i, client.getInputStream().read());
+                }
+            }
+        } finally {
+            for (ServerSocket server : backends) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * 多个 acceptor 通过 SO_REUSEPORT 监听同一端口，所有连接都能正常转发
+     */
+    public void testMultipleAcceptorsShareOnePort() throws Exception {
+        startBackend(socket -> {
+            byte[] request = readFully(socket.getInputStream());
+            socket.getOutputStream().write(request);
+        });
+        proxyPort = ProxyTestSupport.freePort();
+        JSONObject options = new JSONObject();
+        options.put("acceptors", 4);
+        proxy = new SimpleTCPProxy(proxyPort, proxyPort, "127.0.0.1", backend.getLocalPort(),
+                ProxyTestSupport.options(options));
+        ProxyTestSupport.run(proxy);
+        assertEquals(SimpleTCPProxy.isReusePortSupported() ? 4 : 1, proxy.getAcceptorCount());
+
+        for (int i = 0; i < 32; i++) {
+            byte[] payload = randomBytes(1024 + i);
+            try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+                client.setSoTimeout(5000);
+                client.getOutputStream().write(payload);
+                client.shutdownOutput();
+                assertTrue(Arrays.equals(payload, readFully(client.getInputStream())));
+            }
+        }
+    }
+
+    /**
+     * 访问控制规则在运行中替换后，新连接立即按新规则处理
+     */
+    public void testAccessRulesApplyWithoutRestart() throws Exception {
+        startBackend(socket -> socket.getOutputStream().write(42));
+        startProxy();
+
+        assertEquals(42, readFirstByte());
+
+        proxy.setAccessRules(AccessRules.build(Collections.emptyList(), Collections.singletonList("127.0.0.0/8"),
+                Collections.emptyList(), Collections.emptyList()));
+        assertEquals(-1, readFirstByte());
+        assertEquals(1, proxy.getAccessRules().getRules().get(0).getHits());
+
+        proxy.setAccessRules(AccessRules.allowAll());
+        assertEquals(42, readFirstByte());
+    }
+
+    /**
+     * 会话表记录客户端、字节数和首字节耗时，断开会话会关闭两端连接
+     */
+    public void testSessionTableTracksAndKillsSessions() throws Exception {
+        startBackend(socket -> {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+        });
+        startProxy();
+
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(5000);
+            client.getOutputStream().write(new byte[100]);
+            byte[] echo = new byte[100];
+            int read = 0;
+            while (read < echo.length) {
+                read += client.getInputStream().read(echo, read, echo.length - read);
+            }
+
+            ProxySession session = waitForSession();
+            assertEquals(client.getLocalPort(), session.getClient().getPort());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (session.getBytesToClient() < 100 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(100, session.getBytesFromClient());
+            assertEquals(100, session.getBytesToClient());
+            assertTrue(session.getTimeToFirstByte() >= 0);
+
+            session.kill();
+            assertEquals(-1, client.getInputStream().read());
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!proxy.getSessions().isEmpty()) {
+            assertTrue("会话未移除", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    public void testBackendOutageOnlyFailsTheSession() throws Exception {
+        startBackend(socket -> { });
+        startProxy();
+        backend.close();
+
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(10000);
+            assertEquals(-1, client.getInputStream().read());
+        }
+        assertEquals(ProxyState.RUNNING, proxy.getState());
+        assertEquals(ProxyOptions.DEFAULT.getConnectRetries(), proxy.getConnectMetrics().getRetries());
+    }
+
+    /**
+     * 在线修改后新连接走新端口和新后端，已建立的会话继续转发，旧端口关闭
+     */
+    public void testReconfigureKeepsExistingSessions() throws Exception {
+        startBackend(socket -> {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+                out.flush();
+            }
+        });
+        startProxy();
+
+        try (ServerSocket newBackend = new ServerSocket(0);
+             Socket existing = new Socket("127.0.0.1", proxyPort)) {
+            Thread acceptor = new Thread(() -> {
+                while (!newBackend.isClosed()) {
+                    try (Socket socket = newBackend.accept()) {
+                        socket.getOutputStream().write('B');
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            existing.setSoTimeout(5000);
+            existing.getOutputStream().write(1);
+            assertEquals(1, existing.getInputStream().read());
+
+            int newPort = ProxyTestSupport.freePort();
+            int oldPort = proxyPort;
+            proxy.reconfigure(newPort, newPort, "127.0.0.1", newBackend.getLocalPort());
+
+            try (Socket client = new Socket("127.0.0.1", newPort)) {
+                client.setSoTimeout(5000);
+                assertEquals('B', client.getInputStream().read());
+            }
+
+            existing.getOutputStream().write(2);
+            assertEquals(2, existing.getInputStream().read());
+
+            // 旧端口在下一次 select 时真正关闭
+            long deadline = System.currentTimeMillis() + 5000;
+            while (true) {
+                try (Socket stale = new Socket("127.0.0.1", oldPort)) {
+                    stale.setSoTimeout(5000);
+                    assertEquals("旧端口上的连接应被关闭", -1, stale.getInputStream().read());
+                } catch (IOException refused) {
+                    break;
+                }
+                assertTrue("旧端口未关闭", System.currentTimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+            assertEquals(ProxyState.RUNNING, proxy.getState());
+        }
+    }
+
+    /**
+     * SOCKS5 监听：认证通过后只转发白名单中的目标，白名单外的目标和错误的密码被拒绝
+     */
+    public void testSocks5ListenerRoutesWhitelistedDestinations() throws Exception {
+        startBackend(socket -> socket.getOutputStream().write(42));
+        proxyPort = ProxyTestSupport.freePort();
+        JSONObject options = new JSONObject();
+        options.put("socksUser", "user");
+        options.put("socksPassword", "secret");
+        proxy = SimpleTCPProxy.socks5(proxyPort, proxyPort, ProxyTestSupport.options(options));
+        int backendPort = backend.getLocalPort();
+        proxy.setDestinationWhitelist(DestinationWhitelist.build(
+                Collections.singletonList("127.0.0.0/8:" + backendPort)));
+        ProxyTestSupport.run(proxy);
+
+        try (Socket client = socksConnect("user", "secret", backendPort)) {
+            assertEquals(0, socksReply(client));
+            assertEquals(42, client.getInputStream().read());
+        }
+        try (Socket client = socksConnect("user", "secret", backendPort + 1)) {
+            assertEquals(Socks5Handshake.REPLY_NOT_ALLOWED, socksReply(client));
+            assertEquals(-1, client.getInputStream().read());
+        }
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(5000);
+            socksAuthenticate(client, "user", "wrong");
+            assertEquals(1, client.getInputStream().read());
+            assertEquals(-1, client.getInputStream().read());
+        }
+        assertEquals(ProxyState.RUNNING, proxy.getState());
+    }
+
+    // 认证并发送 CONNECT 127.0.0.1:port
+    private Socket socksConnect(String user, String password, int port) throws IOException {
+        Socket client = new Socket("127.0.0.1", proxyPort);
+        client.setSoTimeout(5000);
+        socksAuthenticate(client, user, password);
+        assertEquals(0, client.getInputStream().read());
+        client.getOutputStream().write(new byte[]{5, 1, 0, 1, 127, 0, 0, 1, (byte) (port >> 8), (byte) port});
+        return client;
+    }
+
+    // 发送问候和用户名密码，读完方法选择后停在认证结果之前
+    private static void socksAuthenticate(Socket client, String user, String password) throws IOException {
+        OutputStream out = client.getOutputStream();
+        InputStream in = client.getInputStream();
+        out.write(new byte[]{5, 1, 2});
+        assertEquals(5, in.read());
+        assertEquals(2, in.read());
+        out.write(1);
+        out.write(user.length());
+        out.write(user.getBytes());
+        out.write(password.length());
+        out.write(password.getBytes());
+        assertEquals(1, in.read());
+    }
+
+    // 读取 IPv4 形式的 CONNECT 回复，返回回复码
+    private static int socksReply(Socket client) throws IOException {
+        byte[] reply = new byte[10];
+        int read = 0;
+        while (read < reply.length) {
+            int n = client.getInputStream().read(reply, read, reply.length - read);
+            assertTrue(n > 0);
+            read += n;
+        }
+        assertEquals(5, reply[0]);
+        return reply[1];
+    }
+
+    private ProxySession waitForSession() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (proxy.getSessions().isEmpty()) {
+            assertTrue("未记录会话", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        return proxy.getSessions().iterator().next();
+    }
+
+    private int readFirstByte() throws IOException {
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(5000);
+            return client.getInputStream().read();
+        }
+    }
+
+    private static List<ServerSocket> bindConsecutive(int count) throws IOException {
+        Random random = new Random();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            int base = 20000 + random.nextInt(30000);
+            List<ServerSocket> sockets = new ArrayList<>();
+            try {
+                for (int i = 0; i < count; i++) {
+                    sockets.add(new ServerSocket(base + i));
+                }
+                return sockets;
+            } catch (IOException e) {
+                for (ServerSocket socket : sockets) {
+                    socket.close();
+                }
+            }
+        }
+        throw new IOException("找不到连续的空闲端口");
+    }
+
+    private interface Handler {
+        void handle(Socket socket) throws IOException;
+    }
+
+    private void startBackend(Handler handler) throws IOException {
+        backend = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (!backend.isClosed()) {
+                try {
+                    Socket socket = backend.accept();
+                    new Thread(() -> {
+                        try (Socket s = socket) {
+                            handler.handle(s);
+                        } catch (IOException e) {
+                            // 启动时的连通性测试连接会直接关闭
+                        }
+                    }).start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void startProxy() throws Exception {
+        proxyPort = ProxyTestSupport.freePort();
+        proxy = new SimpleTCPProxy(proxyPort, "127.0.0.1", backend.getLocalPort());
+        ProxyTestSupport.run(proxy);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
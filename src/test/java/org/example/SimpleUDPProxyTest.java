@@ -0,0 +1,77 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SimpleUDPProxy 会话转发测试
+ */
+public class SimpleUDPProxyTest extends TestCase {
+
+    private DatagramSocket backend;
+    private SimpleUDPProxy proxy;
+    private int proxyPort;
+
+    @Override
+    protected void setUp() throws Exception {
+        // 回显后端：把收到的数据原样发回
+        backend = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        Thread echo = new Thread(() -> {
+            byte[] buffer = new byte[65535];
+            while (!backend.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    backend.receive(packet);
+                    backend.send(new DatagramPacket(packet.getData(), packet.getLength(), packet.getSocketAddress()));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        echo.setDaemon(true);
+        echo.start();
+
+        try (DatagramSocket probe = new DatagramSocket(0)) {
+            proxyPort = probe.getLocalPort();
+        }
+        proxy = new SimpleUDPProxy(proxyPort, "127.0.0.1", backend.getLocalPort());
+        ProxyTestSupport.run(proxy);
+    }
+
+    @Override
+    protected void tearDown() {
+        proxy.stop();
+        backend.close();
+    }
+
+    /**
+     * 不同客户端各自建立会话，回包只返回给对应的客户端
+     */
+    public void testRepliesRouteBackToEachClient() throws Exception {
+        try (DatagramSocket first = new DatagramSocket();
+             DatagramSocket second = new DatagramSocket()) {
+            first.setSoTimeout(5000);
+            second.setSoTimeout(5000);
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals("first-" + i, roundTrip(first, "first-" + i));
+                assertEquals("second-" + i, roundTrip(second, "second-" + i));
+            }
+            assertEquals(2, proxy.getSessionCount());
+        }
+    }
+
+    private String roundTrip(DatagramSocket socket, String message) throws IOException {
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(data, data.length, InetAddress.getLoopbackAddress(), proxyPort));
+        byte[] buffer = new byte[1024];
+        DatagramPacket reply = new DatagramPacket(buffer, buffer.length);
+        socket.receive(reply);
+        return new String(reply.getData(), 0, reply.getLength(), StandardCharsets.UTF_8);
+    }
+}
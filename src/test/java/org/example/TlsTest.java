@@ -0,0 +1,177 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONObject;
+import junit.framework.TestCase;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Paths;
+
+/**
+ * TLS 终止和发起测试，证书为 src/test/resources 中的自签名证书（localhost / 127.0.0.1）
+ */
+public class TlsTest extends TestCase {
+    private static final String PASSWORD = "changeit";
+
+    private String keystore;
+    private SSLServerSocket backend;
+    private SimpleTCPProxy proxy;
+    private int proxyPort;
+
+    @Override
+    protected void setUp() throws Exception {
+        keystore = Paths.get(getClass().getResource("/tls-test.p12").toURI()).toString();
+        // TLS 回显后端
+        backend = (SSLServerSocket) TlsContexts.server(keystore, PASSWORD).getServerSocketFactory()
+                .createServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (!backend.isClosed()) {
+                try {
+                    Socket socket = backend.accept();
+                    new Thread(() -> echo(socket)).start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (proxy != null) {
+            proxy.stop();
+        }
+        backend.close();
+    }
+
+    public void testTerminatesAndOriginatesWithResumption() throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("tlsKeystore", keystore);
+        json.put("tlsKeystorePassword", PASSWORD);
+        json.put("tlsBackend", true);
+        json.put("tlsTruststore", keystore);
+        json.put("tlsTruststorePassword", PASSWORD);
+        startProxy(json);
+
+        SSLContext clientContext = TlsContexts.client(keystore, PASSWORD);
+        for (int i = 0; i < 3; i++) {
+            try (SSLSocket client = (SSLSocket) clientContext.getSocketFactory().createSocket(
+                    "127.0.0.1", proxyPort)) {
+                client.setSoTimeout(10000);
+                assertEquals("hello-" + i, roundTrip(client, "hello-" + i));
+            }
+        }
+
+        ConnectMetrics metrics = proxy.getConnectMetrics();
+        assertEquals(3, metrics.getTlsHandshakes(false));
+        assertEquals(3, metrics.getTlsHandshakes(true));
+        // 首次之后的连接两侧都复用会话
+        assertEquals(2, metrics.getTlsResumed(false));
+        assertEquals(2, metrics.getTlsResumed(true));
+        assertEquals(0, metrics.getTlsFailures(true));
+        waitForSessionsClosed();
+        assertEquals(0, proxy.getRelayMemory().getCurrent());
+    }
+
+    public void testPlaintextClientIsRejectedWithoutReachingBackend() throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("tlsKeystore", keystore);
+        json.put("tlsKeystorePassword", PASSWORD);
+        startProxy(json);
+        long attempts = proxy.getConnectMetrics().getAttempts();
+
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(10000);
+            client.getOutputStream().write("GET / HTTP/1.0\r\n\r\n".getBytes());
+            InputStream in = client.getInputStream();
+            // 握手失败后代理关闭连接，可能先收到 TLS 告警
+            while (in.read() != -1) {
+                // 丢弃
+            }
+        } catch (IOException expected) {
+            // 连接被重置
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (proxy.getConnectMetrics().getTlsFailures(false) == 0) {
+            assertTrue("握手失败未记录", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        assertEquals(attempts, proxy.getConnectMetrics().getAttempts());
+        assertEquals(ProxyState.RUNNING, proxy.getState());
+    }
+
+    public void testBackendCertificateMustBeTrusted() throws Exception {
+        JSONObject json = new JSONObject();
+        // 使用 JVM 默认信任库，自签名证书不被信任
+        json.put("tlsBackend", true);
+        startProxy(json);
+
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(10000);
+            assertEquals(-1, client.getInputStream().read());
+        }
+        assertEquals(1, proxy.getConnectMetrics().getTlsFailures(true));
+        assertTrue(proxy.getSessions().isEmpty());
+
+        // 握手失败计入熔断，累计到阈值后熔断器打开
+        for (int i = 1; i < CircuitBreaker.MIN_CALLS; i++) {
+            try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+                client.setSoTimeout(10000);
+                assertEquals(-1, client.getInputStream().read());
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, proxy.getBreakerState());
+    }
+
+    private void startProxy(JSONObject json) throws Exception {
+        proxyPort = ProxyTestSupport.freePort();
+        proxy = new SimpleTCPProxy(proxyPort, proxyPort, "127.0.0.1", backend.getLocalPort(),
+                ProxyTestSupport.options(json));
+        ProxyTestSupport.run(proxy);
+    }
+
+    private void waitForSessionsClosed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!proxy.getSessions().isEmpty()) {
+            assertTrue("会话未移除", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static String roundTrip(Socket socket, String message) throws IOException {
+        socket.getOutputStream().write(message.getBytes());
+        byte[] buffer = new byte[message.length()];
+        int read = 0;
+        InputStream in = socket.getInputStream();
+        while (read < buffer.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return new String(buffer, 0, read);
+    }
+
+    private static void echo(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 启动探测使用明文连接，握手失败
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 抓包段文件和回放测试
+ */
+public class TrafficCaptureTest extends TestCase {
+    // 允许的最小段文件，便于测试环形覆盖
+    private static final int SEGMENT_SIZE = 300 * 1024;
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("capture");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void testRecordsAreReadBackInOrder() throws Exception {
+        TrafficCapture capture = TrafficCapture.open(directory, 2, SEGMENT_SIZE);
+        TrafficCapture.Tap tap = capture.tap(7);
+        tap.data(true, ByteBuffer.wrap("GET /".getBytes()));
+        tap.data(false, "HTTP/1.1 200".getBytes(), 0, 12);
+        tap.close();
+        // 关闭后的数据不再记录
+        tap.data(true, ByteBuffer.wrap("late".getBytes()));
+        capture.close();
+
+        List<String> records = new ArrayList<>();
+        long[] lastMicros = {0};
+        TrafficCapture.read(directory, (type, run, sessionId, micros, data) -> {
+            assertEquals(7, sessionId);
+            assertTrue(micros >= lastMicros[0]);
+            lastMicros[0] = micros;
+            records.add(type + ":" + new String(data));
+        });
+        assertEquals(Arrays.asList(TrafficCapture.OPEN + ":", TrafficCapture.FROM_CLIENT + ":GET /",
+                TrafficCapture.TO_CLIENT + ":HTTP/1.1 200", TrafficCapture.CLOSE + ":"), records);
+    }
+
+    public void testRingKeepsOnlyTheNewestSegments() throws Exception {
+        TrafficCapture capture = TrafficCapture.open(directory, 2, SEGMENT_SIZE);
+        TrafficCapture.Tap tap = capture.tap(1);
+        byte[] chunk = new byte[100 * 1024];
+        // 每段最多容纳两块，共写入约五段
+        for (int i = 0; i < 10; i++) {
+            Arrays.fill(chunk, (byte) i);
+            tap.data(true, ByteBuffer.wrap(chunk));
+            // 给写入线程时间，避免超出积压上限被丢弃
+            Thread.sleep(5);
+        }
+        capture.close();
+        assertEquals(0, capture.getDropped());
+
+        List<Integer> kept = new ArrayList<>();
+        TrafficCapture.read(directory, (type, run, sessionId, micros, data) -> kept.add((int) data[0]));
+        assertEquals(Arrays.asList(6, 7, 8, 9), kept);
+
+        // 重新打开时从最旧的段继续覆盖，最新的段保留
+        capture = TrafficCapture.open(directory, 2, SEGMENT_SIZE);
+        capture.tap(2).close();
+        capture.close();
+        kept.clear();
+        TrafficCapture.read(directory, (type, run, sessionId, micros, data) -> kept.add((int) sessionId));
+        assertEquals(Arrays.asList(1, 1, 2, 2), kept);
+    }
+
+    public void testReplaySendsClientDataToTarget() throws Exception {
+        TrafficCapture capture = TrafficCapture.open(directory, 2, SEGMENT_SIZE);
+        for (long session = 1; session <= 3; session++) {
+            TrafficCapture.Tap tap = capture.tap(session);
+            tap.data(true, ByteBuffer.wrap(("request-" + session).getBytes()));
+            tap.data(false, ByteBuffer.wrap("ignored".getBytes()));
+            tap.close();
+        }
+        capture.close();
+
+        try (ServerSocket echo = startEchoServer()) {
+            CaptureReplay.Result result = new CaptureReplay("127.0.0.1", echo.getLocalPort(), true).run(directory);
+            assertEquals(3, result.sessions);
+            assertEquals(3 * "request-1".length(), result.bytesSent);
+            assertEquals(result.bytesSent, result.bytesReceived);
+            assertEquals(3 * "ignored".length(), result.recordedBytesToClient);
+        }
+    }
+
+    public void testSessionsFromDifferentRunsAreNotMerged() throws Exception {
+        // 第一次运行的会话没有关闭记录（进程被杀），第二次运行的会话编号同样从 1 开始
+        TrafficCapture capture = TrafficCapture.open(directory, 4, SEGMENT_SIZE);
+        capture.tap(1).data(true, ByteBuffer.wrap("first".getBytes()));
+        capture.close();
+        capture = TrafficCapture.open(directory, 4, SEGMENT_SIZE);
+        TrafficCapture.Tap tap = capture.tap(1);
+        tap.data(true, ByteBuffer.wrap("second".getBytes()));
+        tap.close();
+        capture.close();
+
+        List<Long> runs = new ArrayList<>();
+        TrafficCapture.read(directory, (type, run, sessionId, micros, data) -> {
+            if (!runs.contains(run)) {
+                runs.add(run);
+            }
+        });
+        assertEquals(2, runs.size());
+
+        try (ServerSocket echo = startEchoServer()) {
+            CaptureReplay.Result result = new CaptureReplay("127.0.0.1", echo.getLocalPort(), true).run(directory);
+            assertEquals(2, result.sessions);
+            assertEquals("firstsecond".length(), result.bytesReceived);
+        }
+    }
+
+    private static ServerSocket startEchoServer() throws IOException {
+        ServerSocket echo = new ServerSocket(0);
+        Thread server = new Thread(() -> {
+            while (!echo.isClosed()) {
+                try {
+                    Socket socket = echo.accept();
+                    new Thread(() -> echo(socket)).start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        return echo;
+    }
+
+    private static void echo(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            s.shutdownOutput();
+        } catch (IOException e) {
+            // 回放端关闭连接
+        }
+    }
+}
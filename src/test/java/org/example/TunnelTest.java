@@ -0,0 +1,174 @@
+package org.example;
+
+import com.alibaba.fastjson2.JSONObject;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 隧道模式测试：代理端经中继的少量长连接转发多个会话
+ */
+public class TunnelTest extends TestCase {
+    private static final String TOKEN = "test-token";
+
+    private ServerSocket backend;
+    private TunnelAgent agent;
+    private SimpleTCPProxy proxy;
+    private int proxyPort;
+
+    @Override
+    protected void setUp() throws Exception {
+        // 回显后端，读到EOF后半关闭
+        backend = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (!backend.isClosed()) {
+                try {
+                    Socket socket = backend.accept();
+                    new Thread(() -> {
+                        try (Socket s = socket) {
+                            InputStream in = s.getInputStream();
+                            OutputStream out = s.getOutputStream();
+                            byte[] buffer = new byte[8192];
+                            int len;
+                            while ((len = in.read(buffer)) != -1) {
+                                out.write(buffer, 0, len);
+                            }
+                            s.shutdownOutput();
+                        } catch (IOException e) {
+                            // 探测连接会直接断开
+                        }
+                    }).start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        agent = new TunnelAgent(0, TOKEN);
+        agent.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (proxy != null) {
+            proxy.stop();
+        }
+        agent.close();
+        backend.close();
+    }
+
+    public void testSessionsShareTheConfiguredLinks() throws Exception {
+        startProxy(TOKEN, 2);
+
+        ExecutorService clients = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                byte[] payload = randomBytes(1024 + i);
+                results.add(clients.submit(() -> Arrays.equals(payload, echo(payload))));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            clients.shutdown();
+        }
+        assertTrue(agent.getLinkCount() <= 2);
+        assertEquals(ProxyState.RUNNING, proxy.getState());
+    }
+
+    /**
+     * 传输量远大于流的窗口，依赖 WINDOW 帧持续补充窗口
+     */
+    public void testLargeTransferUsesFlowControl() throws Exception {
+        startProxy(TOKEN, 1);
+        byte[] payload = randomBytes(8 * TunnelProtocol.INITIAL_WINDOW);
+        assertTrue(Arrays.equals(payload, echo(payload)));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!proxy.getSessions().isEmpty()) {
+            assertTrue("会话未移除", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        assertEquals(payload.length, proxy.getTraffic().getBytesFromClient());
+        assertEquals(payload.length, proxy.getTraffic().getBytesToClient());
+        // 流的读缓冲区同样计入，会话结束后归还
+        assertTrue(proxy.getRelayMemory().getPeak() >= TunnelProtocol.MAX_PAYLOAD);
+        assertEquals(0, proxy.getRelayMemory().getCurrent());
+    }
+
+    public void testWrongTokenIsRejected() throws Exception {
+        try {
+            TunnelLink.connect("127.0.0.1", agent.getPort(), "wrong").close();
+            fail("令牌错误时应拒绝链路");
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+
+    public void testBackendFailureEndsOnlyTheSession() throws Exception {
+        startProxy(TOKEN, 1);
+        backend.close();
+
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(10000);
+            assertEquals(-1, client.getInputStream().read());
+        }
+        assertEquals(ProxyState.RUNNING, proxy.getState());
+        assertEquals(1, agent.getLinkCount());
+    }
+
+    private byte[] echo(byte[] payload) throws IOException {
+        try (Socket client = new Socket("127.0.0.1", proxyPort)) {
+            client.setSoTimeout(10000);
+            Thread writer = new Thread(() -> {
+                try {
+                    client.getOutputStream().write(payload);
+                    client.shutdownOutput();
+                } catch (IOException e) {
+                    // 由读取结果断言
+                }
+            });
+            writer.start();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            InputStream in = client.getInputStream();
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private void startProxy(String token, int links) throws Exception {
+        proxyPort = ProxyTestSupport.freePort();
+        JSONObject json = new JSONObject();
+        json.put("tunnel", "127.0.0.1:" + agent.getPort());
+        json.put("tunnelToken", token);
+        json.put("tunnelLinks", links);
+        proxy = new SimpleTCPProxy(proxyPort, proxyPort, "127.0.0.1", backend.getLocalPort(),
+                ProxyTestSupport.options(json));
+        ProxyTestSupport.run(proxy);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}